@@ -23,25 +23,94 @@
 
 package com.thalesgroup.hudson.plugins.clearcaserelease;
 
+import com.thalesgroup.hudson.plugins.clearcaserelease.biz.ClearToolException;
 import com.thalesgroup.hudson.plugins.clearcaserelease.biz.ClearcaseReleaseActionImpl;
+import com.thalesgroup.hudson.plugins.clearcaserelease.biz.ReleaseLane;
+import com.thalesgroup.hudson.plugins.clearcaserelease.biz.ReleasePreview;
+import com.thalesgroup.hudson.plugins.clearcaserelease.biz.ReleaseResult;
 import hudson.FilePath;
 import hudson.model.*;
 import hudson.scm.SCM;
 import hudson.security.Permission;
+import hudson.util.LogTaskListener;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
 
 import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Represents a clearcase action
  */
+@ExportedBean
 public abstract class ClearcaseReleaseAction extends TaskAction {
 
+    private static final Logger LOGGER = Logger.getLogger(ClearcaseReleaseAction.class.getName());
+
+    /**
+     * The maximal age of the release preview displayed on the release page
+     */
+    private static final long PREVIEW_MAX_AGE_MILLIS = Long.getLong(ClearcaseReleaseAction.class.getName() + ".previewMaxAgeSeconds", 300L) * 1000L;
+
+    /**
+     * The maximum number of release previews computed at the same time
+     */
+    private static final int PREVIEW_THREADS = Integer.getInteger(ClearcaseReleaseAction.class.getName() + ".previewThreads", 2);
+
+    /**
+     * The previews needing cleartool are computed by daemon threads, never by the HTTP threads
+     */
+    private static final ExecutorService PREVIEW_POOL = new ThreadPoolExecutor(PREVIEW_THREADS, PREVIEW_THREADS,
+            60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "ClearCase release preview");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
     protected final FilePath workspaceRoot;
 
+    /**
+     * The last release submitted to the action since the startup
+     */
+    protected transient volatile ReleaseStatus currentRelease;
+
+    /**
+     * The last release preview of the action
+     */
+    private transient volatile ReleasePreview preview;
+
+    private transient volatile String previewError;
+
+    /**
+     * The end time of the last preview computation, 0 if the preview must be computed again
+     */
+    private transient volatile long previewTime;
+
+    /**
+     * Incremented by each invalidation, a computation started before an invalidation is discarded
+     */
+    private transient volatile int previewGeneration;
+
+    /**
+     * True while a preview is computed in the background, a single computation per action
+     */
+    private transient boolean previewComputing;
+
 
     /**
      * Defaults to {@link SCM#TAG}.
@@ -55,6 +124,186 @@ public abstract class ClearcaseReleaseAction extends TaskAction {
         this.workspaceRoot = workapace;
     }
 
+    /**
+     * Start the release in a worker thread
+     *
+     * @return the submitted release, null if the release can't be performed
+     * @throws ReleaseRejectedException if too many releases are already queued or running
+     */
+    public abstract ReleaseStatus process() throws ReleaseRejectedException;
+
+    /**
+     * Register a new release of the action
+     *
+     * @param owner the build the release applies to
+     * @param pvob  the PVOB of the released baselines, null if unknown
+     * @return the submitted release
+     * @throws ReleaseRejectedException if too many releases are already queued or running
+     */
+    protected ReleaseStatus submitRelease(Run owner, String pvob) throws ReleaseRejectedException {
+        ReleaseStatus status = ReleaseTracker.get().submit(this, owner, pvob);
+        currentRelease = status;
+        return status;
+    }
+
+    @Exported
+    public ReleaseStatus getCurrentRelease() {
+        return currentRelease;
+    }
+
+    @Exported
+    public boolean isRunning() {
+        return workerThread != null;
+    }
+
+    public Api getApi() {
+        return new Api(this);
+    }
+
+    /**
+     * @return the workspace the cleartool commands are launched from
+     */
+    protected FilePath getWorkspaceRoot() {
+        return workspaceRoot;
+    }
+
+
+    /**
+     * Compute the baselines the release of the action would promote, without changing any baseline
+     *
+     * @param listener the listener of the cleartool commands
+     * @return the release preview, null if the release can't be previewed
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    protected ReleasePreview computePreview(TaskListener listener) throws IOException, InterruptedException {
+        return null;
+    }
+
+    /**
+     * Compute the release preview from cached data only, without any cleartool command
+     *
+     * @return the release preview, null if the cached data don't describe the release
+     */
+    protected ReleasePreview computeCachedPreview() {
+        return null;
+    }
+
+    /**
+     * Get the baselines the release would promote, without waiting for cleartool.
+     * A missing or outdated preview is computed again in the background, the outdated preview is returned meanwhile.
+     *
+     * @return the release preview, null if it isn't computed yet or if the release can't be previewed
+     */
+    public ReleasePreview getPreview() {
+        ReleasePreview current = preview;
+        if (System.currentTimeMillis() - previewTime <= PREVIEW_MAX_AGE_MILLIS) {
+            return current;
+        }
+
+        try {
+            ReleasePreview cached = computeCachedPreview();
+            if (cached != null) {
+                preview = cached;
+                previewError = null;
+                previewTime = System.currentTimeMillis();
+                return cached;
+            }
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Unable to compute the release preview", e);
+            previewError = e.getMessage();
+            previewTime = System.currentTimeMillis();
+            return null;
+        }
+
+        //Only the users allowed to release may launch the cleartool commands of a preview
+        if (getACL().hasPermission(getPermission())) {
+            startPreview();
+        }
+        return current;
+    }
+
+    /**
+     * Compute the release preview in the background, unless a computation is already running
+     */
+    private synchronized void startPreview() {
+        if (previewComputing) {
+            return;
+        }
+        previewComputing = true;
+        final int generation = previewGeneration;
+        PREVIEW_POOL.execute(new Runnable() {
+            public void run() {
+                ReleasePreview computed = null;
+                String error = null;
+                try {
+                    computed = computePreview(new LogTaskListener(LOGGER, Level.FINE));
+                } catch (Exception e) {
+                    LOGGER.log(Level.WARNING, "Unable to compute the release preview", e);
+                    error = e.getMessage();
+                } finally {
+                    synchronized (ClearcaseReleaseAction.this) {
+                        if (generation == previewGeneration) {
+                            preview = computed;
+                            previewError = error;
+                            previewTime = System.currentTimeMillis();
+                        }
+                        previewComputing = false;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * @return true while the release preview is computed in the background
+     */
+    public synchronized boolean isPreviewComputing() {
+        return previewComputing;
+    }
+
+    /**
+     * @return the failure of the last release preview, null if it has succeeded
+     */
+    public String getPreviewError() {
+        return previewError;
+    }
+
+    /**
+     * Forget the release preview, the baselines or their levels have changed
+     */
+    protected synchronized void invalidatePreview() {
+        previewGeneration++;
+        preview = null;
+        previewTime = 0;
+    }
+
+    /**
+     * Serve in JSON the baselines the release would promote, with an estimate of its cleartool commands.
+     * The response has the status 202 while the preview is computed.
+     *
+     * @param req the request object
+     * @param rsp the response
+     * @throws IOException
+     * @throws ServletException
+     */
+    @SuppressWarnings("unused")
+    public void doPlan(StaplerRequest req, StaplerResponse rsp) throws IOException, ServletException {
+        //The preview may launch cleartool commands
+        getACL().checkPermission(getPermission());
+
+        ReleasePreview current = getPreview();
+        if (current == null && isPreviewComputing()) {
+            rsp.setStatus(HttpServletResponse.SC_ACCEPTED);
+            rsp.setHeader("Retry-After", "5");
+            return;
+        }
+        if (current == null) {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND, (previewError == null) ? "The release can't be previewed" : previewError);
+            return;
+        }
+        ClearcaseReleaseApi.serveJson(req, rsp, new ClearcaseReleaseApi.PreviewStatus(current), "plan-" + current.getCreationTime());
+    }
 
     /**
      * Release actions is given by the SCM actions
@@ -78,6 +327,107 @@ public abstract class ClearcaseReleaseAction extends TaskAction {
         req.getView(this, chooseAction()).forward(req, rsp);
     }
 
+    /**
+     * Submit a release from the remote API, the response is the submitted release in JSON
+     *
+     * @param req the request object
+     * @param rsp the response
+     * @throws IOException
+     * @throws ServletException
+     */
+    @SuppressWarnings("unused")
+    public void doSubmitJson(StaplerRequest req, StaplerResponse rsp) throws IOException, ServletException {
+        if (!"POST".equals(req.getMethod())) {
+            rsp.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+            return;
+        }
+
+        //The logged user must have the TAG permission
+        getACL().checkPermission(getPermission());
+
+        ReleaseStatus status;
+        synchronized (this) {
+            if (workerThread != null) {
+                rsp.sendError(HttpServletResponse.SC_CONFLICT, "A release is already running");
+                return;
+            }
+            try {
+                status = process();
+            } catch (ReleaseRejectedException e) {
+                sendRejection(rsp, e);
+                return;
+            }
+        }
+        if (status == null) {
+            rsp.sendError(HttpServletResponse.SC_CONFLICT, "The release can't be performed, the job doesn't use an UCM stream or has no successful build");
+            return;
+        }
+
+        rsp.setStatus(HttpServletResponse.SC_ACCEPTED);
+        rsp.setHeader("Location", "status?id=" + status.getId());
+        ClearcaseReleaseApi.serveJson(req, rsp, status, status.getETag());
+    }
+
+    /**
+     * Reject a release submission with the HTTP status 429 and a retry hint
+     *
+     * @param rsp the response
+     * @param e   the rejection
+     * @throws IOException
+     */
+    protected void sendRejection(StaplerResponse rsp, ReleaseRejectedException e) throws IOException {
+        rsp.setHeader("Retry-After", String.valueOf(e.getRetryAfterSeconds()));
+        rsp.sendError(429, e.getMessage() + " Retry in " + e.getRetryAfterSeconds() + " s.");
+    }
+
+    /**
+     * Serve the state of a release of the action in JSON, the current release without the id parameter
+     *
+     * @param req the request object
+     * @param rsp the response
+     * @throws IOException
+     * @throws ServletException
+     */
+    @SuppressWarnings("unused")
+    public void doStatus(StaplerRequest req, StaplerResponse rsp) throws IOException, ServletException {
+        String id = req.getParameter("id");
+        ReleaseStatus status = (id == null) ? currentRelease : ReleaseTracker.get().getStatus(id);
+        ClearcaseReleaseApi.serveStatus(req, rsp, status);
+    }
+
+    /**
+     * Abort the running release
+     *
+     * @param req the request object
+     * @param rsp the response page
+     * @throws IOException
+     * @throws ServletException
+     */
+    @SuppressWarnings("unused")
+    public void doAbort(StaplerRequest req, StaplerResponse rsp) throws IOException, ServletException {
+
+        //The logged user must have the TAG permission
+        getACL().checkPermission(getPermission());
+
+        abort();
+
+        rsp.sendRedirect(".");
+    }
+
+    /**
+     * Interrupt the running release, its cleartool commands are killed
+     *
+     * @return true if a release was running
+     */
+    public synchronized boolean abort() {
+        TaskThread thread = workerThread;
+        if (thread == null) {
+            return false;
+        }
+        thread.interrupt();
+        return true;
+    }
+
     /**
      * Choose the page to display during the release processing
      *
@@ -89,17 +439,51 @@ public abstract class ClearcaseReleaseAction extends TaskAction {
         return "index.jelly";
     }
 
+    /**
+     * Log the failure of a release in the release log
+     *
+     * @param listener the release listener
+     * @param e        the failure
+     */
+    protected void logError(TaskListener listener, Throwable e) {
+        if (e instanceof ClearToolException) {
+            listener.getLogger().println("[ERROR] - " + ((ClearToolException) e).getType() + " - " + e.getMessage());
+        } else {
+            listener.getLogger().println("[ERROR] - " + e.getMessage());
+        }
+        e.printStackTrace(listener.getLogger());
+    }
+
     /**
      * Release a composite baseline
      *
      * @param listener
      * @param owner
      * @param customReleasePromotionLevel
+     * @param promoteDependencies
+     * @return the release result, null if nothing has been promoted
      * @throws IOException
      * @throws InterruptedException
      */
-    public void performClearcaseReleaseCompisteBaseline(TaskListener listener, AbstractBuild owner, String customReleasePromotionLevel) throws IOException, InterruptedException {
-        new ClearcaseReleaseActionImpl(workspaceRoot).performCompoisteBaselineRelease(listener, owner, customReleasePromotionLevel);
+    public ReleaseResult performClearcaseReleaseCompisteBaseline(TaskListener listener, AbstractBuild owner, String customReleasePromotionLevel, boolean promoteDependencies) throws IOException, InterruptedException {
+        return new ClearcaseReleaseActionImpl(getWorkspaceRoot(), ReleaseLane.INTERACTIVE).performCompoisteBaselineRelease(listener, owner, customReleasePromotionLevel, promoteDependencies);
+    }
+
+    /**
+     * Release a composite baseline resolved at build time
+     *
+     * @param listener
+     * @param owner
+     * @param compositeBaseline
+     * @param pvob
+     * @param customReleasePromotionLevel
+     * @param promoteDependencies
+     * @return the release result, null if nothing has been promoted
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public ReleaseResult performClearcaseReleaseCompisteBaseline(TaskListener listener, AbstractBuild owner, String compositeBaseline, String pvob, String customReleasePromotionLevel, boolean promoteDependencies) throws IOException, InterruptedException {
+        return new ClearcaseReleaseActionImpl(getWorkspaceRoot(), ReleaseLane.INTERACTIVE).performCompoisteBaselineRelease(listener, owner, compositeBaseline, pvob, customReleasePromotionLevel, promoteDependencies);
     }
 
 
@@ -111,18 +495,21 @@ public abstract class ClearcaseReleaseAction extends TaskAction {
      * @param releaseBuildBadgeAction
      * @param clearcaseReleaseCancelAction
      * @param promotedBaselines
+     * @param previousLevels
      * @throws IOException
      * @throws InterruptedException
      */
     public void performCancelRelease(TaskListener listener, Run owner,
                                      ClearcaseReleaseBuildBadgeAction releaseBuildBadgeAction,
                                      ClearcaseReleaseCancelAction clearcaseReleaseCancelAction,
-                                     List<String> promotedBaselines) throws IOException, InterruptedException {
-        new ClearcaseReleaseActionImpl(workspaceRoot).performCancelRelease(
+                                     List<String> promotedBaselines,
+                                     Map<String, String> previousLevels) throws IOException, InterruptedException {
+        new ClearcaseReleaseActionImpl(getWorkspaceRoot(), ReleaseLane.INTERACTIVE).performCancelRelease(
                 listener, owner,
                 releaseBuildBadgeAction,
                 clearcaseReleaseCancelAction,
-                promotedBaselines);
+                promotedBaselines,
+                previousLevels);
     }
 
 
@@ -133,17 +520,39 @@ public abstract class ClearcaseReleaseAction extends TaskAction {
      * @param project
      * @param owner
      * @param customReleasePromotionLevel
+     * @return the release result, null if nothing has been promoted
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public ReleaseResult performLatestBaselineRelease(TaskListener listener,
+                                                     AbstractProject project,
+                                                     Run owner,
+                                                     String customReleasePromotionLevel) throws IOException, InterruptedException {
+
+        return performLatestBaselineRelease(listener, project, owner, customReleasePromotionLevel, null);
+    }
+
+    /**
+     * Relase lastest baselines, each one to the level chosen by the promotion rules
+     *
+     * @param listener
+     * @param project
+     * @param owner
+     * @param customReleasePromotionLevel
+     * @param promotionRules
+     * @return the release result, null if nothing has been promoted
      * @throws IOException
      * @throws InterruptedException
      */
-    public void performLatestBaselineRelease(TaskListener listener,
-                                            AbstractProject project,
-                                            Run owner,
-                                            String customReleasePromotionLevel) throws IOException, InterruptedException {
+    public ReleaseResult performLatestBaselineRelease(TaskListener listener,
+                                                     AbstractProject project,
+                                                     Run owner,
+                                                     String customReleasePromotionLevel,
+                                                     String promotionRules) throws IOException, InterruptedException {
 
-        new ClearcaseReleaseActionImpl(workspaceRoot).performLatestBaselineRelease(
+        return new ClearcaseReleaseActionImpl(getWorkspaceRoot(), ReleaseLane.INTERACTIVE).performLatestBaselineRelease(
                 listener, project, owner,
-                customReleasePromotionLevel);
+                customReleasePromotionLevel, promotionRules);
     }
 
 
@@ -0,0 +1,435 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease;
+
+import hudson.Extension;
+import hudson.model.AbstractProject;
+import hudson.model.Hudson;
+import hudson.model.Item;
+import hudson.model.RootAction;
+import com.thalesgroup.hudson.plugins.clearcaserelease.biz.PvobConcurrencyLimiter;
+import com.thalesgroup.hudson.plugins.clearcaserelease.biz.ReleaseLane;
+import com.thalesgroup.hudson.plugins.clearcaserelease.biz.ReleasePreview;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+import org.kohsuke.stapler.export.Flavor;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * The JSON remote API of the releases, for polling the releases of all the jobs
+ * <ul>
+ * <li>/clearcase-release/list : the queued and running releases, with the admission limits and the rejected releases</li>
+ * <li>/clearcase-release/status?id=ID : the state of a release</li>
+ * <li>/clearcase-release/limiters : the adaptive concurrency limit and the lane queues of each PVOB</li>
+ * </ul>
+ * The release actions serve in the same way the baselines their release would promote, under ACTION_URL/plan.
+ * The responses have an ETag, a request with a matching If-None-Match header gets a 304 response.
+ * The list is filtered by the read permission of the user, its ETag includes the user.
+ */
+@Extension
+public class ClearcaseReleaseApi implements RootAction {
+
+    public String getIconFileName() {
+        return null;
+    }
+
+    public String getDisplayName() {
+        return null;
+    }
+
+    public String getUrlName() {
+        return "clearcase-release";
+    }
+
+    /**
+     * Represents the list of the active releases
+     */
+    @ExportedBean
+    public static class ReleaseList {
+
+        private final List<ReleaseStatus> releases;
+
+        public ReleaseList(List<ReleaseStatus> releases) {
+            this.releases = releases;
+        }
+
+        @Exported(inline = true)
+        public List<ReleaseStatus> getReleases() {
+            return releases;
+        }
+
+        @Exported
+        public int getMaxBacklog() {
+            return ReleaseTracker.get().getMaxBacklog();
+        }
+
+        @Exported
+        public int getMaxBacklogPerPvob() {
+            return ReleaseTracker.get().getMaxBacklogPerPvob();
+        }
+
+        /**
+         * @return the number of releases rejected since the startup
+         */
+        @Exported
+        public long getShedRequests() {
+            return ReleaseTracker.get().getTotalShedRequests();
+        }
+
+        /**
+         * @return the number of releases rejected since the startup, by PVOB
+         */
+        @Exported(inline = true)
+        public List<PvobShedRequests> getShedRequestsByPvob() {
+            List<PvobShedRequests> result = new ArrayList<PvobShedRequests>();
+            for (Map.Entry<String, Long> entry : ReleaseTracker.get().getShedRequests().entrySet()) {
+                result.add(new PvobShedRequests(entry.getKey(), entry.getValue()));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Represents the number of rejected releases on a PVOB
+     */
+    @ExportedBean
+    public static class PvobShedRequests {
+
+        private final String pvob;
+
+        private final long shedRequests;
+
+        public PvobShedRequests(String pvob, long shedRequests) {
+            this.pvob = pvob;
+            this.shedRequests = shedRequests;
+        }
+
+        @Exported
+        public String getPvob() {
+            return pvob;
+        }
+
+        @Exported
+        public long getShedRequests() {
+            return shedRequests;
+        }
+    }
+
+    /**
+     * Represents the state of the concurrency limiter of a PVOB
+     */
+    @ExportedBean
+    public static class LimiterStatus {
+
+        private final String pvob;
+
+        private final int limit;
+
+        private final int inFlight;
+
+        private final long slowCommands;
+
+        private final long overloadErrors;
+
+        private final long starvedGrants;
+
+        private final List<LaneStatus> lanes = new ArrayList<LaneStatus>();
+
+        public LimiterStatus(PvobConcurrencyLimiter limiter) {
+            this.pvob = limiter.getPvob();
+            this.limit = limiter.getLimit();
+            this.inFlight = limiter.getInFlight();
+            this.slowCommands = limiter.getSlowCommands();
+            this.overloadErrors = limiter.getOverloadErrors();
+            this.starvedGrants = limiter.getStarvedGrants();
+            for (ReleaseLane lane : ReleaseLane.values()) {
+                lanes.add(new LaneStatus(lane, limiter.getQueueDepth(lane), limiter.getGranted(lane)));
+            }
+        }
+
+        @Exported
+        public String getPvob() {
+            return pvob;
+        }
+
+        @Exported
+        public int getLimit() {
+            return limit;
+        }
+
+        @Exported
+        public int getInFlight() {
+            return inFlight;
+        }
+
+        @Exported
+        public long getSlowCommands() {
+            return slowCommands;
+        }
+
+        @Exported
+        public long getOverloadErrors() {
+            return overloadErrors;
+        }
+
+        @Exported
+        public long getStarvedGrants() {
+            return starvedGrants;
+        }
+
+        @Exported(inline = true)
+        public List<LaneStatus> getLanes() {
+            return lanes;
+        }
+    }
+
+    /**
+     * Represents the queue of a priority lane on a PVOB
+     */
+    @ExportedBean
+    public static class LaneStatus {
+
+        private final ReleaseLane lane;
+
+        private final int queueDepth;
+
+        private final long granted;
+
+        public LaneStatus(ReleaseLane lane, int queueDepth, long granted) {
+            this.lane = lane;
+            this.queueDepth = queueDepth;
+            this.granted = granted;
+        }
+
+        @Exported
+        public ReleaseLane getLane() {
+            return lane;
+        }
+
+        @Exported
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        @Exported
+        public long getGranted() {
+            return granted;
+        }
+    }
+
+    /**
+     * Represents the baselines a release would promote
+     */
+    @ExportedBean
+    public static class PreviewStatus {
+
+        private final ReleasePreview preview;
+
+        private final List<PreviewBaseline> baselines = new ArrayList<PreviewBaseline>();
+
+        public PreviewStatus(ReleasePreview preview) {
+            this.preview = preview;
+            for (ReleasePreview.Entry entry : preview.getEntries()) {
+                baselines.add(new PreviewBaseline(entry));
+            }
+        }
+
+        @Exported
+        public String getPromotionLevel() {
+            return preview.getPromotionLevel();
+        }
+
+        /**
+         * @return true if the preview has been computed from the plan prefetched after the build
+         */
+        @Exported
+        public boolean isCached() {
+            return preview.isCached();
+        }
+
+        @Exported
+        public long getCreationTime() {
+            return preview.getCreationTime();
+        }
+
+        @Exported
+        public int getPromotedCount() {
+            return preview.getPromotedCount();
+        }
+
+        @Exported
+        public int getEstimatedCommands() {
+            return preview.getEstimatedCommands();
+        }
+
+        @Exported
+        public long getEstimatedMillis() {
+            return preview.getEstimatedMillis();
+        }
+
+        @Exported(inline = true)
+        public List<PreviewBaseline> getBaselines() {
+            return baselines;
+        }
+    }
+
+    /**
+     * Represents a baseline of a release preview
+     */
+    @ExportedBean
+    public static class PreviewBaseline {
+
+        private final ReleasePreview.Entry entry;
+
+        public PreviewBaseline(ReleasePreview.Entry entry) {
+            this.entry = entry;
+        }
+
+        @Exported
+        public String getBaseline() {
+            return entry.getBaselineWithPVOB();
+        }
+
+        @Exported
+        public String getCurrentLevel() {
+            return entry.getCurrentLevel();
+        }
+
+        @Exported
+        public String getTargetLevel() {
+            return entry.getTargetLevel();
+        }
+
+        @Exported
+        public boolean isPromoted() {
+            return entry.isPromoted();
+        }
+    }
+
+    /**
+     * Represents the concurrency limiters of all the PVOBs
+     */
+    @ExportedBean
+    public static class LimiterList {
+
+        private final List<LimiterStatus> limiters = new ArrayList<LimiterStatus>();
+
+        public LimiterList() {
+            for (PvobConcurrencyLimiter limiter : PvobConcurrencyLimiter.getAll()) {
+                limiters.add(new LimiterStatus(limiter));
+            }
+        }
+
+        @Exported(inline = true)
+        public List<LimiterStatus> getLimiters() {
+            return limiters;
+        }
+    }
+
+    @SuppressWarnings("unused")
+    public void doLimiters(StaplerRequest req, StaplerResponse rsp) throws IOException, ServletException {
+        Hudson.getInstance().checkPermission(Hudson.ADMINISTER);
+        rsp.setHeader("Cache-Control", "no-cache");
+        rsp.serveExposedBean(req, new LimiterList(), Flavor.JSON);
+    }
+
+    @SuppressWarnings("unused")
+    public void doList(StaplerRequest req, StaplerResponse rsp) throws IOException, ServletException {
+        long version = ReleaseTracker.get().getVersion();
+        List<ReleaseStatus> releases = new ArrayList<ReleaseStatus>();
+        for (ReleaseStatus status : ReleaseTracker.get().getActive()) {
+            if (isReadable(status)) {
+                releases.add(status);
+            }
+        }
+        serveJson(req, rsp, new ReleaseList(releases), "list-" + version + "-" + getUserTag());
+    }
+
+    /**
+     * @return the part of the list ETag identifying the current user, the list depends on its permissions
+     */
+    private static String getUserTag() {
+        return Integer.toHexString(Hudson.getAuthentication().getName().hashCode());
+    }
+
+    @SuppressWarnings("unused")
+    public void doStatus(StaplerRequest req, StaplerResponse rsp) throws IOException, ServletException {
+        serveStatus(req, rsp, ReleaseTracker.get().getStatus(req.getParameter("id")));
+    }
+
+    private static boolean isReadable(ReleaseStatus status) {
+        if (status.getJobName() == null) {
+            return true;
+        }
+        AbstractProject project = Hudson.getInstance().getItemByFullName(status.getJobName(), AbstractProject.class);
+        return project != null && project.hasPermission(Item.READ);
+    }
+
+    /**
+     * Serve the state of a release
+     *
+     * @param req    the request object
+     * @param rsp    the response
+     * @param status the release, null if unknown
+     * @throws IOException
+     * @throws ServletException
+     */
+    static void serveStatus(StaplerRequest req, StaplerResponse rsp, ReleaseStatus status) throws IOException, ServletException {
+        if (status == null || !isReadable(status)) {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        serveJson(req, rsp, status, status.getETag());
+    }
+
+    /**
+     * Serve an exported bean as JSON unless the client already has it
+     *
+     * @param req  the request object
+     * @param rsp  the response
+     * @param bean the exported bean
+     * @param etag the version of the bean
+     * @throws IOException
+     * @throws ServletException
+     */
+    static void serveJson(StaplerRequest req, StaplerResponse rsp, Object bean, String etag) throws IOException, ServletException {
+        String quotedETag = "\"" + etag + "\"";
+        rsp.setHeader("ETag", quotedETag);
+        rsp.setHeader("Cache-Control", "no-cache");
+        if (quotedETag.equals(req.getHeader("If-None-Match"))) {
+            rsp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        rsp.serveExposedBean(req, bean, Flavor.JSON);
+    }
+}
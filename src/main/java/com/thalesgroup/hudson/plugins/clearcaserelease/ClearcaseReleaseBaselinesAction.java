@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease;
+
+import hudson.EnvVars;
+import hudson.model.AbstractBuild;
+import hudson.model.EnvironmentContributingAction;
+import hudson.model.Item;
+import hudson.model.Run;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import javax.servlet.ServletException;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Exposes the baselines promoted by a latest baselines release of a build.
+ * The baselines are stored in a file of the build directory, read on demand: only a small set is kept inline in the build.
+ * <ul>
+ * <li>LATEST_BASELINE : the baselines separated by ';', for a small set only</li>
+ * <li>LATEST_BASELINE_FILE : the file listing the baselines, one per line</li>
+ * <li>LATEST_BASELINE_COUNT : the number of baselines</li>
+ * </ul>
+ * The file is also served under BUILD_URL/clearcase-release-baselines.
+ */
+@ExportedBean
+public class ClearcaseReleaseBaselinesAction implements EnvironmentContributingAction {
+
+    public static final String FILE_NAME = "clearcase-release-baselines.txt";
+
+    /**
+     * The maximal length of the baselines kept inline in the build and in the LATEST_BASELINE variable
+     */
+    private static final int INLINE_MAX_LENGTH = Integer.getInteger(ClearcaseReleaseBaselinesAction.class.getName() + ".inlineMaxLength", 1024);
+
+    private final Run owner;
+
+    private final int count;
+
+    /**
+     * The baselines separated by ';', null for a set longer than the inline maximal length
+     */
+    private final String latestBaseline;
+
+    /**
+     * Store the promoted baselines in the build directory
+     *
+     * @param owner     the released build
+     * @param baselines the promoted baselines, with the PVOB
+     * @throws IOException if the file can't be written
+     */
+    public ClearcaseReleaseBaselinesAction(Run owner, List<String> baselines) throws IOException {
+        this.owner = owner;
+        this.count = baselines.size();
+
+        StringBuilder joined = new StringBuilder();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(new File(owner.getRootDir(), FILE_NAME)), "UTF-8");
+        try {
+            for (String baseline : baselines) {
+                writer.write(baseline.trim());
+                writer.write('\n');
+                if (joined.length() <= INLINE_MAX_LENGTH) {
+                    if (joined.length() != 0) {
+                        joined.append(';');
+                    }
+                    joined.append(baseline.trim());
+                }
+            }
+        } finally {
+            writer.close();
+        }
+        this.latestBaseline = (joined.length() <= INLINE_MAX_LENGTH) ? joined.toString() : null;
+    }
+
+    /**
+     * @return the file listing the baselines, one per line
+     */
+    public File getFile() {
+        return new File(owner.getRootDir(), FILE_NAME);
+    }
+
+    @Exported
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return the baselines separated by ';', null if they are only in the file
+     */
+    @Exported
+    public String getLatestBaseline() {
+        return latestBaseline;
+    }
+
+    /**
+     * Read the promoted baselines from the build directory
+     *
+     * @return the baselines with the PVOB
+     * @throws IOException if the file can't be read
+     */
+    public List<String> getBaselines() throws IOException {
+        List<String> baselines = new ArrayList<String>(count);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(getFile()), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() != 0) {
+                    baselines.add(line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return baselines;
+    }
+
+    public void buildEnvVars(AbstractBuild<?, ?> build, EnvVars env) {
+        if (latestBaseline != null) {
+            env.put("LATEST_BASELINE", latestBaseline);
+        }
+        env.put("LATEST_BASELINE_FILE", getFile().getAbsolutePath());
+        env.put("LATEST_BASELINE_COUNT", String.valueOf(count));
+    }
+
+    /**
+     * Serve the file listing the baselines
+     *
+     * @param req the request object
+     * @param rsp the response
+     * @throws IOException
+     * @throws ServletException
+     */
+    @SuppressWarnings("unused")
+    public void doIndex(StaplerRequest req, StaplerResponse rsp) throws IOException, ServletException {
+        owner.checkPermission(Item.READ);
+        rsp.serveFile(req, getFile().toURI().toURL());
+    }
+
+    public String getIconFileName() {
+        return null;
+    }
+
+    public String getDisplayName() {
+        return null;
+    }
+
+    public String getUrlName() {
+        return "clearcase-release-baselines";
+    }
+}
@@ -25,6 +25,7 @@ package com.thalesgroup.hudson.plugins.clearcaserelease;
 
 import hudson.Extension;
 import hudson.Launcher;
+import hudson.Util;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
 import hudson.model.Action;
@@ -32,10 +33,16 @@ import hudson.model.BuildListener;
 import hudson.plugins.clearcase.ucm.UcmMakeBaselineComposite;
 import hudson.tasks.BuildWrapper;
 import hudson.tasks.BuildWrapperDescriptor;
+import hudson.util.ComboBoxModel;
+import hudson.util.FormValidation;
+import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
 
 import java.io.IOException;
 
+import com.thalesgroup.hudson.plugins.clearcaserelease.biz.ClearcaseReleaseActionImpl;
+
 
 /**
  * Wraps the build by adding a clearcase release build action
@@ -45,18 +52,55 @@ public class ClearcaseReleaseBuildWrapper extends BuildWrapper {
 
     private String customReleasePromotionLevel;
 
-    @DataBoundConstructor
+    /**
+     * Promote also the baselines the composite baseline depends on
+     */
+    private boolean promoteCompositeDependencies;
+
+    /**
+     * The rules choosing the level of each latest baseline, one per line
+     */
+    private String promotionRules;
+
+    /**
+     * The project action, created once per job and kept up to date by the run listeners
+     */
+    private transient volatile ClearcaseReleaseLatestBaselineAction projectAction;
+
     public ClearcaseReleaseBuildWrapper(String customReleasePromotionLevel) {
+        this(customReleasePromotionLevel, false, null);
+    }
+
+    public ClearcaseReleaseBuildWrapper(String customReleasePromotionLevel, boolean promoteCompositeDependencies) {
+        this(customReleasePromotionLevel, promoteCompositeDependencies, null);
+    }
+
+    @DataBoundConstructor
+    public ClearcaseReleaseBuildWrapper(String customReleasePromotionLevel, boolean promoteCompositeDependencies, String promotionRules) {
         if (customReleasePromotionLevel != null && customReleasePromotionLevel.trim().length() == 0) {
             this.customReleasePromotionLevel = null;
         } else {
             this.customReleasePromotionLevel = customReleasePromotionLevel;
         }
+        this.promoteCompositeDependencies = promoteCompositeDependencies;
+        this.promotionRules = Util.fixEmptyAndTrim(promotionRules);
     }
 
     @Override
     public Action getProjectAction(AbstractProject job) {
-        return new ClearcaseReleaseLatestBaselineAction(job, customReleasePromotionLevel);
+        ClearcaseReleaseLatestBaselineAction action = projectAction;
+        if (action == null || action.getProject() != job) {
+            action = new ClearcaseReleaseLatestBaselineAction(job, customReleasePromotionLevel, promotionRules);
+            projectAction = action;
+        }
+        return action;
+    }
+
+    /**
+     * @return the project action if it has already been created, null otherwise
+     */
+    ClearcaseReleaseLatestBaselineAction getCachedProjectAction() {
+        return projectAction;
     }
 
     @Override
@@ -69,7 +113,13 @@ public class ClearcaseReleaseBuildWrapper extends BuildWrapper {
 
         UcmMakeBaselineComposite composite = (UcmMakeBaselineComposite) build.getProject().getPublishersList().get(hudson.plugins.clearcase.ucm.UcmMakeBaselineComposite.class);
         if (composite != null) {
-            build.addAction(new ClearcaseReleaseCompositeBaselineAction(build, customReleasePromotionLevel));
+
+            //Resolve the composite baseline now, the release doesn't need the build environment anymore
+            String compositeStream = composite.getCompositeStreamSelector();
+            String compositeBaseline = Util.replaceMacro(composite.getCompositeNamePattern(), build.getEnvironment(listener));
+            String pvob = ClearcaseReleaseActionImpl.getPVOB(compositeStream);
+
+            build.addAction(new ClearcaseReleaseCompositeBaselineAction(build, customReleasePromotionLevel, promoteCompositeDependencies, compositeBaseline, pvob, compositeStream));
         }
 
         return new Environment(){};
@@ -102,6 +152,21 @@ public class ClearcaseReleaseBuildWrapper extends BuildWrapper {
         public String getPluginRoot() {
             return "/plugin/clearcase-release/";
         }
+
+        @SuppressWarnings("unused")
+        public FormValidation doCheckCustomReleasePromotionLevel(@AncestorInPath AbstractProject project, @QueryParameter String value) {
+            return ClearcaseReleasePublisher.checkPromotionLevel(project, value);
+        }
+
+        @SuppressWarnings("unused")
+        public ComboBoxModel doFillCustomReleasePromotionLevelItems(@AncestorInPath AbstractProject project) {
+            return ClearcaseReleasePublisher.fillPromotionLevels(project);
+        }
+
+        @SuppressWarnings("unused")
+        public FormValidation doCheckPromotionRules(@AncestorInPath AbstractProject project, @QueryParameter String value) {
+            return ClearcaseReleasePublisher.checkPromotionRules(project, value);
+        }
     }
 
 
@@ -109,4 +174,14 @@ public class ClearcaseReleaseBuildWrapper extends BuildWrapper {
     public String getCustomReleasePromotionLevel() {
         return customReleasePromotionLevel;
     }
+
+    @SuppressWarnings("unused")
+    public boolean isPromoteCompositeDependencies() {
+        return promoteCompositeDependencies;
+    }
+
+    @SuppressWarnings("unused")
+    public String getPromotionRules() {
+        return promotionRules;
+    }
 }
@@ -72,25 +72,57 @@ public class ClearcaseReleaseCLI {
 
     @CLIMethod(name = "clearcaseCancelRelease")
     @SuppressWarnings("unused")
-    public synchronized void clearcaseCancelRelease() throws IOException, InterruptedException {
+    public synchronized void clearcaseCancelRelease() throws IOException, InterruptedException, CmdLineException {
         Run run = (Run) (((Job) this.job).getBuildByNumber(buildnumber));
         ClearcaseReleaseCancelAction clearcaseReleaseCancelAction = run.getAction(ClearcaseReleaseCancelAction.class);
-        clearcaseReleaseCancelAction.process();
+        process(clearcaseReleaseCancelAction);
     }
 
     @CLIMethod(name = "clearcasePromoteCompositeBaseline")
     @SuppressWarnings("unused")
-    public synchronized void clearcasePromoteCompositeBaseline() throws IOException, InterruptedException {
+    public synchronized void clearcasePromoteCompositeBaseline() throws IOException, InterruptedException, CmdLineException {
         Run run = (Run) (((Job) this.job).getBuildByNumber(buildnumber));
         ClearcaseReleaseCompositeBaselineAction clearcaseReleaseCompositeBaselineAction = run.getAction(ClearcaseReleaseCompositeBaselineAction.class);
-        clearcaseReleaseCompositeBaselineAction.process();
+        process(clearcaseReleaseCompositeBaselineAction);
+    }
+
+    @CLIMethod(name = "clearcaseAbortRelease")
+    @SuppressWarnings("unused")
+    public synchronized void clearcaseAbortRelease() throws IOException, InterruptedException, CmdLineException {
+        boolean aborted = false;
+        if (buildnumber == 0) {
+            ClearcaseReleaseLatestBaselineAction clearcaseReleaseLatestBaselineAction = job.getAction(ClearcaseReleaseLatestBaselineAction.class);
+            aborted = clearcaseReleaseLatestBaselineAction != null && clearcaseReleaseLatestBaselineAction.abort();
+        } else {
+            Run run = (Run) (((Job) this.job).getBuildByNumber(buildnumber));
+            for (ClearcaseReleaseAction clearcaseReleaseAction : run.getActions(ClearcaseReleaseAction.class)) {
+                aborted |= clearcaseReleaseAction.abort();
+            }
+        }
+        if (!aborted) {
+            throw new CmdLineException(null, "No running release to abort");
+        }
     }
 
     @CLIMethod(name = "clearcasePromoteLatestBaselines")
     @SuppressWarnings("unused")
-    public synchronized void clearcasePromoteLatestBaselines() throws IOException, InterruptedException {
+    public synchronized void clearcasePromoteLatestBaselines() throws IOException, InterruptedException, CmdLineException {
         ClearcaseReleaseLatestBaselineAction clearcaseReleaseLatestBaselineAction = job.getAction(ClearcaseReleaseLatestBaselineAction.class);
-        clearcaseReleaseLatestBaselineAction.process();
+        process(clearcaseReleaseLatestBaselineAction);
+    }
+
+    /**
+     * Submit a release, a rejected release fails the command with the retry hint
+     *
+     * @param clearcaseReleaseAction the release action
+     * @throws CmdLineException if too many releases are already queued or running
+     */
+    private void process(ClearcaseReleaseAction clearcaseReleaseAction) throws CmdLineException {
+        try {
+            clearcaseReleaseAction.process();
+        } catch (ReleaseRejectedException e) {
+            throw new CmdLineException(null, e.getMessage() + " Retry in " + e.getRetryAfterSeconds() + " s.");
+        }
     }
 
 
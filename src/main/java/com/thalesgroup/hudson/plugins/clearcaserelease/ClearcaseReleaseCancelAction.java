@@ -23,24 +23,26 @@
 
 package com.thalesgroup.hudson.plugins.clearcaserelease;
 
+import com.thalesgroup.hudson.plugins.clearcaserelease.biz.ClearcaseReleaseActionImpl;
 import hudson.FilePath;
 import hudson.model.AbstractProject;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.model.TaskThread;
-import hudson.plugins.clearcase.ClearCaseUcmSCM;
 import hudson.scm.SCM;
 import hudson.security.ACL;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.export.Exported;
 
 import javax.servlet.ServletException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /**
- * Cancel the badge action and reinitialize the release baseline to INITIAL
+ * Cancel the badge action and restore the released baselines to their level before the release
  */
 public class ClearcaseReleaseCancelAction extends ClearcaseReleaseAction {
 
@@ -53,12 +55,19 @@ public class ClearcaseReleaseCancelAction extends ClearcaseReleaseAction {
 
     private List<String> promotedBaselines = new ArrayList<String>();
 
-    public ClearcaseReleaseCancelAction(Run owner, AbstractProject project, FilePath workspace, ClearcaseReleaseBuildBadgeAction releaseBuildBadgeAction, List<String> promotedBaselines) {
+    /**
+     * The promotion level of each promoted baseline before the release.
+     * Null for releases recorded by previous versions.
+     */
+    private Map<String, String> previousLevels;
+
+    public ClearcaseReleaseCancelAction(Run owner, AbstractProject project, FilePath workspace, ClearcaseReleaseBuildBadgeAction releaseBuildBadgeAction, List<String> promotedBaselines, Map<String, String> previousLevels) {
         super(workspace);
         this.owner = owner;
         this.project = project;
         this.releaseBuildBadgeAction = releaseBuildBadgeAction;
         this.promotedBaselines = promotedBaselines;
+        this.previousLevels = previousLevels;
     }
 
 
@@ -67,6 +76,11 @@ public class ClearcaseReleaseCancelAction extends ClearcaseReleaseAction {
         return owner;
     }
 
+    @Exported
+    public List<String> getPromotedBaselines() {
+        return promotedBaselines;
+    }
+
     public String getDisplayName() {
         return Messages.ReleaseAction_perform_cancelPromotionReleaseLevel();
     }
@@ -96,17 +110,25 @@ public class ClearcaseReleaseCancelAction extends ClearcaseReleaseAction {
         getACL().checkPermission(SCM.TAG);
 
         //Cancel the Clearcase UCM release async
-        process();
+        try {
+            process();
+        } catch (ReleaseRejectedException e) {
+            sendRejection(resp, e);
+            return;
+        }
 
         doIndex(req, resp);
     }
 
 
-    public synchronized void process() {
+    public synchronized ReleaseStatus process() throws ReleaseRejectedException {
         SCM scm = project.getScm();
-        if (scm instanceof ClearCaseUcmSCM) {
-            new TagWorkerThread().start();
+        if (ClearcaseReleaseActionImpl.getStreams(scm).isEmpty()) {
+            return null;
         }
+        ReleaseStatus status = submitRelease(owner, promotedBaselines.isEmpty() ? null : ClearcaseReleaseActionImpl.getPVOB(promotedBaselines.get(0)));
+        new TagWorkerThread(status).start();
+        return status;
     }
 
 
@@ -116,24 +138,30 @@ public class ClearcaseReleaseCancelAction extends ClearcaseReleaseAction {
     public final class TagWorkerThread extends TaskThread {
 
 
-        public TagWorkerThread() {
+        private final ReleaseStatus status;
+
+        public TagWorkerThread(ReleaseStatus status) {
             super(ClearcaseReleaseCancelAction.this, ListenerAndText.forMemory());
+            this.status = status;
         }
 
         @Override
         protected void perform(TaskListener listener) {
             try {
+                status.running();
 
                 //Perform cancellation
-                performCancelRelease(listener, owner, releaseBuildBadgeAction, ClearcaseReleaseCancelAction.this, promotedBaselines);
+                performCancelRelease(listener, owner, releaseBuildBadgeAction, ClearcaseReleaseCancelAction.this, promotedBaselines, previousLevels);
 
                 //Save the build
                 owner.save();
 
+                status.succeeded(promotedBaselines.size());
             }
             catch (Throwable e) {
 
-                listener.getLogger().println("[ERROR]- " + e.getMessage());
+                logError(listener, e);
+                status.failed(e);
             }
             finally {
 
@@ -143,4 +171,4 @@ public class ClearcaseReleaseCancelAction extends ClearcaseReleaseAction {
             }
         }
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -23,14 +23,18 @@
 
 package com.thalesgroup.hudson.plugins.clearcaserelease;
 
+import com.thalesgroup.hudson.plugins.clearcaserelease.biz.ClearcaseReleaseActionImpl;
+import com.thalesgroup.hudson.plugins.clearcaserelease.biz.ReleaseLane;
+import com.thalesgroup.hudson.plugins.clearcaserelease.biz.ReleasePreview;
+import com.thalesgroup.hudson.plugins.clearcaserelease.biz.ReleaseResult;
 import hudson.model.AbstractBuild;
 import hudson.model.TaskListener;
 import hudson.model.TaskThread;
-import hudson.plugins.clearcase.ClearCaseUcmSCM;
 import hudson.scm.SCM;
 import hudson.security.ACL;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.export.Exported;
 
 import javax.servlet.ServletException;
 import java.io.IOException;
@@ -45,10 +49,27 @@ public class ClearcaseReleaseCompositeBaselineAction extends ClearcaseReleaseAct
 
     private final String customReleasePromotionLevel;
 
-    public ClearcaseReleaseCompositeBaselineAction(AbstractBuild owner, String customReleasePromotionLevel) {
+    private final boolean promoteDependencies;
+
+    /**
+     * The composite baseline resolved at build time, without the PVOB.
+     * Null for actions recorded by previous versions.
+     */
+    private final String compositeBaseline;
+
+    private final String pvob;
+
+    private final String compositeStream;
+
+    public ClearcaseReleaseCompositeBaselineAction(AbstractBuild owner, String customReleasePromotionLevel, boolean promoteDependencies,
+                                                   String compositeBaseline, String pvob, String compositeStream) {
         super(owner.getWorkspace());
         this.owner = owner;
         this.customReleasePromotionLevel = customReleasePromotionLevel;
+        this.promoteDependencies = promoteDependencies;
+        this.compositeBaseline = compositeBaseline;
+        this.pvob = pvob;
+        this.compositeStream = compositeStream;
     }
 
     @SuppressWarnings("unused")
@@ -56,6 +77,25 @@ public class ClearcaseReleaseCompositeBaselineAction extends ClearcaseReleaseAct
         return owner;
     }
 
+    @Exported
+    public String getCompositeBaseline() {
+        return compositeBaseline;
+    }
+
+    @Exported
+    public String getPvob() {
+        return pvob;
+    }
+
+    public String getCompositeStream() {
+        return compositeStream;
+    }
+
+    @Exported
+    public boolean isPromoteDependencies() {
+        return promoteDependencies;
+    }
+
     public String getDisplayName() {
         return Messages.ReleaseAction_perform_buildCompositeBaseline_name();
     }
@@ -78,22 +118,40 @@ public class ClearcaseReleaseCompositeBaselineAction extends ClearcaseReleaseAct
         return "clearcasereleasecompositebaseline";
     }
 
+    @Override
+    protected ReleasePreview computePreview(TaskListener listener) throws IOException, InterruptedException {
+        if (compositeBaseline == null) {
+            //The composite baseline of the actions recorded by previous versions is resolved at release time
+            return null;
+        }
+        return new ClearcaseReleaseActionImpl(getWorkspaceRoot(), ReleaseLane.INTERACTIVE).previewCompositeBaselineRelease(
+                listener, compositeBaseline, pvob, customReleasePromotionLevel, promoteDependencies);
+    }
+
     @SuppressWarnings("unused")
     public synchronized void doSubmit(StaplerRequest req, StaplerResponse resp) throws IOException, ServletException, InterruptedException {
 
         //The logged user must bae the TAG permission
         getACL().checkPermission(SCM.TAG);
 
-        process();
+        try {
+            process();
+        } catch (ReleaseRejectedException e) {
+            sendRejection(resp, e);
+            return;
+        }
 
         doIndex(req, resp);
     }
 
-    public void process() {
+    public ReleaseStatus process() throws ReleaseRejectedException {
         SCM scm = owner.getProject().getScm();
-        if (scm instanceof ClearCaseUcmSCM) {
-            new TagWorkerThread().start();
+        if (ClearcaseReleaseActionImpl.getStreams(scm).isEmpty()) {
+            return null;
         }
+        ReleaseStatus status = submitRelease(owner, pvob);
+        new TagWorkerThread(status).start();
+        return status;
     }
 
 
@@ -102,27 +160,41 @@ public class ClearcaseReleaseCompositeBaselineAction extends ClearcaseReleaseAct
      */
     public final class TagWorkerThread extends TaskThread {
 
-        public TagWorkerThread() {
+        private final ReleaseStatus status;
+
+        public TagWorkerThread(ReleaseStatus status) {
             super(ClearcaseReleaseCompositeBaselineAction.this, ListenerAndText.forMemory());
+            this.status = status;
         }
 
         @Override
         protected void perform(TaskListener listener) {
             try {
+                status.running();
 
                 //Release the composite baseline
-                performClearcaseReleaseCompisteBaseline(listener, owner, customReleasePromotionLevel);
+                ReleaseResult result;
+                if (compositeBaseline != null) {
+                    result = performClearcaseReleaseCompisteBaseline(listener, owner, compositeBaseline, pvob, customReleasePromotionLevel, promoteDependencies);
+                } else {
+                    result = performClearcaseReleaseCompisteBaseline(listener, owner, customReleasePromotionLevel, promoteDependencies);
+                }
 
                 //Save the the build information
                 owner.save();
+
+                status.succeeded((result == null) ? 0 : result.getPromotedBaselines().size());
             }
             catch (Throwable e) {
-                listener.getLogger().println("[ERROR] - " + e.getMessage());
+                logError(listener, e);
+                status.failed(e);
             }
             finally {
                 //reset the worker thread
                 workerThread = null;
 
+                invalidatePreview();
+
                 listener.getLogger().println("");
             }
         }
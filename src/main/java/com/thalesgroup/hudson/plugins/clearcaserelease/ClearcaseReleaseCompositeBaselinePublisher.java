@@ -30,7 +30,11 @@ import hudson.model.AbstractProject;
 import hudson.model.BuildListener;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.Publisher;
+import hudson.util.ComboBoxModel;
+import hudson.util.FormValidation;
+import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
 
 import java.io.IOException;
 
@@ -39,10 +43,20 @@ import com.thalesgroup.hudson.plugins.clearcaserelease.biz.ClearcaseReleaseActio
 
 public class ClearcaseReleaseCompositeBaselinePublisher extends ClearcaseReleasePublisher {
 
+    /**
+     * Promote also the baselines the composite baseline depends on
+     */
+    private boolean promoteDependencies;
 
     @DataBoundConstructor
-    public ClearcaseReleaseCompositeBaselinePublisher(String customReleasePromotionLevel) {
+    public ClearcaseReleaseCompositeBaselinePublisher(String customReleasePromotionLevel, boolean promoteDependencies) {
         super(customReleasePromotionLevel);
+        this.promoteDependencies = promoteDependencies;
+    }
+
+    @SuppressWarnings("unused")
+    public boolean isPromoteDependencies() {
+        return promoteDependencies;
     }
 
     @Override
@@ -54,7 +68,13 @@ public class ClearcaseReleaseCompositeBaselinePublisher extends ClearcaseRelease
     @Override
     public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws InterruptedException, IOException {
 
-        new ClearcaseReleaseActionImpl(build.getWorkspace()).performCompoisteBaselineRelease(listener, build, getCustomReleasePromotionLevel());
+        //Reuse the composite baseline resolved by the build wrapper when available
+        ClearcaseReleaseCompositeBaselineAction compositeAction = build.getAction(ClearcaseReleaseCompositeBaselineAction.class);
+        if (compositeAction != null && compositeAction.getCompositeBaseline() != null) {
+            new ClearcaseReleaseActionImpl(build.getWorkspace()).performCompoisteBaselineRelease(listener, build, compositeAction.getCompositeBaseline(), compositeAction.getPvob(), getCustomReleasePromotionLevel(), promoteDependencies);
+        } else {
+            new ClearcaseReleaseActionImpl(build.getWorkspace()).performCompoisteBaselineRelease(listener, build, getCustomReleasePromotionLevel(), promoteDependencies);
+        }
                         
         return true;
     }
@@ -89,6 +109,16 @@ public class ClearcaseReleaseCompositeBaselinePublisher extends ClearcaseRelease
             return "/plugin/clearcase-release/";
         }
 
+        @SuppressWarnings("unused")
+        public FormValidation doCheckCustomReleasePromotionLevel(@AncestorInPath AbstractProject project, @QueryParameter String value) {
+            return ClearcaseReleasePublisher.checkPromotionLevel(project, value);
+        }
+
+        @SuppressWarnings("unused")
+        public ComboBoxModel doFillCustomReleasePromotionLevelItems(@AncestorInPath AbstractProject project) {
+            return ClearcaseReleasePublisher.fillPromotionLevels(project);
+        }
+
 
     }
 }
@@ -23,11 +23,21 @@
 
 package com.thalesgroup.hudson.plugins.clearcaserelease;
 
+import com.thalesgroup.hudson.plugins.clearcaserelease.biz.ClearcaseReleaseActionImpl;
+import com.thalesgroup.hudson.plugins.clearcaserelease.biz.ReleaseLane;
+import com.thalesgroup.hudson.plugins.clearcaserelease.biz.ReleasePlan;
+import com.thalesgroup.hudson.plugins.clearcaserelease.biz.ReleasePreview;
+import com.thalesgroup.hudson.plugins.clearcaserelease.biz.ReleaseResult;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
+import hudson.model.BuildableItemWithBuildWrappers;
+import hudson.model.Result;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.model.TaskThread;
-import hudson.plugins.clearcase.ClearCaseUcmSCM;
+import hudson.model.listeners.RunListener;
 import hudson.scm.SCM;
 import hudson.security.ACL;
 import org.kohsuke.stapler.StaplerRequest;
@@ -35,6 +45,7 @@ import org.kohsuke.stapler.StaplerResponse;
 
 import javax.servlet.ServletException;
 import java.io.IOException;
+import java.util.List;
 
 
 /**
@@ -46,21 +57,105 @@ public class ClearcaseReleaseLatestBaselineAction extends ClearcaseReleaseAction
 
     private final String customReleasePromotionLevel;
 
+    /**
+     * The rules choosing the level of each baseline, null for none
+     */
+    private final String promotionRules;
+
+    /**
+     * The last successful build, kept up to date by {@link RunListenerImpl}
+     */
+    private volatile Run lastSuccessfulBuild;
+
+    /**
+     * True if the project uses an UCM stream
+     */
+    private final boolean releasable;
+
     public ClearcaseReleaseLatestBaselineAction(AbstractProject project, String customReleasePromotionLevel) {
-        super(project.getWorkspace());
+        this(project, customReleasePromotionLevel, null);
+    }
+
+    public ClearcaseReleaseLatestBaselineAction(AbstractProject project, String customReleasePromotionLevel, String promotionRules) {
+        super(null);
         this.project = project;
         this.customReleasePromotionLevel = customReleasePromotionLevel;
+        this.promotionRules = promotionRules;
+        this.lastSuccessfulBuild = project.getLastSuccessfulBuild();
+        this.releasable = !ClearcaseReleaseActionImpl.getStreams(project.getScm()).isEmpty();
     }
 
     @SuppressWarnings("unused")
     public Run getOwner() {
-        return project.getLastSuccessfulBuild();
+        return lastSuccessfulBuild;
+    }
+
+    AbstractProject getProject() {
+        return project;
+    }
+
+    @Override
+    protected FilePath getWorkspaceRoot() {
+        return project.getWorkspace();
+    }
+
+    /**
+     * Update the last successful build with a completed build
+     *
+     * @param build the completed build
+     */
+    void onCompleted(Run build) {
+        Result result = build.getResult();
+        if (result == null || result.isWorseThan(Result.UNSTABLE)) {
+            return;
+        }
+        Run current = lastSuccessfulBuild;
+        if (current == null || current.getNumber() < build.getNumber()) {
+            lastSuccessfulBuild = build;
+            invalidatePreview();
+        }
+    }
+
+    /**
+     * Look up the last successful build again after a build deletion
+     *
+     * @param build the deleted build
+     */
+    void onDeleted(Run build) {
+        if (lastSuccessfulBuild == build) {
+            lastSuccessfulBuild = project.getLastSuccessfulBuild();
+            invalidatePreview();
+        }
     }
 
     public String getUrlName() {
         return "clearcasereleaselatestbaseline";
     }
 
+    @Override
+    protected ReleasePreview computePreview(TaskListener listener) throws IOException, InterruptedException {
+        Run owner = lastSuccessfulBuild;
+        List<String> streams = ClearcaseReleaseActionImpl.getStreams(project.getScm());
+        if (owner == null || streams.isEmpty()) {
+            return null;
+        }
+        return new ClearcaseReleaseActionImpl(getWorkspaceRoot(), ReleaseLane.INTERACTIVE).previewLatestBaselineRelease(
+                listener, streams, ReleasePlan.getAll(owner),
+                customReleasePromotionLevel, promotionRules);
+    }
+
+    @Override
+    protected ReleasePreview computeCachedPreview() {
+        Run owner = lastSuccessfulBuild;
+        List<String> streams = ClearcaseReleaseActionImpl.getStreams(project.getScm());
+        if (owner == null || streams.isEmpty()) {
+            return null;
+        }
+        return ClearcaseReleaseActionImpl.previewCachedLatestBaselineRelease(
+                streams, ReleasePlan.getAll(owner),
+                customReleasePromotionLevel, promotionRules);
+    }
+
 
     /**
      * Gets the icon if there is at least one success build (or unstable)
@@ -69,8 +164,7 @@ public class ClearcaseReleaseLatestBaselineAction extends ClearcaseReleaseAction
      * @return the icon to display
      */
     public String getIconFileName() {
-        Run lastBuild = project.getLastSuccessfulBuild();
-        if (lastBuild != null && hasReleasePermission(project)) {
+        if (releasable && lastSuccessfulBuild != null && hasReleasePermission(project)) {
             return "installer.gif";
         }
         // by returning null the link will not be shown.
@@ -82,8 +176,12 @@ public class ClearcaseReleaseLatestBaselineAction extends ClearcaseReleaseAction
         return Messages.ReleaseAction_perform_latestBaselines_name();
     }
 
+    /**
+     * @return the ACL of the last successful build, the one of the project if there is none
+     */
     protected ACL getACL() {
-        return getOwner().getACL();
+        Run owner = lastSuccessfulBuild;
+        return (owner == null) ? project.getACL() : owner.getACL();
     }
 
 
@@ -93,16 +191,25 @@ public class ClearcaseReleaseLatestBaselineAction extends ClearcaseReleaseAction
         //The logged user must bae the TAG permission
         getACL().checkPermission(SCM.TAG);
 
-        process();
+        try {
+            process();
+        } catch (ReleaseRejectedException e) {
+            sendRejection(resp, e);
+            return;
+        }
 
         doIndex(req, resp);
     }
 
-    public void process() {
-        SCM scm = project.getScm();
-        if (scm instanceof ClearCaseUcmSCM) {
-            new TagWorkerThread().start();
+    public ReleaseStatus process() throws ReleaseRejectedException {
+        Run owner = lastSuccessfulBuild;
+        if (!releasable || owner == null) {
+            return null;
         }
+        List<String> streams = ClearcaseReleaseActionImpl.getStreams(project.getScm());
+        ReleaseStatus status = submitRelease(owner, streams.isEmpty() ? null : ClearcaseReleaseActionImpl.getPVOB(streams.get(0)));
+        new TagWorkerThread(owner, status).start();
+        return status;
     }
 
     /**
@@ -111,32 +218,78 @@ public class ClearcaseReleaseLatestBaselineAction extends ClearcaseReleaseAction
     public final class TagWorkerThread extends TaskThread {
 
 
-        public TagWorkerThread() {
+        private final Run owner;
+
+        private final ReleaseStatus status;
+
+        public TagWorkerThread(Run owner, ReleaseStatus status) {
             super(ClearcaseReleaseLatestBaselineAction.this, ListenerAndText.forMemory());
+            this.owner = owner;
+            this.status = status;
         }
 
         @Override
         protected void perform(TaskListener listener) {
             try {
-
-                Run owner = getOwner();
+                status.running();
 
                 //Process release latest baselines
-                performLatestBaselineRelease(listener, project, owner, customReleasePromotionLevel);
+                ReleaseResult result = performLatestBaselineRelease(listener, project, owner, customReleasePromotionLevel, promotionRules);
 
                 //Save the the build information
                 owner.save();
 
+                status.succeeded((result == null) ? 0 : result.getPromotedBaselines().size());
+
             } catch (Throwable e) {
-                listener.getLogger().println("[ERROR] - " + e.getMessage());
+                logError(listener, e);
+                status.failed(e);
             }
             finally {
                 //reset the worker thread
                 workerThread = null;
+
+                invalidatePreview();
             }
 
 
         }
     }
 
+    /**
+     * Keeps the cached last successful build of the project actions up to date
+     */
+    @Extension
+    public static final class RunListenerImpl extends RunListener<AbstractBuild> {
+
+        public RunListenerImpl() {
+            super(AbstractBuild.class);
+        }
+
+        private ClearcaseReleaseLatestBaselineAction getProjectAction(AbstractBuild build) {
+            AbstractProject project = build.getProject();
+            if (!(project instanceof BuildableItemWithBuildWrappers)) {
+                return null;
+            }
+            ClearcaseReleaseBuildWrapper wrapper = ((BuildableItemWithBuildWrappers) project).getBuildWrappersList().get(ClearcaseReleaseBuildWrapper.class);
+            return (wrapper == null) ? null : wrapper.getCachedProjectAction();
+        }
+
+        @Override
+        public void onCompleted(AbstractBuild build, TaskListener listener) {
+            ClearcaseReleaseLatestBaselineAction action = getProjectAction(build);
+            if (action != null) {
+                action.onCompleted(build);
+            }
+        }
+
+        @Override
+        public void onDeleted(AbstractBuild build) {
+            ClearcaseReleaseLatestBaselineAction action = getProjectAction(build);
+            if (action != null) {
+                action.onDeleted(build);
+            }
+        }
+    }
+
 }
@@ -25,24 +25,81 @@ package com.thalesgroup.hudson.plugins.clearcaserelease;
 
 import hudson.Extension;
 import hudson.Launcher;
+import hudson.Util;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
 import hudson.model.BuildListener;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.Publisher;
+import hudson.util.ComboBoxModel;
+import hudson.util.FormValidation;
+import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
 
 import java.io.IOException;
+import java.util.List;
 
 import com.thalesgroup.hudson.plugins.clearcaserelease.biz.ClearcaseReleaseActionImpl;
 
 
 public class ClearcaseReleaseLatestBaselinePublisher extends ClearcaseReleasePublisher {
 
+    /**
+     * The quiet period in seconds before a debounced promotion, 0 to promote at each build
+     */
+    private int debounceQuietPeriod;
+
+    /**
+     * The maximal delay in seconds between the first coalesced build and the debounced promotion
+     */
+    private int debounceMaxDelay;
+
+    /**
+     * The rules choosing the level of each latest baseline, one per line
+     */
+    private String promotionRules;
 
-    @DataBoundConstructor
     public ClearcaseReleaseLatestBaselinePublisher(String customReleasePromotionLevel) {
+        this(customReleasePromotionLevel, null, null, null);
+    }
+
+    public ClearcaseReleaseLatestBaselinePublisher(String customReleasePromotionLevel, String debounceQuietPeriod, String debounceMaxDelay) {
+        this(customReleasePromotionLevel, debounceQuietPeriod, debounceMaxDelay, null);
+    }
+
+    @DataBoundConstructor
+    public ClearcaseReleaseLatestBaselinePublisher(String customReleasePromotionLevel, String debounceQuietPeriod, String debounceMaxDelay, String promotionRules) {
         super(customReleasePromotionLevel);
+        this.debounceQuietPeriod = parseSeconds(debounceQuietPeriod);
+        this.debounceMaxDelay = parseSeconds(debounceMaxDelay);
+        this.promotionRules = Util.fixEmptyAndTrim(promotionRules);
+    }
+
+    private static int parseSeconds(String value) {
+        if (value == null || value.trim().length() == 0) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException nfe) {
+            return 0;
+        }
+    }
+
+    @SuppressWarnings("unused")
+    public int getDebounceQuietPeriod() {
+        return debounceQuietPeriod;
+    }
+
+    @SuppressWarnings("unused")
+    public int getDebounceMaxDelay() {
+        return debounceMaxDelay;
+    }
+
+    @SuppressWarnings("unused")
+    public String getPromotionRules() {
+        return promotionRules;
     }
 
     @Override
@@ -54,7 +111,19 @@ public class ClearcaseReleaseLatestBaselinePublisher extends ClearcaseReleasePub
     @Override
     public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws InterruptedException, IOException {
 
-        new ClearcaseReleaseActionImpl(build.getWorkspace()).performLatestBaselineRelease(listener, build.getProject(), build, getCustomReleasePromotionLevel());
+        List<String> streams = ClearcaseReleaseActionImpl.getStreams(build.getProject().getScm());
+        if (debounceQuietPeriod > 0 && !streams.isEmpty()) {
+
+            //Coalesce the promotion with the ones of the next builds
+            String stream = (streams.size() == 1) ? streams.get(0) : streams.toString();
+            PromotionDebouncer.get().submit(stream, build, getCustomReleasePromotionLevel(), promotionRules, debounceQuietPeriod * 1000L, debounceMaxDelay * 1000L);
+            listener.getLogger().println("The promotion of the latest baselines of '" + stream + "' is delayed by " + debounceQuietPeriod
+                    + " second(s), it will apply to the newest build requesting it. See '" + PromotionDebouncer.LOG_FILE + "' in the build directory of the promoted build.");
+            listener.getLogger().println("The delayed promotion is lost if Hudson restarts before it starts.");
+            return true;
+        }
+
+        new ClearcaseReleaseActionImpl(build.getWorkspace()).performLatestBaselineRelease(listener, build.getProject(), build, getCustomReleasePromotionLevel(), promotionRules);
 
         return true;
     }
@@ -89,6 +158,21 @@ public class ClearcaseReleaseLatestBaselinePublisher extends ClearcaseReleasePub
             return "/plugin/clearcase-release/";
         }
 
+        @SuppressWarnings("unused")
+        public FormValidation doCheckCustomReleasePromotionLevel(@AncestorInPath AbstractProject project, @QueryParameter String value) {
+            return ClearcaseReleasePublisher.checkPromotionLevel(project, value);
+        }
+
+        @SuppressWarnings("unused")
+        public ComboBoxModel doFillCustomReleasePromotionLevelItems(@AncestorInPath AbstractProject project) {
+            return ClearcaseReleasePublisher.fillPromotionLevels(project);
+        }
+
+        @SuppressWarnings("unused")
+        public FormValidation doCheckPromotionRules(@AncestorInPath AbstractProject project, @QueryParameter String value) {
+            return ClearcaseReleasePublisher.checkPromotionRules(project, value);
+        }
+
 
     }
 }
@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease;
+
+import hudson.ExtensionList;
+import hudson.ExtensionPoint;
+import hudson.model.Hudson;
+
+
+/**
+ * Receives the promotions and the cancellations of releases.
+ * The events are delivered asynchronously by a dedicated thread, after the release has completed;
+ * a slow listener delays the next events but never the releases.
+ * <p/>
+ * Put {@link hudson.Extension} on the implementations to register them.
+ */
+public abstract class ClearcaseReleaseListener implements ExtensionPoint {
+
+    /**
+     * Called after baselines have been promoted
+     *
+     * @param event the promotion
+     */
+    public void onPromoted(ReleaseEvent event) {
+    }
+
+    /**
+     * Called after a release has been cancelled, its baselines being restored to their previous level
+     *
+     * @param event the cancellation
+     */
+    public void onCancelled(ReleaseEvent event) {
+    }
+
+    /**
+     * @return all the registered listeners
+     */
+    public static ExtensionList<ClearcaseReleaseListener> all() {
+        return Hudson.getInstance().getExtensionList(ClearcaseReleaseListener.class);
+    }
+}
@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease;
+
+import com.thalesgroup.hudson.plugins.clearcaserelease.biz.ClearcaseReleaseActionImpl;
+import com.thalesgroup.hudson.plugins.clearcaserelease.biz.ReleaseLane;
+import com.thalesgroup.hudson.plugins.clearcaserelease.biz.ReleasePlan;
+import hudson.Extension;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.BuildableItemWithBuildWrappers;
+import hudson.model.Result;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import hudson.util.LogTaskListener;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * Prefetches the release plan of the latest baselines after each successful build of a job using the release build wrapper,
+ * so that a later manual release only has to check the plan and promote
+ */
+@Extension
+public class ClearcaseReleasePrefetchListener extends RunListener<AbstractBuild> {
+
+    private static final Logger LOGGER = Logger.getLogger(ClearcaseReleasePrefetchListener.class.getName());
+
+    /**
+     * The maximum number of prefetches running at the same time
+     */
+    private static final int PREFETCH_THREADS = Integer.getInteger(ClearcaseReleasePrefetchListener.class.getName() + ".threads", 2);
+
+    /**
+     * Low priority daemon threads, the prefetch must not compete with the builds
+     */
+    private static final ExecutorService PREFETCH_POOL = new ThreadPoolExecutor(PREFETCH_THREADS, PREFETCH_THREADS,
+            60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "ClearCase release prefetch");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+
+    public ClearcaseReleasePrefetchListener() {
+        super(AbstractBuild.class);
+    }
+
+    @Override
+    public void onCompleted(final AbstractBuild build, TaskListener listener) {
+
+        Result result = build.getResult();
+        if (result == null || result.isWorseThan(Result.UNSTABLE)) {
+            return;
+        }
+
+        AbstractProject project = build.getProject();
+        if (!(project instanceof BuildableItemWithBuildWrappers)) {
+            return;
+        }
+        if (((BuildableItemWithBuildWrappers) project).getBuildWrappersList().get(ClearcaseReleaseBuildWrapper.class) == null) {
+            return;
+        }
+
+        //One plan per stream, the streams are prefetched concurrently
+        for (final String stream : ClearcaseReleaseActionImpl.getStreams(project.getScm())) {
+            PREFETCH_POOL.execute(new Runnable() {
+                public void run() {
+                    try {
+                        TaskListener prefetchListener = new LogTaskListener(LOGGER, Level.FINE);
+                        ClearcaseReleaseActionImpl releaseImpl = new ClearcaseReleaseActionImpl(build.getWorkspace(), ReleaseLane.BACKGROUND);
+                        ReleasePlan plan = releaseImpl.planLatestBaselineRelease(prefetchListener, stream);
+                        ReleasePlan.put(build, plan);
+                    } catch (Throwable e) {
+                        LOGGER.log(Level.FINE, "Unable to prefetch the release plan of " + stream + " for " + build.getFullDisplayName(), e);
+                    }
+                }
+            });
+        }
+    }
+}
@@ -23,8 +23,18 @@
 
 package com.thalesgroup.hudson.plugins.clearcaserelease;
 
+import com.thalesgroup.hudson.plugins.clearcaserelease.biz.ClearcaseReleaseActionImpl;
+import com.thalesgroup.hudson.plugins.clearcaserelease.biz.PromotionLevels;
+import com.thalesgroup.hudson.plugins.clearcaserelease.biz.PromotionRules;
+import hudson.model.AbstractProject;
+import hudson.model.Item;
+import hudson.plugins.clearcase.ucm.UcmMakeBaselineComposite;
 import hudson.tasks.BuildStepMonitor;
 import hudson.tasks.Recorder;
+import hudson.util.ComboBoxModel;
+import hudson.util.FormValidation;
+
+import java.util.List;
 
 
 public abstract class ClearcaseReleasePublisher extends Recorder {
@@ -42,4 +52,99 @@ public abstract class ClearcaseReleasePublisher extends Recorder {
     public String getCustomReleasePromotionLevel() {
         return customReleasePromotionLevel;
     }
+
+    /**
+     * Check a custom promotion level is defined in the PVOB of a job.
+     * The page isn't blocked while the levels of the PVOB are listed in the background.
+     *
+     * @param project the job
+     * @param value   the custom promotion level
+     * @return the validation result, a warning while the levels of the PVOB are listed, OK when they can't be listed
+     */
+    static FormValidation checkPromotionLevel(AbstractProject project, String value) {
+        if (value == null || value.trim().length() == 0) {
+            return FormValidation.ok();
+        }
+        String pvob = getPVOB(project);
+        if (pvob == null) {
+            return FormValidation.ok();
+        }
+        List<String> levels = PromotionLevels.get(pvob);
+        if (levels == null) {
+            if (PromotionLevels.isListing(pvob)) {
+                return FormValidation.warning("The promotion levels of the PVOB '" + pvob + "' are being listed, '" + value.trim() + "' can't be checked yet");
+            }
+            return FormValidation.ok();
+        }
+        if (levels.contains(value.trim())) {
+            return FormValidation.ok();
+        }
+        return FormValidation.error("'" + value.trim() + "' isn't a promotion level of the PVOB '" + pvob + "', its levels are " + levels);
+    }
+
+    /**
+     * Check the promotion rules of a job compile, and that their levels are defined in the PVOB of the job
+     *
+     * @param project the job
+     * @param value   the promotion rules, one per line
+     * @return the validation result
+     */
+    static FormValidation checkPromotionRules(AbstractProject project, String value) {
+        PromotionRules rules;
+        try {
+            rules = PromotionRules.get(value);
+        } catch (IllegalArgumentException e) {
+            return FormValidation.error(e.getMessage());
+        }
+        if (rules == null) {
+            return FormValidation.ok();
+        }
+        for (String level : rules.getLevels()) {
+            FormValidation validation = checkPromotionLevel(project, level);
+            if (validation.kind != FormValidation.Kind.OK) {
+                return validation;
+            }
+        }
+        return FormValidation.ok();
+    }
+
+    /**
+     * List the promotion levels of the PVOB of a job
+     *
+     * @param project the job
+     * @return the promotion levels, empty while they are listed in the background or when they can't be listed
+     */
+    static ComboBoxModel fillPromotionLevels(AbstractProject project) {
+        ComboBoxModel model = new ComboBoxModel();
+        String pvob = getPVOB(project);
+        if (pvob != null) {
+            List<String> levels = PromotionLevels.get(pvob);
+            if (levels != null) {
+                model.addAll(levels);
+            }
+        }
+        return model;
+    }
+
+    /**
+     * Get the PVOB of the baselines released by a job, from its UCM stream or its composite baseline stream.
+     * The levels of the PVOB are only listed for the users allowed to configure the job.
+     *
+     * @param project the job
+     * @return the PVOB, null if unknown or if the current user can't configure the job
+     */
+    private static String getPVOB(AbstractProject project) {
+        if (project == null || !project.hasPermission(Item.CONFIGURE)) {
+            return null;
+        }
+        List<String> streams = ClearcaseReleaseActionImpl.getStreams(project.getScm());
+        if (!streams.isEmpty()) {
+            return ClearcaseReleaseActionImpl.getPVOB(streams.get(0));
+        }
+        UcmMakeBaselineComposite composite = (UcmMakeBaselineComposite) project.getPublishersList().get(UcmMakeBaselineComposite.class);
+        if (composite != null) {
+            return ClearcaseReleaseActionImpl.getPVOB(composite.getCompositeStreamSelector());
+        }
+        return null;
+    }
 }
@@ -0,0 +1,305 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease;
+
+import com.thalesgroup.hudson.plugins.clearcaserelease.biz.ClearcaseReleaseActionImpl;
+import hudson.model.AbstractBuild;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.StreamTaskListener;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * Coalesces the automatic promotions requested for a stream by rapid builds.
+ * A single promotion runs for the newest build once no request has been received during a quiet period,
+ * or when the maximal delay since the first pending request has expired.
+ * The pending promotions are kept in memory only, they are lost when Hudson restarts.
+ */
+public final class PromotionDebouncer {
+
+    private static final Logger LOGGER = Logger.getLogger(PromotionDebouncer.class.getName());
+
+    /**
+     * The file of the build directory receiving the log of a debounced promotion
+     */
+    public static final String LOG_FILE = "clearcase-release.log";
+
+    /**
+     * The minimal delay before checking again a promotion waiting for a running promotion or build
+     */
+    private static final long RETRY_MILLIS = 1000;
+
+    private static final PromotionDebouncer INSTANCE = new PromotionDebouncer();
+
+    private final ScheduledExecutorService scheduler;
+
+    private final ExecutorService promotions;
+
+    /**
+     * The promotion requests not yet started, by stream
+     */
+    private final Map<String, PendingPromotion> pending = new HashMap<String, PendingPromotion>();
+
+    /**
+     * The streams having a running promotion
+     */
+    private final Set<String> running = new HashSet<String>();
+
+    public static PromotionDebouncer get() {
+        return INSTANCE;
+    }
+
+    private PromotionDebouncer() {
+        this(Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory()),
+                Executors.newCachedThreadPool(new DaemonThreadFactory()));
+    }
+
+    /**
+     * @param scheduler  the scheduler of the promotion timers
+     * @param promotions the executor running the promotions
+     */
+    PromotionDebouncer(ScheduledExecutorService scheduler, ExecutorService promotions) {
+        this.scheduler = scheduler;
+        this.promotions = promotions;
+    }
+
+    /**
+     * Represents a promotion requested by a build
+     */
+    interface PromotionRequest {
+
+        /**
+         * @return the number of the requesting build, the request of the newest build is promoted
+         */
+        int getNumber();
+
+        /**
+         * @return true while the requesting build is running, the promotion waits for its end
+         */
+        boolean isBuilding();
+
+        /**
+         * Promote the latest baselines, the failures are logged
+         */
+        void promote();
+    }
+
+    /**
+     * Represents the promotion requested by a build of a job with the latest baselines publisher
+     */
+    private static final class BuildPromotionRequest implements PromotionRequest {
+
+        private final AbstractBuild build;
+
+        private final String customReleasePromotionLevel;
+
+        private final String promotionRules;
+
+        private BuildPromotionRequest(AbstractBuild build, String customReleasePromotionLevel, String promotionRules) {
+            this.build = build;
+            this.customReleasePromotionLevel = customReleasePromotionLevel;
+            this.promotionRules = promotionRules;
+        }
+
+        public int getNumber() {
+            return build.getNumber();
+        }
+
+        public boolean isBuilding() {
+            return build.isBuilding();
+        }
+
+        public void promote() {
+            try {
+                StreamTaskListener listener = new StreamTaskListener(new File(build.getRootDir(), LOG_FILE));
+                try {
+                    new ClearcaseReleaseActionImpl(build.getWorkspace()).performLatestBaselineRelease(listener, build.getProject(), build, customReleasePromotionLevel, promotionRules);
+                    build.save();
+                } finally {
+                    listener.close();
+                }
+            } catch (Throwable e) {
+                LOGGER.log(Level.WARNING, "The debounced promotion of " + build.getFullDisplayName() + " has failed", e);
+            }
+        }
+    }
+
+    /**
+     * Represents the coalesced promotion requests of a stream
+     */
+    private final class PendingPromotion {
+
+        private final String stream;
+
+        private final long firstRequest = System.currentTimeMillis();
+
+        private PromotionRequest request;
+
+        private long quietMillis;
+
+        private long maxDelayMillis;
+
+        /**
+         * Incremented by each scheduling, a timer already firing when it is rescheduled is superseded
+         */
+        private int generation;
+
+        private ScheduledFuture<?> timer;
+
+        private PendingPromotion(String stream) {
+            this.stream = stream;
+        }
+
+        private void schedule() {
+            long now = System.currentTimeMillis();
+            schedule(getFireTime(firstRequest, now, quietMillis, maxDelayMillis) - now);
+        }
+
+        private void schedule(long delayMillis) {
+            if (timer != null) {
+                timer.cancel(false);
+            }
+            final int timerGeneration = ++generation;
+            timer = scheduler.schedule(new Runnable() {
+                public void run() {
+                    fire(timerGeneration);
+                }
+            }, Math.max(0, delayMillis), TimeUnit.MILLISECONDS);
+        }
+
+        private void fire(int timerGeneration) {
+            final PromotionRequest promoted;
+            synchronized (PromotionDebouncer.this) {
+                if (pending.get(stream) != this || timerGeneration != generation) {
+                    //Superseded, by a promotion already started or by a newer request
+                    return;
+                }
+                if (running.contains(stream) || request.isBuilding()) {
+                    //Wait for the running promotion of the stream, and for the end of the promoted build
+                    schedule(Math.max(quietMillis, RETRY_MILLIS));
+                    return;
+                }
+                pending.remove(stream);
+                running.add(stream);
+                promoted = request;
+            }
+            promotions.submit(new Runnable() {
+                public void run() {
+                    try {
+                        promoted.promote();
+                    } finally {
+                        synchronized (PromotionDebouncer.this) {
+                            running.remove(stream);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Request the promotion of the latest baselines of a stream
+     *
+     * @param stream                      the stream with the PVOB
+     * @param build                       the build requesting the promotion
+     * @param customReleasePromotionLevel the promotion level, null for the default level
+     * @param promotionRules              the rules choosing the level of each baseline, null for none
+     * @param quietMillis                 the quiet period before the promotion
+     * @param maxDelayMillis              the maximal delay between the first pending request and the promotion, 0 for no maximal delay
+     * @return true if the request is the newest pending one, false if a newer build has already requested the promotion
+     */
+    public boolean submit(String stream, AbstractBuild build, String customReleasePromotionLevel, String promotionRules, long quietMillis, long maxDelayMillis) {
+        return submit(stream, new BuildPromotionRequest(build, customReleasePromotionLevel, promotionRules), quietMillis, maxDelayMillis);
+    }
+
+    /**
+     * Request a promotion of the latest baselines of a stream
+     *
+     * @param stream         the stream with the PVOB
+     * @param request        the promotion requested by a build
+     * @param quietMillis    the quiet period before the promotion
+     * @param maxDelayMillis the maximal delay between the first pending request and the promotion, 0 for no maximal delay
+     * @return true if the request is the newest pending one, false if a newer build has already requested the promotion
+     */
+    synchronized boolean submit(String stream, PromotionRequest request, long quietMillis, long maxDelayMillis) {
+        PendingPromotion promotion = pending.get(stream);
+        if (promotion == null) {
+            promotion = new PendingPromotion(stream);
+            pending.put(stream, promotion);
+        }
+
+        boolean newest = promotion.request == null || promotion.request.getNumber() < request.getNumber();
+        if (newest) {
+            promotion.request = request;
+        }
+        promotion.quietMillis = quietMillis;
+        promotion.maxDelayMillis = (maxDelayMillis == 0) ? 0 : Math.max(quietMillis, maxDelayMillis);
+        promotion.schedule();
+        return newest;
+    }
+
+    /**
+     * @param firstRequest   the time of the first pending request
+     * @param now            the time of the newest request
+     * @param quietMillis    the quiet period before the promotion
+     * @param maxDelayMillis the maximal delay between the first pending request and the promotion, 0 for no maximal delay
+     * @return the time of the promotion
+     */
+    static long getFireTime(long firstRequest, long now, long quietMillis, long maxDelayMillis) {
+        if (maxDelayMillis == 0) {
+            return now + quietMillis;
+        }
+        return Math.min(now + quietMillis, firstRequest + maxDelayMillis);
+    }
+
+    /**
+     * @param stream the stream with the PVOB
+     * @return the build the pending promotion of the stream applies to, null if there is no pending promotion
+     */
+    public synchronized AbstractBuild getPendingBuild(String stream) {
+        PromotionRequest request = getPendingRequest(stream);
+        return (request instanceof BuildPromotionRequest) ? ((BuildPromotionRequest) request).build : null;
+    }
+
+    /**
+     * @param stream the stream with the PVOB
+     * @return the request the pending promotion of the stream applies to, null if there is no pending promotion
+     */
+    synchronized PromotionRequest getPendingRequest(String stream) {
+        PendingPromotion promotion = pending.get(stream);
+        return (promotion == null) ? null : promotion.request;
+    }
+}
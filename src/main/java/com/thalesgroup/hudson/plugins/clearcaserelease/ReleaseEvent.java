@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease;
+
+import hudson.model.Run;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Represents a promotion or a cancellation of baselines
+ */
+public class ReleaseEvent {
+
+    public static enum Type {
+        PROMOTED, CANCELLED
+    }
+
+    private final Type type;
+
+    private final Run build;
+
+    /**
+     * The target promotion level, null for a cancellation
+     */
+    private final String promotionLevel;
+
+    /**
+     * The promoted or restored baselines, with the PVOB
+     */
+    private final List<String> baselines;
+
+    /**
+     * The promotion level of each baseline before the release
+     */
+    private final Map<String, String> previousLevels;
+
+    private final long timestamp = System.currentTimeMillis();
+
+    public ReleaseEvent(Type type, Run build, String promotionLevel, List<String> baselines, Map<String, String> previousLevels) {
+        this.type = type;
+        this.build = build;
+        this.promotionLevel = promotionLevel;
+        this.baselines = Collections.unmodifiableList(new ArrayList<String>(baselines));
+        this.previousLevels = (previousLevels == null) ? Collections.<String, String>emptyMap() : Collections.unmodifiableMap(new LinkedHashMap<String, String>(previousLevels));
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Run getBuild() {
+        return build;
+    }
+
+    public String getJobName() {
+        return build.getParent().getFullName();
+    }
+
+    public int getBuildNumber() {
+        return build.getNumber();
+    }
+
+    public String getPromotionLevel() {
+        return promotionLevel;
+    }
+
+    public List<String> getBaselines() {
+        return baselines;
+    }
+
+    public Map<String, String> getPreviousLevels() {
+        return previousLevels;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + baselines.size() + " baseline(s) of " + getJobName() + " #" + getBuildNumber();
+    }
+}
@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * Delivers the release events to the {@link ClearcaseReleaseListener}s from a dedicated thread.
+ * The events are queued in a bounded queue, they are dropped when the queue is full.
+ */
+public final class ReleaseEventDispatcher implements Runnable {
+
+    private static final Logger LOGGER = Logger.getLogger(ReleaseEventDispatcher.class.getName());
+
+    /**
+     * The maximum number of events waiting for the delivery
+     */
+    private static final int QUEUE_SIZE = Integer.getInteger(ReleaseEventDispatcher.class.getName() + ".queueSize", 1000);
+
+    private static final ReleaseEventDispatcher INSTANCE = new ReleaseEventDispatcher();
+
+    private final BlockingQueue<ReleaseEvent> queue = new ArrayBlockingQueue<ReleaseEvent>(QUEUE_SIZE);
+
+    private final AtomicLong droppedEvents = new AtomicLong();
+
+    private Thread thread;
+
+    public static ReleaseEventDispatcher get() {
+        return INSTANCE;
+    }
+
+    private ReleaseEventDispatcher() {
+    }
+
+    /**
+     * Queue an event, without waiting for its delivery
+     *
+     * @param event the release event
+     */
+    public void fire(ReleaseEvent event) {
+        startDispatcher();
+        if (!queue.offer(event)) {
+            droppedEvents.incrementAndGet();
+            LOGGER.warning("The release event queue is full, the event '" + event + "' is dropped");
+        }
+    }
+
+    private synchronized void startDispatcher() {
+        if (thread == null || !thread.isAlive()) {
+            thread = new Thread(this, "ClearCase release event dispatcher");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    public void run() {
+        while (true) {
+            ReleaseEvent event;
+            try {
+                event = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            for (ClearcaseReleaseListener listener : ClearcaseReleaseListener.all()) {
+                try {
+                    if (event.getType() == ReleaseEvent.Type.PROMOTED) {
+                        listener.onPromoted(event);
+                    } else {
+                        listener.onCancelled(event);
+                    }
+                } catch (Throwable e) {
+                    LOGGER.log(Level.WARNING, "The release listener " + listener.getClass().getName() + " has failed on '" + event + "'", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of events waiting for the delivery
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * @return the number of events dropped since the startup
+     */
+    public long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+}
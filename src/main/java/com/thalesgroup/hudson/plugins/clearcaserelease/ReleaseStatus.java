@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease;
+
+import hudson.model.Run;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Represents the state of a release submitted to a release action, exposed by the remote API
+ */
+@ExportedBean
+public class ReleaseStatus {
+
+    /**
+     * The release states
+     */
+    public static enum State {
+        QUEUED, RUNNING, SUCCEEDED, NOTHING_TO_PROMOTE, FAILED, ABORTED;
+
+        public boolean isActive() {
+            return this == QUEUED || this == RUNNING;
+        }
+    }
+
+    private final String id;
+
+    /**
+     * The URL name of the release action
+     */
+    private final String kind;
+
+    private final String jobName;
+
+    private final int buildNumber;
+
+    /**
+     * The PVOB of the released baselines, null if unknown
+     */
+    private final String pvob;
+
+    private final long submissionTime = System.currentTimeMillis();
+
+    private volatile State state = State.QUEUED;
+
+    private volatile long startTime;
+
+    private volatile long endTime;
+
+    private volatile int baselineCount;
+
+    private volatile String message;
+
+    /**
+     * Incremented at each change, used as ETag.
+     * The exported properties only change with it, the clients compute the durations from the exported times.
+     */
+    private final AtomicInteger version = new AtomicInteger();
+
+    ReleaseStatus(String id, String kind, Run owner, String pvob) {
+        this.id = id;
+        this.kind = kind;
+        this.pvob = pvob;
+        this.jobName = (owner == null) ? null : owner.getParent().getFullName();
+        this.buildNumber = (owner == null) ? 0 : owner.getNumber();
+    }
+
+    /**
+     * Mark the release as running
+     */
+    public void running() {
+        startTime = System.currentTimeMillis();
+        state = State.RUNNING;
+        changed();
+    }
+
+    /**
+     * Mark the release as terminated
+     *
+     * @param baselineCount the number of processed baselines, 0 if nothing has been promoted
+     */
+    public void succeeded(int baselineCount) {
+        this.baselineCount = baselineCount;
+        terminate((baselineCount == 0) ? State.NOTHING_TO_PROMOTE : State.SUCCEEDED, null);
+    }
+
+    /**
+     * Mark the release as failed or aborted
+     *
+     * @param e the failure
+     */
+    public void failed(Throwable e) {
+        terminate((e instanceof InterruptedException) ? State.ABORTED : State.FAILED, e.getMessage());
+    }
+
+    private void terminate(State state, String message) {
+        this.message = message;
+        this.endTime = System.currentTimeMillis();
+        this.state = state;
+        changed();
+    }
+
+    private void changed() {
+        version.incrementAndGet();
+        ReleaseTracker.get().changed(this);
+    }
+
+    @Exported
+    public String getId() {
+        return id;
+    }
+
+    @Exported
+    public String getKind() {
+        return kind;
+    }
+
+    @Exported
+    public String getJobName() {
+        return jobName;
+    }
+
+    @Exported
+    public int getBuildNumber() {
+        return buildNumber;
+    }
+
+    @Exported
+    public String getPvob() {
+        return pvob;
+    }
+
+    @Exported
+    public State getState() {
+        return state;
+    }
+
+    @Exported
+    public long getSubmissionTime() {
+        return submissionTime;
+    }
+
+    @Exported
+    public long getStartTime() {
+        return startTime;
+    }
+
+    @Exported
+    public long getEndTime() {
+        return endTime;
+    }
+
+    /**
+     * @return the number of promoted or restored baselines
+     */
+    @Exported
+    public int getBaselineCount() {
+        return baselineCount;
+    }
+
+    @Exported
+    public String getMessage() {
+        return message;
+    }
+
+    public String getETag() {
+        return id + "-" + version.get();
+    }
+}
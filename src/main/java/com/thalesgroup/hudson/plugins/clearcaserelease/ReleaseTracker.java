@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease;
+
+import hudson.model.Run;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Keeps the releases submitted since the startup, the active ones and the latest terminated ones.
+ * A release is rejected when the number of active releases has reached the maximum backlog, globally or on its PVOB.
+ */
+public final class ReleaseTracker {
+
+    /**
+     * The number of terminated releases kept for the status requests
+     */
+    private static final int HISTORY_SIZE = Integer.getInteger(ReleaseTracker.class.getName() + ".historySize", 500);
+
+    /**
+     * The maximum number of queued and running releases, 0 for no limit
+     */
+    private static final int MAX_BACKLOG = Integer.getInteger(ReleaseTracker.class.getName() + ".maxBacklog", 50);
+
+    /**
+     * The maximum number of queued and running releases on a PVOB, 0 for no limit
+     */
+    private static final int MAX_BACKLOG_PER_PVOB = Integer.getInteger(ReleaseTracker.class.getName() + ".maxBacklogPerPvob", 10);
+
+    private static final ReleaseTracker INSTANCE = new ReleaseTracker();
+
+    private final String prefix = Long.toString(System.currentTimeMillis(), 36);
+
+    private final AtomicInteger counter = new AtomicInteger();
+
+    /**
+     * Incremented at each change of a release, used as ETag of the release list
+     */
+    private final AtomicLong version = new AtomicLong();
+
+    private final Map<String, ReleaseStatus> active = new LinkedHashMap<String, ReleaseStatus>();
+
+    /**
+     * The number of active releases by PVOB
+     */
+    private final Map<String, Integer> pvobBacklogs = new HashMap<String, Integer>();
+
+    /**
+     * The number of rejected releases by PVOB, the key "" for the releases without PVOB
+     */
+    private final Map<String, Long> shedRequests = new HashMap<String, Long>();
+
+    /**
+     * The smoothed duration of the terminated releases, used for the retry hint
+     */
+    private double averageDurationMillis = 30000;
+
+    private final Map<String, ReleaseStatus> history = new LinkedHashMap<String, ReleaseStatus>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ReleaseStatus> eldest) {
+            return size() > HISTORY_SIZE;
+        }
+    };
+
+    public static ReleaseTracker get() {
+        return INSTANCE;
+    }
+
+    private ReleaseTracker() {
+    }
+
+    /**
+     * Register a new release
+     *
+     * @param action the release action
+     * @param owner  the build the release applies to
+     * @param pvob   the PVOB of the released baselines, null if unknown
+     * @return the release status, queued
+     * @throws ReleaseRejectedException if the maximum backlog has been reached
+     */
+    public synchronized ReleaseStatus submit(ClearcaseReleaseAction action, Run owner, String pvob) throws ReleaseRejectedException {
+        if (MAX_BACKLOG > 0 && active.size() >= MAX_BACKLOG) {
+            throw reject(pvob, active.size() + " releases are already queued or running");
+        }
+        int pvobBacklog = getPvobBacklog(pvob);
+        if (pvob != null && MAX_BACKLOG_PER_PVOB > 0 && pvobBacklog >= MAX_BACKLOG_PER_PVOB) {
+            throw reject(pvob, pvobBacklog + " releases are already queued or running on the PVOB '" + pvob + "'");
+        }
+
+        ReleaseStatus status = new ReleaseStatus(prefix + "-" + counter.incrementAndGet(), action.getUrlName(), owner, pvob);
+        active.put(status.getId(), status);
+        if (pvob != null) {
+            pvobBacklogs.put(pvob, pvobBacklog + 1);
+        }
+        version.incrementAndGet();
+        return status;
+    }
+
+    private ReleaseRejectedException reject(String pvob, String reason) {
+        String key = (pvob == null) ? "" : pvob;
+        Long shed = shedRequests.get(key);
+        shedRequests.put(key, (shed == null) ? 1 : shed + 1);
+        version.incrementAndGet();
+        int retryAfter = (int) Math.max(1, Math.ceil(averageDurationMillis / 1000));
+        return new ReleaseRejectedException("The release is rejected, " + reason + ".", retryAfter);
+    }
+
+    synchronized void changed(ReleaseStatus status) {
+        if (!status.getState().isActive() && active.remove(status.getId()) != null) {
+            history.put(status.getId(), status);
+            String pvob = status.getPvob();
+            if (pvob != null) {
+                pvobBacklogs.put(pvob, getPvobBacklog(pvob) - 1);
+            }
+            averageDurationMillis = averageDurationMillis * 0.8 + (status.getEndTime() - status.getSubmissionTime()) * 0.2;
+        }
+        version.incrementAndGet();
+    }
+
+    /**
+     * @param pvob the PVOB
+     * @return the number of queued and running releases on the PVOB
+     */
+    public synchronized int getPvobBacklog(String pvob) {
+        Integer backlog = pvobBacklogs.get(pvob);
+        return (backlog == null) ? 0 : backlog;
+    }
+
+    /**
+     * @return the number of rejected releases since the startup, by PVOB
+     */
+    public synchronized Map<String, Long> getShedRequests() {
+        return new HashMap<String, Long>(shedRequests);
+    }
+
+    /**
+     * @return the number of rejected releases since the startup
+     */
+    public synchronized long getTotalShedRequests() {
+        long total = 0;
+        for (Long shed : shedRequests.values()) {
+            total += shed;
+        }
+        return total;
+    }
+
+    public int getMaxBacklog() {
+        return MAX_BACKLOG;
+    }
+
+    public int getMaxBacklogPerPvob() {
+        return MAX_BACKLOG_PER_PVOB;
+    }
+
+    /**
+     * @param id the release id
+     * @return the release, null if it is unknown or too old
+     */
+    public synchronized ReleaseStatus getStatus(String id) {
+        ReleaseStatus status = active.get(id);
+        return (status != null) ? status : history.get(id);
+    }
+
+    /**
+     * @return the queued and running releases
+     */
+    public synchronized List<ReleaseStatus> getActive() {
+        return new ArrayList<ReleaseStatus>(active.values());
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+}
@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease.biz;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * Represents the dependency graph of a composite baseline.
+ * Each baseline is described only once, even if it is shared by several composite baselines.
+ */
+public class BaselineDependencyGraph {
+
+    private final String root;
+
+    private final Map<String, BaselineDescription> nodes = new LinkedHashMap<String, BaselineDescription>();
+
+    public BaselineDependencyGraph(String root) {
+        this.root = root;
+    }
+
+    public String getRoot() {
+        return root;
+    }
+
+    /**
+     * Add a described baseline to the graph
+     *
+     * @param description the baseline description
+     * @return the dependencies not yet visited
+     */
+    public List<String> add(BaselineDescription description) {
+        nodes.put(description.getBaselineWithPVOB(), description);
+        List<String> unvisited = new ArrayList<String>();
+        for (String dependency : description.getDependsOn()) {
+            if (!nodes.containsKey(dependency) && !unvisited.contains(dependency)) {
+                unvisited.add(dependency);
+            }
+        }
+        return unvisited;
+    }
+
+    public boolean isVisited(String baselineWithPVOB) {
+        return nodes.containsKey(baselineWithPVOB);
+    }
+
+    public BaselineDescription getDescription(String baselineWithPVOB) {
+        return nodes.get(baselineWithPVOB);
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Compute the promotion order: each layer contains baselines whose dependencies
+     * all belong to the previous layers. Baselines of a same layer are independent.
+     *
+     * @return the baseline layers, the members first and the root composite baseline last
+     */
+    public List<List<String>> getPromotionLayers() {
+        Map<String, Integer> heights = new HashMap<String, Integer>();
+        List<List<String>> layers = new ArrayList<List<String>>();
+        for (String baseline : nodes.keySet()) {
+            int height = getHeight(baseline, heights, new HashSet<String>());
+            while (layers.size() <= height) {
+                layers.add(new ArrayList<String>());
+            }
+            layers.get(height).add(baseline);
+        }
+        return layers;
+    }
+
+    private int getHeight(String baseline, Map<String, Integer> heights, Set<String> path) {
+        Integer known = heights.get(baseline);
+        if (known != null) {
+            return known;
+        }
+        int height = 0;
+        BaselineDescription description = nodes.get(baseline);
+        if (description != null && path.add(baseline)) {
+            for (String dependency : description.getDependsOn()) {
+                if (nodes.containsKey(dependency)) {
+                    height = Math.max(height, getHeight(dependency, heights, path) + 1);
+                }
+            }
+            path.remove(baseline);
+        }
+        heights.put(baseline, height);
+        return height;
+    }
+}
@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease.biz;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Represents the description of an UCM baseline retrieved from a batched cleartool query
+ */
+public class BaselineDescription {
+
+    private static final String BASELINE_PREFIX = "baseline:";
+
+    /**
+     * The baseline name concatened with the PVOB
+     */
+    private final String baselineWithPVOB;
+
+    private final String component;
+
+    private final String promotionLevel;
+
+    /**
+     * The baselines a composite baseline depends on, with the PVOB
+     */
+    private final List<String> dependsOn;
+
+    public BaselineDescription(String baselineWithPVOB, String component, String promotionLevel) {
+        this(baselineWithPVOB, component, promotionLevel, Collections.<String>emptyList());
+    }
+
+    public BaselineDescription(String baselineWithPVOB, String component, String promotionLevel, List<String> dependsOn) {
+        this.baselineWithPVOB = baselineWithPVOB;
+        this.component = component;
+        this.promotionLevel = promotionLevel;
+        this.dependsOn = dependsOn;
+    }
+
+    /**
+     * Parse a line with the format '%Xn %[component]p %[plevel]p'
+     *
+     * @param line the cleartool output line
+     * @return the baseline description or null if the line is not a baseline description
+     */
+    public static BaselineDescription parse(String line) {
+        String[] tokens = stripQuotes(line).split(" ");
+        if (tokens.length < 3) {
+            return null;
+        }
+        return new BaselineDescription(removeBaselinePrefix(tokens[0]), tokens[1], tokens[2]);
+    }
+
+    /**
+     * Parse a line with the format '%Xn %[plevel]p %[depends_on]Xp'
+     *
+     * @param line the cleartool output line
+     * @return the baseline description or null if the line is not a baseline description
+     */
+    public static BaselineDescription parseWithDependencies(String line) {
+        String[] tokens = stripQuotes(line).split(" ");
+        if (tokens.length < 2) {
+            return null;
+        }
+        List<String> dependsOn = new ArrayList<String>();
+        for (int i = 2; i < tokens.length; i++) {
+            if (tokens[i].length() != 0) {
+                dependsOn.add(removeBaselinePrefix(tokens[i]));
+            }
+        }
+        return new BaselineDescription(removeBaselinePrefix(tokens[0]), null, tokens[1], dependsOn);
+    }
+
+    /**
+     * Remove the quotes of a cleartool output, kept on non Windows platforms.
+     * A batched output has quotes inside, around each line of the format, and no name contains a quote.
+     *
+     * @param output the cleartool output
+     * @return the output without quotes and surrounding spaces
+     */
+    static String stripQuotes(String output) {
+        return output.replace("\"", "").trim();
+    }
+
+    /**
+     * Get the key comparing the baseline selectors of the commands and of their output
+     *
+     * @param selector the baseline, with or without the 'baseline:' prefix and the quotes
+     * @return the baseline with the PVOB, with the Windows PVOB separator
+     */
+    static String getKey(String selector) {
+        return removeBaselinePrefix(stripQuotes(selector)).replace('/', '\\');
+    }
+
+    static String removeBaselinePrefix(String selector) {
+        if (selector.startsWith(BASELINE_PREFIX)) {
+            return selector.substring(BASELINE_PREFIX.length());
+        }
+        return selector;
+    }
+
+    public String getBaselineWithPVOB() {
+        return baselineWithPVOB;
+    }
+
+    public String getComponent() {
+        return component;
+    }
+
+    public String getPromotionLevel() {
+        return promotionLevel;
+    }
+
+    public List<String> getDependsOn() {
+        return dependsOn;
+    }
+}
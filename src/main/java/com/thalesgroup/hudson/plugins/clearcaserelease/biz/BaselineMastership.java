@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease.biz;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * The replicas mastering the baselines of replicated PVOBs, and the nodes where the baselines of a foreign replica are promoted.
+ * A baseline can only be promoted from the replica mastering it.
+ */
+public class BaselineMastership {
+
+    /**
+     * True to look up the mastership of the baselines before promoting them
+     */
+    private static volatile boolean enabled = Boolean.getBoolean(BaselineMastership.class.getName() + ".enabled");
+
+    /**
+     * The duration the mastership of a baseline is kept, a 'chmaster' being taken into account after it
+     */
+    private static final long CACHE_MILLIS = Long.getLong(BaselineMastership.class.getName() + ".cacheMinutes", 60L) * 60000L;
+
+    /**
+     * The node promoting the baselines of each foreign replica: 'replica=node,replica=node'
+     */
+    private static volatile Map<String, String> replicaNodes = parseReplicaNodes(System.getProperty(BaselineMastership.class.getName() + ".replicaNodes", ""));
+
+    /**
+     * The maximal number of baselines whose mastership is kept
+     */
+    private static final int MAX_CACHED_BASELINES = Integer.getInteger(BaselineMastership.class.getName() + ".cacheSize", 50000);
+
+    private static final ConcurrentMap<String, Entry> MASTERS = new ConcurrentHashMap<String, Entry>();
+
+    private static final ConcurrentMap<String, Entry> LOCAL_REPLICAS = new ConcurrentHashMap<String, Entry>();
+
+    private static class Entry {
+
+        private final String replica;
+
+        private final long time = System.currentTimeMillis();
+
+        private Entry(String replica) {
+            this.replica = replica;
+        }
+    }
+
+    /**
+     * @return true if the promotions are routed to the replicas mastering the baselines
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Replace the configuration read from the system properties, and forget the cached mastership
+     *
+     * @param enabled      true to look up the mastership of the baselines before promoting them
+     * @param replicaNodes the node promoting the baselines of each foreign replica: 'replica=node,replica=node'
+     */
+    static void configure(boolean enabled, String replicaNodes) {
+        BaselineMastership.enabled = enabled;
+        BaselineMastership.replicaNodes = parseReplicaNodes(replicaNodes);
+        MASTERS.clear();
+        LOCAL_REPLICAS.clear();
+    }
+
+    /**
+     * @param replica the replica name
+     * @return the node promoting the baselines mastered by the replica, null if none is configured
+     */
+    public static String getNode(String replica) {
+        return replicaNodes.get(replica);
+    }
+
+    /**
+     * @param baselineWithPVOB the baseline with the PVOB
+     * @return the replica mastering the baseline, null if unknown or expired
+     */
+    public static String getMaster(String baselineWithPVOB) {
+        return get(MASTERS, baselineWithPVOB);
+    }
+
+    public static void putMaster(String baselineWithPVOB, String replica) {
+        if (MASTERS.size() >= MAX_CACHED_BASELINES) {
+            purge(MASTERS);
+            if (MASTERS.size() >= MAX_CACHED_BASELINES) {
+                MASTERS.clear();
+            }
+        }
+        MASTERS.put(baselineWithPVOB, new Entry(replica));
+    }
+
+    /**
+     * @param pvobTag the PVOB tag
+     * @return the replica of the PVOB seen by the Hudson master, null if unknown or expired
+     */
+    public static String getLocalReplica(String pvobTag) {
+        return get(LOCAL_REPLICAS, pvobTag);
+    }
+
+    public static void putLocalReplica(String pvobTag, String replica) {
+        LOCAL_REPLICAS.put(pvobTag, new Entry(replica));
+    }
+
+    /**
+     * Forget the mastership of baselines, after a failed promotion
+     *
+     * @param baselinesWithPVOB the baselines with the PVOB
+     */
+    public static void forget(Collection<String> baselinesWithPVOB) {
+        for (String baselineWithPVOB : baselinesWithPVOB) {
+            MASTERS.remove(baselineWithPVOB);
+        }
+    }
+
+    private static String get(ConcurrentMap<String, Entry> cache, String key) {
+        Entry entry = cache.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - entry.time > CACHE_MILLIS) {
+            cache.remove(key, entry);
+            return null;
+        }
+        return entry.replica;
+    }
+
+    private static void purge(ConcurrentMap<String, Entry> cache) {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Entry> entry : cache.entrySet()) {
+            if (now - entry.getValue().time > CACHE_MILLIS) {
+                cache.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private static Map<String, String> parseReplicaNodes(String value) {
+        Map<String, String> replicaNodes = new HashMap<String, String>();
+        for (String replicaNode : value.split(",")) {
+            int index = replicaNode.indexOf('=');
+            if (index > 0) {
+                replicaNodes.put(replicaNode.substring(0, index).trim(), replicaNode.substring(index + 1).trim());
+            }
+        }
+        return replicaNodes;
+    }
+}
@@ -0,0 +1,258 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease.biz;
+
+import hudson.remoting.VirtualChannel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * The features supported by the cleartool of a node, probed once per node.
+ * The capabilities are cached by the channel of the node launching cleartool: a reconnected node gets a new channel and is probed again.
+ * A failed probe is tried again after a short period.
+ */
+public class ClearToolCapabilities {
+
+    private static final Logger LOGGER = Logger.getLogger(ClearToolCapabilities.class.getName());
+
+    /**
+     * The capabilities assumed when the probe fails: the commands launched by the previous versions of the plugin
+     */
+    public static final ClearToolCapabilities DEFAULT = new ClearToolCapabilities(null, true, true);
+
+    /**
+     * The duration the default capabilities are kept after a failed probe, before probing again
+     */
+    private static final long FAILURE_CACHE_MILLIS = Long.getLong(ClearToolCapabilities.class.getName() + ".failureCacheSeconds", 300L) * 1000L;
+
+    private static final Map<VirtualChannel, Entry> NODES = new WeakHashMap<VirtualChannel, Entry>();
+
+    /**
+     * The running probes, a node is probed by a single release at a time
+     */
+    private static final Map<VirtualChannel, FutureTask<ClearToolCapabilities>> PROBES = new WeakHashMap<VirtualChannel, FutureTask<ClearToolCapabilities>>();
+
+    private final String version;
+
+    private final boolean multipleBaselinesListing;
+
+    private final boolean multipleBaselinesChange;
+
+    public ClearToolCapabilities(String version, boolean multipleBaselinesListing, boolean multipleBaselinesChange) {
+        this.version = version;
+        this.multipleBaselinesListing = multipleBaselinesListing;
+        this.multipleBaselinesChange = multipleBaselinesChange;
+    }
+
+    private static class Entry {
+
+        private final ClearToolCapabilities capabilities;
+
+        private final long expiry;
+
+        private Entry(ClearToolCapabilities capabilities) {
+            this.capabilities = (capabilities == null) ? DEFAULT : capabilities;
+            this.expiry = (capabilities == null) ? System.currentTimeMillis() + FAILURE_CACHE_MILLIS : Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Get the capabilities of the cleartool of a node, probing them on the first call.
+     * The releases asking for the capabilities of a node being probed wait for the running probe.
+     *
+     * @param channel   the channel of the node launching cleartool, null if unknown
+     * @param clearTool the cleartool runner of the node
+     * @return the capabilities
+     * @throws InterruptedException
+     */
+    public static ClearToolCapabilities get(final VirtualChannel channel, final ClearToolRunner clearTool) throws InterruptedException {
+        FutureTask<ClearToolCapabilities> probe;
+        boolean prober = false;
+        synchronized (NODES) {
+            Entry entry = NODES.get(channel);
+            if (entry != null && entry.expiry > System.currentTimeMillis()) {
+                return entry.capabilities;
+            }
+            probe = PROBES.get(channel);
+            if (probe == null) {
+                probe = new FutureTask<ClearToolCapabilities>(new Callable<ClearToolCapabilities>() {
+                    public ClearToolCapabilities call() throws Exception {
+                        Entry probed = new Entry(probe(clearTool));
+                        synchronized (NODES) {
+                            NODES.put(channel, probed);
+                        }
+                        return probed.capabilities;
+                    }
+                });
+                PROBES.put(channel, probe);
+                prober = true;
+            }
+        }
+
+        if (prober) {
+            try {
+                probe.run();
+            } finally {
+                synchronized (NODES) {
+                    PROBES.remove(channel);
+                }
+            }
+        }
+        try {
+            return probe.get();
+        } catch (ExecutionException e) {
+            if (prober && e.getCause() instanceof InterruptedException) {
+                throw (InterruptedException) e.getCause();
+            }
+            //The release running the probe has been aborted
+            return DEFAULT;
+        }
+    }
+
+    /**
+     * Get the capabilities of the cleartool of a node without probing them
+     *
+     * @param channel the channel of the node launching cleartool, null if unknown
+     * @return the capabilities, DEFAULT if the node hasn't been probed yet
+     */
+    public static ClearToolCapabilities peek(VirtualChannel channel) {
+        synchronized (NODES) {
+            Entry entry = NODES.get(channel);
+            return (entry == null) ? DEFAULT : entry.capabilities;
+        }
+    }
+
+    /**
+     * Forget the capabilities of a node, the next release probes them again
+     *
+     * @param channel the channel of the node launching cleartool, null if unknown
+     */
+    public static void invalidate(VirtualChannel channel) {
+        synchronized (NODES) {
+            NODES.remove(channel);
+        }
+    }
+
+    /**
+     * Probe the cleartool version and the commands accepting several baselines
+     *
+     * @param clearTool the cleartool runner
+     * @return the capabilities, null if the probe has failed
+     * @throws InterruptedException
+     */
+    private static ClearToolCapabilities probe(ClearToolRunner clearTool) throws InterruptedException {
+        try {
+            ClearToolCapabilities capabilities = new ClearToolCapabilities(
+                    parseVersion(run(clearTool, "-version")),
+                    parseMultipleBaselines(run(clearTool, "help", "lsbl")),
+                    parseMultipleBaselines(run(clearTool, "help", "chbl")));
+            LOGGER.info("Probed the cleartool capabilities: " + capabilities);
+            return capabilities;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Unable to probe the cleartool capabilities, using the default ones for " + (FAILURE_CACHE_MILLIS / 1000) + " second(s)", e);
+            return null;
+        }
+    }
+
+    private static String run(ClearToolRunner clearTool, String... cmd) throws IOException, InterruptedException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        clearTool.run(cmd, baos);
+        baos.close();
+        return baos.toString();
+    }
+
+    /*
+    cleartool -version
+    -->
+    ClearCase version 7.1.2 (Tue Dec 01 21:36:40 EST 2009)
+    @(#) MVFS version 7.1.2.0 (Wed Nov 25 01:54:46 2009)
+    cleartool                         7.1.2.0 (Wed Nov 25 23:46:55 2009)
+    */
+    static String parseVersion(String output) {
+        String productVersion = null;
+        for (String line : output.split("\n")) {
+            String[] tokens = line.trim().split("\\s+");
+            if (tokens.length >= 2 && "cleartool".equals(tokens[0])) {
+                return tokens[1];
+            }
+            if (tokens.length >= 3 && "version".equals(tokens[1]) && productVersion == null) {
+                productVersion = tokens[2];
+            }
+        }
+        return productVersion;
+    }
+
+    /*
+    cleartool help chbl
+    -->
+    Usage: chbl [-c comment | -cfile pname | -cq | -nc]
+                [-level promotion-level] [-incremental | -full] [-nrecurse]
+                baseline-selector ...
+    */
+    static boolean parseMultipleBaselines(String usage) {
+        String normalized = usage.replaceAll("\\s+", " ");
+        if (!normalized.contains("baseline-selector")) {
+            //Unknown usage, keep the commands launched so far
+            return true;
+        }
+        return normalized.contains("baseline-selector ...");
+    }
+
+    /**
+     * @return the cleartool version, null if unknown
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * @param command the cleartool command, lsbl or chbl
+     * @return true if a single command accepts several baselines
+     */
+    public boolean acceptsMultipleBaselines(String command) {
+        if ("lsbl".equals(command)) {
+            return multipleBaselinesListing;
+        }
+        if ("chbl".equals(command)) {
+            return multipleBaselinesChange;
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "cleartool " + (version == null ? "(unknown version)" : version)
+                + ", multiple baselines per lsbl: " + multipleBaselinesListing
+                + ", multiple baselines per chbl: " + multipleBaselinesChange;
+    }
+}
@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease.biz;
+
+import java.io.IOException;
+
+
+/**
+ * Represents a failed cleartool command with the classification of its error
+ */
+public class ClearToolException extends IOException {
+
+    /**
+     * The classification of the cleartool errors
+     */
+    public static enum Type {
+
+        /**
+         * The VOB or an object is locked, the command may succeed later
+         */
+        LOCK(true, true),
+
+        /**
+         * The VOB server can't be reached or doesn't answer, the command may succeed later
+         */
+        NETWORK(true, true),
+
+        /**
+         * The command has been killed at its deadline, it is not retried to not stack hung commands
+         */
+        TIMEOUT(false, true),
+
+        /**
+         * The release deadline has expired, the release has been too long whatever the PVOB health
+         */
+        DEADLINE(false, false),
+
+        /**
+         * The command has been killed because the release has been aborted
+         */
+        ABORTED(false, false),
+
+        /**
+         * The object doesn't exist, retrying is useless
+         */
+        NOT_FOUND(false, false),
+
+        /**
+         * The PVOB has been considered unhealthy, the command has not been launched
+         */
+        UNAVAILABLE(false, false),
+
+        OTHER(false, false);
+
+        private final boolean transientError;
+
+        private final boolean unhealthy;
+
+        private Type(boolean transientError, boolean unhealthy) {
+            this.transientError = transientError;
+            this.unhealthy = unhealthy;
+        }
+
+        /**
+         * @return true if the command may succeed when launched again
+         */
+        public boolean isTransient() {
+            return transientError;
+        }
+
+        /**
+         * @return true if the error reveals an unhealthy PVOB
+         */
+        public boolean isUnhealthy() {
+            return unhealthy;
+        }
+    }
+
+    private final Type type;
+
+    public ClearToolException(Type type, String message) {
+        super(message);
+        this.type = type;
+    }
+
+    public ClearToolException(Type type, String message, Throwable cause) {
+        super(message);
+        this.type = type;
+        initCause(cause);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Classify a cleartool error from its messages
+     *
+     * @param message the exception message
+     * @param output  the command output, containing the cleartool error messages
+     * @return the error classification
+     */
+    public static Type classify(String message, String output) {
+        String text = (String.valueOf(message) + "\n" + String.valueOf(output)).toLowerCase();
+        if (text.contains("lock on") || text.contains("is locked") || text.contains("locked by")) {
+            return Type.LOCK;
+        }
+        if (text.contains("unable to contact") || text.contains("rpc:") || text.contains("timed out")
+                || text.contains("connection refused") || text.contains("unable to communicate")
+                || text.contains("no route to host")) {
+            return Type.NETWORK;
+        }
+        if (text.contains("not found") || text.contains("does not exist") || text.contains("unable to find")) {
+            return Type.NOT_FOUND;
+        }
+        return Type.OTHER;
+    }
+}
@@ -0,0 +1,235 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease.biz;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Represents the cleartool commands of a release with their outputs and durations.
+ * <p/>
+ * The transcript is a text file, so that PVOB, stream or baseline names can be replaced before sharing it:
+ * <pre>
+ * &gt; lsbl	-fmt	"%[plevel]p"	C_hudson-test@\P_ORC
+ * &#64; 120
+ * | BUILT
+ * </pre>
+ * The arguments are separated by tabulations, '|' lines contain the output
+ * ('|r' when the line ends with a carriage return) and a '!' line the error of a failed command.
+ */
+public class ClearToolTranscript {
+
+    private static final String ENCODING = "UTF-8";
+
+    private final List<Entry> entries = new ArrayList<Entry>();
+
+    /**
+     * Represents a recorded cleartool command
+     */
+    public static class Entry {
+
+        private final String[] cmd;
+
+        private final String output;
+
+        private final String error;
+
+        private final long durationMillis;
+
+        public Entry(String[] cmd, String output, String error, long durationMillis) {
+            this.cmd = cmd;
+            this.output = output;
+            this.error = error;
+            this.durationMillis = durationMillis;
+        }
+
+        public String[] getCmd() {
+            return cmd;
+        }
+
+        public String getKey() {
+            return join(cmd);
+        }
+
+        public String getOutput() {
+            return output;
+        }
+
+        /**
+         * @return the error message of a failed command, null for a successful command
+         */
+        public String getError() {
+            return error;
+        }
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        /**
+         * Write the entry with the transcript format
+         *
+         * @param writer the transcript writer
+         * @throws IOException
+         */
+        public void write(Writer writer) throws IOException {
+            writer.write("> " + join(cmd) + "\n");
+            writer.write("@ " + durationMillis + "\n");
+            if (output != null) {
+                for (String line : output.split("\n", -1)) {
+                    if (line.endsWith("\r")) {
+                        writer.write("|r " + line.substring(0, line.length() - 1) + "\n");
+                    } else {
+                        writer.write("| " + line + "\n");
+                    }
+                }
+            }
+            if (error != null) {
+                writer.write("! " + error.replace('\n', ' ') + "\n");
+            }
+            writer.write("\n");
+        }
+
+        private Entry replace(Map<String, String> replacements) {
+            String[] sanitizedCmd = new String[cmd.length];
+            for (int i = 0; i < cmd.length; i++) {
+                sanitizedCmd[i] = ClearToolTranscript.replace(cmd[i], replacements);
+            }
+            return new Entry(sanitizedCmd,
+                    ClearToolTranscript.replace(output, replacements),
+                    ClearToolTranscript.replace(error, replacements),
+                    durationMillis);
+        }
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public void add(Entry entry) {
+        entries.add(entry);
+    }
+
+    /**
+     * Create a copy of the transcript with replaced names
+     *
+     * @param replacements the replacement of each sensitive name
+     * @return the sanitized transcript
+     */
+    public ClearToolTranscript sanitize(Map<String, String> replacements) {
+        ClearToolTranscript sanitized = new ClearToolTranscript();
+        for (Entry entry : entries) {
+            sanitized.add(entry.replace(replacements));
+        }
+        return sanitized;
+    }
+
+    public void save(File file) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), ENCODING);
+        try {
+            for (Entry entry : entries) {
+                entry.write(writer);
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    public static ClearToolTranscript load(File file) throws IOException {
+        ClearToolTranscript transcript = new ClearToolTranscript();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), ENCODING));
+        try {
+            String[] cmd = null;
+            StringBuilder output = null;
+            String error = null;
+            long duration = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("> ")) {
+                    if (cmd != null) {
+                        transcript.add(new Entry(cmd, output == null ? null : output.toString(), error, duration));
+                    }
+                    cmd = line.substring(2).split("\t");
+                    output = null;
+                    error = null;
+                    duration = 0;
+                } else if (line.startsWith("@ ")) {
+                    duration = Long.parseLong(line.substring(2).trim());
+                } else if (line.startsWith("| ") || line.startsWith("|r ")) {
+                    boolean carriageReturn = line.startsWith("|r ");
+                    if (output == null) {
+                        output = new StringBuilder();
+                    } else {
+                        output.append('\n');
+                    }
+                    output.append(line.substring(carriageReturn ? 3 : 2));
+                    if (carriageReturn) {
+                        output.append('\r');
+                    }
+                } else if (line.startsWith("! ")) {
+                    error = line.substring(2);
+                }
+            }
+            if (cmd != null) {
+                transcript.add(new Entry(cmd, output == null ? null : output.toString(), error, duration));
+            }
+        } finally {
+            reader.close();
+        }
+        return transcript;
+    }
+
+    static String join(String[] cmd) {
+        StringBuilder result = new StringBuilder();
+        for (String arg : Arrays.asList(cmd)) {
+            if (result.length() != 0) {
+                result.append('\t');
+            }
+            result.append(arg);
+        }
+        return result.toString();
+    }
+
+    private static String replace(String value, Map<String, String> replacements) {
+        if (value == null) {
+            return null;
+        }
+        String result = value;
+        for (Map.Entry<String, String> replacement : replacements.entrySet()) {
+            result = result.replace(replacement.getKey(), replacement.getValue());
+        }
+        return result;
+    }
+}
@@ -23,33 +23,128 @@
 
 package com.thalesgroup.hudson.plugins.clearcaserelease.biz;
 
+import com.thalesgroup.hudson.plugins.clearcaserelease.ClearcaseReleaseBaselinesAction;
 import com.thalesgroup.hudson.plugins.clearcaserelease.ClearcaseReleaseBuildBadgeAction;
 import com.thalesgroup.hudson.plugins.clearcaserelease.ClearcaseReleaseCancelAction;
+import com.thalesgroup.hudson.plugins.clearcaserelease.ReleaseEvent;
+import com.thalesgroup.hudson.plugins.clearcaserelease.ReleaseEventDispatcher;
 import hudson.FilePath;
 import hudson.Launcher;
 import hudson.Util;
 import hudson.model.*;
 import hudson.plugins.clearcase.ClearCaseUcmSCM;
-import hudson.plugins.clearcase.HudsonClearToolLauncher;
 import hudson.plugins.clearcase.PluginImpl;
 import hudson.plugins.clearcase.ucm.UcmMakeBaselineComposite;
+import hudson.remoting.VirtualChannel;
+import hudson.scm.SCM;
 import hudson.util.ArgumentListBuilder;
+import hudson.util.DaemonThreadFactory;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 
 public class ClearcaseReleaseActionImpl {
 
+    /**
+     * The maximum number of baselines given to a single cleartool command
+     */
+    private static final int MAX_BASELINES_PER_COMMAND = 50;
+
+    /**
+     * The maximum number of cleartool commands launched in parallel for a promotion,
+     * the commands running at the same time on a PVOB being bounded by its adaptive limit
+     */
+    private static final int PROMOTION_PARALLELISM = Integer.getInteger(ClearcaseReleaseActionImpl.class.getName() + ".parallelism", PvobConcurrencyLimiter.getMaxLimit());
+
+    /**
+     * The directory receiving a transcript of the cleartool commands of each release, none by default
+     */
+    private static final String TRANSCRIPT_DIRECTORY = System.getProperty(ClearcaseReleaseActionImpl.class.getName() + ".transcriptDirectory");
+
+    /**
+     * A transcript replayed instead of launching cleartool, for offline benchmarks
+     */
+    private static final String REPLAY_TRANSCRIPT = System.getProperty(ClearcaseReleaseActionImpl.class.getName() + ".replayTranscript");
+
+    private static final AtomicInteger transcriptCounter = new AtomicInteger();
+
+    /**
+     * The maximum number of described chunks waiting for their promotion
+     */
+    private static final int PIPELINE_DEPTH = Integer.getInteger(ClearcaseReleaseActionImpl.class.getName() + ".pipelineDepth", 4);
+
+    /**
+     * The maximal duration of a cleartool command, 0 for no limit
+     */
+    private static final long COMMAND_TIMEOUT_MILLIS = Long.getLong(ClearcaseReleaseActionImpl.class.getName() + ".commandTimeoutMinutes", 10L) * 60000L;
+
+    /**
+     * The maximal duration of a release or a release cancellation, 0 for no limit
+     */
+    private static final long RELEASE_TIMEOUT_MILLIS = Long.getLong(ClearcaseReleaseActionImpl.class.getName() + ".releaseTimeoutMinutes", 60L) * 60000L;
+
+    /**
+     * The maximal age of a prefetched release plan
+     */
+    private static final long PLAN_MAX_AGE_MILLIS = Long.getLong(ClearcaseReleaseActionImpl.class.getName() + ".planMaxAgeMinutes", 24L * 60L) * 60000L;
+
+    /**
+     * The duration assumed in the release previews for a cleartool command not launched yet on a PVOB
+     */
+    private static final long ESTIMATED_COMMAND_MILLIS = Long.getLong(ClearcaseReleaseActionImpl.class.getName() + ".estimatedCommandMillis", 1000L);
+
     protected final FilePath workspaceRoot;
 
 
+    /**
+     * The priority lane of the cleartool commands
+     */
+    protected final ReleaseLane lane;
+
+    /**
+     * The channel of the node launching the commands of each runner, for the cleartool capabilities
+     */
+    private final Map<ClearToolRunner, VirtualChannel> runnerChannels = Collections.synchronizedMap(new IdentityHashMap<ClearToolRunner, VirtualChannel>());
+
+    /**
+     * The leases held by the running release, checked before changing any baseline
+     */
+    private volatile List<PromotionLease> leases = Collections.emptyList();
+
     public ClearcaseReleaseActionImpl(FilePath workspaceRoot) {
+        this(workspaceRoot, ReleaseLane.AUTOMATED);
+    }
+
+    /**
+     * @param workspaceRoot the location where to launch the clearcase commands
+     * @param lane          the priority lane of the cleartool commands
+     */
+    public ClearcaseReleaseActionImpl(FilePath workspaceRoot, ReleaseLane lane) {
         this.workspaceRoot = workspaceRoot;
+        this.lane = lane;
     }
 
     /**
@@ -72,17 +167,76 @@ public class ClearcaseReleaseActionImpl {
     }
 
     /**
-     * Retieve the Clearcase launcher
+     * Extract the PVOB from an UCM selector
+     *
+     * @param selector the UCM selector, with or without the PVOB
+     * @return the PVOB
+     */
+    public static String getPVOB(String selector) {
+        String pvob = selector;
+        if (selector.contains("@" + File.separator)) {
+            pvob = selector.substring(selector.indexOf("@" + File.separator) + 2, selector.length());
+        }
+        return pvob;
+    }
+
+    /**
+     * Create the runner launching the cleartool commands of a release
+     *
+     * @param listener the Hudson listener
+     * @return the cleartool runner
+     */
+    protected ClearToolRunner createClearToolRunner(TaskListener listener) throws IOException {
+        return createClearToolRunner(listener, new Launcher.LocalLauncher(listener), workspaceRoot);
+    }
+
+    /**
+     * Create the runner launching the cleartool commands of a release on another node,
+     * for the baselines mastered by a foreign replica
      *
      * @param listener the Hudson listener
-     * @param launcher the Hudson launcher
-     * @return the Clearcase launcher
+     * @param nodeName the node name
+     * @return the cleartool runner
+     * @throws IOException if the node isn't online
      */
-    private HudsonClearToolLauncher getHudsonClearToolLauncher(TaskListener listener, Launcher launcher) {
-        HudsonClearToolLauncher clearToolLauncher = new HudsonClearToolLauncher(
-                PluginImpl.BASE_DESCRIPTOR.getCleartoolExe(), "clearcase-release", listener, workspaceRoot, launcher);
+    protected ClearToolRunner createClearToolRunner(TaskListener listener, String nodeName) throws IOException {
+        Node node = Hudson.getInstance().getNode(nodeName);
+        Computer computer = (node == null) ? null : node.toComputer();
+        if (computer == null || computer.isOffline()) {
+            throw new IOException("The node '" + nodeName + "' isn't online");
+        }
+        return createClearToolRunner(listener, node.createLauncher(listener), node.getRootPath());
+    }
+
+    private ClearToolRunner createClearToolRunner(TaskListener listener, Launcher launcher, FilePath filePath) throws IOException {
+        ClearToolRunner clearTool;
+        if (REPLAY_TRANSCRIPT != null) {
+            listener.getLogger().println("Replaying the cleartool transcript '" + REPLAY_TRANSCRIPT + "'");
+            double timeScale = Double.parseDouble(System.getProperty(ClearcaseReleaseActionImpl.class.getName() + ".replayTimeScale", "1"));
+            clearTool = new ReplayClearToolRunner(ClearToolTranscript.load(new File(REPLAY_TRANSCRIPT)), timeScale);
+        } else {
+            long releaseDeadline = (RELEASE_TIMEOUT_MILLIS == 0) ? 0 : System.currentTimeMillis() + RELEASE_TIMEOUT_MILLIS;
+            clearTool = new HudsonClearToolRunner(PluginImpl.BASE_DESCRIPTOR.getCleartoolExe(), launcher, filePath, COMMAND_TIMEOUT_MILLIS, releaseDeadline);
+
+            if (TRANSCRIPT_DIRECTORY != null) {
+                File transcriptFile = new File(TRANSCRIPT_DIRECTORY, "cleartool-" + System.currentTimeMillis() + "-" + transcriptCounter.incrementAndGet() + ".txt");
+                listener.getLogger().println("Recording the cleartool commands in '" + transcriptFile + "'");
+                clearTool = new RecordingClearToolRunner(clearTool, transcriptFile);
+            }
+        }
 
-        return clearToolLauncher;
+        //Emit a Flight Recorder event for each cleartool command
+        if (FlightRecorderEvents.COMMAND.isAvailable()) {
+            clearTool = new FlightRecorderClearToolRunner(clearTool);
+        }
+
+        //Adapt the number of concurrent commands on each PVOB to its latency and errors
+        clearTool = new LimitingClearToolRunner(clearTool, lane);
+
+        //Retry the transient errors and fail fast on unhealthy PVOBs
+        clearTool = new ResilientClearToolRunner(clearTool, listener);
+        runnerChannels.put(clearTool, launcher.getChannel());
+        return clearTool;
     }
 
     /**
@@ -90,8 +244,7 @@ public class ClearcaseReleaseActionImpl {
      *
      * @param baseLine          the UCM baseline
      * @param pvob              the UCM P_VOB
-     * @param clearToolLauncher : the clearcase object for launching commands
-     * @param filePath          the location where to launch the clearcase command
+     * @param clearTool         the cleartool runner
      * @return the baseline status : INITIAL, BUILT, REJECTED, RELEASED or OTHERS
      * @throws java.io.IOException
      * @throws InterruptedException
@@ -101,8 +254,7 @@ public class ClearcaseReleaseActionImpl {
     private String getStatusBaseLine(
             String baseLine,
             String pvob,
-            HudsonClearToolLauncher clearToolLauncher,
-            FilePath filePath)
+            ClearToolRunner clearTool)
             throws IOException, InterruptedException {
 
         ArgumentListBuilder cmd = new ArgumentListBuilder();
@@ -112,7 +264,7 @@ public class ClearcaseReleaseActionImpl {
         cmd.add(baseLine + "@" + File.separator + pvob);
 
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        clearToolLauncher.run(cmd.toCommandArray(), null, baos, filePath);
+        clearTool.run(cmd.toCommandArray(), baos);
         baos.close();
 
         String componentName = baos.toString();
@@ -125,16 +277,14 @@ public class ClearcaseReleaseActionImpl {
      *
      * @param baselineNameWithPVOB the given baseline with the P_VOB
      * @param status               the new baseline status
-     * @param clearToolLauncher    the clearcase object launcher
-     * @param filePath             the location where to launch the clearcase coommand
+     * @param clearTool         the cleartool runner
      * @throws InterruptedException
      * @throws IOException
      */
     //cleartool chbl -level RELEASED C_hudson-test-2_2009-10-29_18-36-07@\P_ORC
     private void changeLevelBaseline(String baselineNameWithPVOB,
                                      String status,
-                                     HudsonClearToolLauncher clearToolLauncher,
-                                     FilePath filePath)
+                                     ClearToolRunner clearTool)
             throws InterruptedException, IOException {
 
         ArgumentListBuilder cmd = new ArgumentListBuilder();
@@ -143,15 +293,49 @@ public class ClearcaseReleaseActionImpl {
         cmd.add(status);
         cmd.add(baselineNameWithPVOB);
 
-        clearToolLauncher.run(cmd.toCommandArray(), null, null, filePath);
+        checkLeases();
+        clearTool.run(cmd.toCommandArray(), null);
+    }
+
+    /**
+     * List the promotion levels defined in a PVOB
+     *
+     * @param listener the Hudson listener
+     * @param pvob     the UCM P_VOB
+     * @return the promotion levels, from the lowest to the highest
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    //cleartool lsplevel -short -invob \P_ORC
+    //REJECTED
+    //INITIAL
+    //BUILT
+    //RELEASED
+    public List<String> listPromotionLevels(TaskListener listener, String pvob) throws IOException, InterruptedException {
+        ArgumentListBuilder cmd = new ArgumentListBuilder();
+        cmd.add("lsplevel");
+        cmd.add("-short");
+        cmd.add("-invob");
+        cmd.add(File.separator + pvob);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        createClearToolRunner(listener).run(cmd.toCommandArray(), baos);
+        baos.close();
+
+        List<String> levels = new ArrayList<String>();
+        for (String level : baos.toString().split("\n")) {
+            if (level.trim().length() != 0) {
+                levels.add(level.trim());
+            }
+        }
+        return levels;
     }
 
     /**
      * Get the read/write components for a given stream
      *
      * @param streamPVOB        the stream name with the P_VOB
-     * @param clearToolLauncher the clearcase launcher object
-     * @param filePath          the location where to launch the clearcase command
+     * @param clearTool         the cleartool runner
      * @return the component name
      * @throws IOException
      * @throws InterruptedException
@@ -162,8 +346,7 @@ public class ClearcaseReleaseActionImpl {
     */
     private List<String> getModComponentsFromStream(
             String streamPVOB,
-            HudsonClearToolLauncher clearToolLauncher,
-            FilePath filePath)
+            ClearToolRunner clearTool)
             throws IOException, InterruptedException {
 
         ArgumentListBuilder cmd = new ArgumentListBuilder();
@@ -173,10 +356,11 @@ public class ClearcaseReleaseActionImpl {
         cmd.add(streamPVOB);
 
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        clearToolLauncher.run(cmd.toCommandArray(), null, baos, filePath);
+        clearTool.run(cmd.toCommandArray(), baos);
         baos.close();
 
-        String reusltClt = baos.toString();
+        //The quotes of the format are kept on non Windows platforms
+        String reusltClt = baos.toString().replace("\"", "").trim();
         return Arrays.asList(reusltClt.split(" "));
     }
 
@@ -185,8 +369,7 @@ public class ClearcaseReleaseActionImpl {
      * Get the latest baselines for a given stream
      *
      * @param streanWithPVOB    an UCM stream concatened with the PVOB
-     * @param clearToolLauncher the clercase object launcher
-     * @param filePath          the location  where to launch the clearcase command
+     * @param clearTool         the cleartool runner
      * @return the list of baseline name
      * @throws IOException
      * @throws InterruptedException
@@ -201,8 +384,7 @@ public class ClearcaseReleaseActionImpl {
     */
     private List<String> getLatestBaselines(
             String streanWithPVOB,
-            HudsonClearToolLauncher clearToolLauncher,
-            FilePath filePath)
+            ClearToolRunner clearTool)
             throws IOException, InterruptedException {
 
         ArgumentListBuilder cmd = new ArgumentListBuilder();
@@ -212,9 +394,10 @@ public class ClearcaseReleaseActionImpl {
         cmd.add(streanWithPVOB);
 
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        clearToolLauncher.run(cmd.toCommandArray(), null, baos, filePath);
+        clearTool.run(cmd.toCommandArray(), baos);
         baos.close();
-        String resultClt = baos.toString();
+        //The quotes of the format are kept on non Windows platforms
+        String resultClt = baos.toString().replace("\"", "").trim();
 
         //Remove the 'baseline:' prefix
         resultClt = resultClt.replace("baseline:", "");
@@ -225,190 +408,1809 @@ public class ClearcaseReleaseActionImpl {
 
 
     /**
-     * Get the component for a given baseline
+     * Describe a set of baselines with a minimal number of cleartool commands
      *
-     * @param baseLineWithPVOB  the given baseline name concatened with the PVOB
-     * @param clearToolLauncher the clearcase launcher object
-     * @param filePath          the location where to launch the clearcase command
-     * @return the component object
+     * @param baselinesWithPVOB the given baseline names concatened with the PVOB
+     * @param clearTool         the cleartool runner
+     * @return the baseline descriptions, indexed by the given baseline names trimmed
      * @throws IOException
      * @throws InterruptedException
      */
-    //cleartool lsbl -fmt "%[component]p" P_TracMngt_Rqtf_CoreModel_V3.0.1@\P_ORC
-    //TracMgt_Rqtf_CoreModel
-    private String getComponentFromBaseline(
-            String baseLineWithPVOB,
-            HudsonClearToolLauncher clearToolLauncher,
-            FilePath filePath)
+    //cleartool lsbl -fmt "%Xn %[component]p %[plevel]p\n" P_TracMngt_Rqtf_CoreModel_V3.0.1@\P_ORC LinkManager-4.3.0@\P_ORC
+    //baseline:P_TracMngt_Rqtf_CoreModel_V3.0.1@\P_ORC TracMgt_Rqtf_CoreModel RELEASED
+    //baseline:LinkManager-4.3.0@\P_ORC LinkMgt_Reqtify BUILT
+    private Map<String, BaselineDescription> describeBaselines(
+            List<String> baselinesWithPVOB,
+            final ClearToolRunner clearTool)
             throws IOException, InterruptedException {
 
+        CommandStrategy strategy = planCommands(getCapabilities(clearTool), "lsbl", baselinesWithPVOB.size());
+        List<String> outputs = runCommands(strategy, baselinesWithPVOB, new ChunkCommand<String>() {
+            public String run(List<String> chunk) throws IOException, InterruptedException {
+                ArgumentListBuilder cmd = new ArgumentListBuilder();
+                cmd.add("lsbl");
+                cmd.add("-fmt");
+                cmd.add("\"%Xn %[component]p %[plevel]p\\n\"");
+                for (String baselineWithPVOB : chunk) {
+                    cmd.add(baselineWithPVOB.trim());
+                }
+
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                clearTool.run(cmd.toCommandArray(), baos);
+                baos.close();
+                return baos.toString();
+            }
+        });
 
-        ArgumentListBuilder cmd = new ArgumentListBuilder();
-        cmd.add("lsbl");
-        cmd.add("-fmt");
-        cmd.add("\"%[component]p\"");
-        cmd.add(baseLineWithPVOB);
+        //Index the descriptions by the given baseline names, the output may use the other PVOB separator
+        Map<String, String> normalized = new LinkedHashMap<String, String>();
+        for (String baselineWithPVOB : baselinesWithPVOB) {
+            normalized.put(BaselineDescription.getKey(baselineWithPVOB), baselineWithPVOB.trim());
+        }
+        Map<String, BaselineDescription> descriptions = new LinkedHashMap<String, BaselineDescription>();
+        for (String output : outputs) {
+            for (String line : output.replace("\"", "").split("\n")) {
+                BaselineDescription description = BaselineDescription.parse(line);
+                if (description != null) {
+                    String baselineWithPVOB = normalized.get(BaselineDescription.getKey(description.getBaselineWithPVOB()));
+                    if (baselineWithPVOB != null) {
+                        descriptions.put(baselineWithPVOB, description);
+                    }
+                }
+            }
+        }
+        return descriptions;
+    }
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        clearToolLauncher.run(cmd.toCommandArray(), null, baos, filePath);
-        baos.close();
+    /**
+     * Change the level of a set of UCM baselines with a minimal number of cleartool commands
+     *
+     * @param baselinesWithPVOB the given baselines with the P_VOB
+     * @param status            the new baselines status
+     * @param clearTool         the cleartool runner
+     * @throws InterruptedException
+     * @throws IOException
+     */
+    //cleartool chbl -level RELEASED C_hudson-test-2_2009-10-29_18-36-07@\P_ORC C_hudson-test-3_2009-10-29_18-36-07@\P_ORC
+    private void changeLevelBaselines(List<String> baselinesWithPVOB,
+                                      String status,
+                                      ClearToolRunner clearTool)
+            throws InterruptedException, IOException {
 
-        String componentName = baos.toString();
-        return componentName;
+        CommandStrategy strategy = planCommands(getCapabilities(clearTool), "chbl", baselinesWithPVOB.size());
+        changeLevelBaselines(baselinesWithPVOB, status, clearTool, strategy);
     }
 
+    private void changeLevelBaselines(List<String> baselinesWithPVOB,
+                                      final String status,
+                                      final ClearToolRunner clearTool,
+                                      CommandStrategy strategy)
+            throws InterruptedException, IOException {
 
-    public void performCompoisteBaselineRelease(TaskListener listener, AbstractBuild owner, String customReleasePromotionLevel) throws IOException, InterruptedException {
-        listener.getLogger().println("\nClearcase release preforming");
-        Launcher launcher = new Launcher.LocalLauncher(listener);
-        HudsonClearToolLauncher clearToolLauncher = getHudsonClearToolLauncher(listener, launcher);
+        runCommands(strategy, baselinesWithPVOB, new ChunkCommand<Void>() {
+            public Void run(List<String> chunk) throws IOException, InterruptedException {
+                changeLevelBaselineChunk(chunk, status, clearTool);
+                return null;
+            }
+        });
+    }
 
-        //Get the composite baseline information
-        UcmMakeBaselineComposite composite = (UcmMakeBaselineComposite) owner.getProject().getPublishersList().get(hudson.plugins.clearcase.ucm.UcmMakeBaselineComposite.class);
-        if (composite == null) {
-            listener.getLogger().println("[ERROR] - No composite baseline has been configured for the job.");
-        } else {
-            String compositeBaseLine = composite.getCompositeNamePattern();
-            compositeBaseLine = Util.replaceMacro(compositeBaseLine, owner.getEnvironment(listener));
+    private void changeLevelBaselineChunk(List<String> chunk,
+                                          String status,
+                                          ClearToolRunner clearTool)
+            throws InterruptedException, IOException {
 
-            //Get the PVOB from the composite stream
-            String compositeStreamSelector = composite.getCompositeStreamSelector();
-            String pvob = compositeStreamSelector;
-            if (compositeStreamSelector.contains("@" + File.separator)) {
-                pvob = compositeStreamSelector.substring(compositeStreamSelector.indexOf("@" + File.separator) + 2, compositeStreamSelector.length());
+        ArgumentListBuilder cmd = new ArgumentListBuilder();
+        cmd.add("chbl");
+        cmd.add("-level");
+        cmd.add(status);
+        for (String baselineWithPVOB : chunk) {
+            cmd.add(baselineWithPVOB);
+        }
+
+        checkLeases();
+        clearTool.run(cmd.toCommandArray(), null);
+    }
+
+    /**
+     * Change the level of a set of UCM baselines, each one from the replica mastering it
+     *
+     * @param baselinesWithPVOB the given baselines with the P_VOB
+     * @param status            the new baselines status
+     * @param routes            the runner of each baseline, see routeBaselines
+     * @throws InterruptedException
+     * @throws IOException
+     */
+    private void changeLevelBaselines(List<String> baselinesWithPVOB,
+                                      String status,
+                                      Map<String, ClearToolRunner> routes)
+            throws InterruptedException, IOException {
+
+        Map<ClearToolRunner, List<String>> groups = new LinkedHashMap<ClearToolRunner, List<String>>();
+        for (String baselineWithPVOB : baselinesWithPVOB) {
+            ClearToolRunner clearTool = routes.get(baselineWithPVOB);
+            List<String> group = groups.get(clearTool);
+            if (group == null) {
+                group = new ArrayList<String>();
+                groups.put(clearTool, group);
             }
+            group.add(baselineWithPVOB);
+        }
 
-            //Check the status
-            listener.getLogger().println("Check the status of the composite baseline '" + compositeBaseLine + "'");
-            String compositeBaselineStatus = getStatusBaseLine(compositeBaseLine, pvob, clearToolLauncher, workspaceRoot);
+        for (Map.Entry<ClearToolRunner, List<String>> group : groups.entrySet()) {
+            try {
+                changeLevelBaselines(group.getValue(), status, group.getKey());
+            } catch (IOException e) {
+                //The mastership may have changed since the lookup
+                BaselineMastership.forget(group.getValue());
+                throw e;
+            }
+        }
+    }
 
-            if ("BUILT".equals(compositeBaselineStatus)) {
+    /**
+     * Choose the runner promoting each baseline: the given runner for the baselines mastered by the local replica,
+     * a runner on the node configured for the replica mastering the others.
+     * Nothing is promoted when some baselines are mastered by a replica without node.
+     *
+     * @param listener          the Hudson listener
+     * @param clearTool         the local cleartool runner
+     * @param baselinesWithPVOB the baselines to promote with the P_VOB
+     * @return the runner of each baseline
+     * @throws IOException if a replica mastering some baselines has no node
+     * @throws InterruptedException
+     */
+    private Map<String, ClearToolRunner> routeBaselines(TaskListener listener,
+                                                        ClearToolRunner clearTool,
+                                                        List<String> baselinesWithPVOB)
+            throws IOException, InterruptedException {
 
-                //Promote to the release promotion level the compiste baseline
-                String status = (customReleasePromotionLevel == null) ? BASELINE_PROMOTION_LEVEL.RELEASED.getLevel() : customReleasePromotionLevel;
-                listener.getLogger().println("Promote to the release promotion level the composite baseline '" + compositeBaseLine + "' with the level '" + status + '"');
-                changeLevelBaseline(compositeBaseLine + "@\\" + pvob, status, clearToolLauncher, workspaceRoot);
-                listener.getLogger().println("");
+        Map<String, ClearToolRunner> routes = new LinkedHashMap<String, ClearToolRunner>();
+        for (String baselineWithPVOB : baselinesWithPVOB) {
+            routes.put(baselineWithPVOB, clearTool);
+        }
+        if (!BaselineMastership.isEnabled() || baselinesWithPVOB.isEmpty()) {
+            return routes;
+        }
 
-                //Add a badge icon
-                String compositeBaseNameDescription = compositeBaseLine + ":RELEASED";
-                ClearcaseReleaseBuildBadgeAction releaseBuildBadgeAction = new ClearcaseReleaseBuildBadgeAction(compositeBaseNameDescription);
-                owner.addAction(releaseBuildBadgeAction);
+        //Look up the masters unknown from the cache at once
+        List<String> unknown = new ArrayList<String>();
+        for (String baselineWithPVOB : baselinesWithPVOB) {
+            if (BaselineMastership.getMaster(baselineWithPVOB) == null) {
+                unknown.add(baselineWithPVOB);
+            }
+        }
+        for (Map.Entry<String, String> master : getMasterReplicas(unknown, clearTool).entrySet()) {
+            BaselineMastership.putMaster(master.getKey(), master.getValue());
+        }
 
-                //Add a cancel action
-                owner.addAction(new ClearcaseReleaseCancelAction(owner, owner.getProject(), workspaceRoot, releaseBuildBadgeAction, Arrays.asList(new String[]{compositeBaseLine + "@\\" + pvob})));
+        //Group the baselines mastered by a foreign replica
+        Map<String, List<String>> foreignBaselines = new LinkedHashMap<String, List<String>>();
+        for (String baselineWithPVOB : baselinesWithPVOB) {
+            String pvobTag = getPVOBTag(baselineWithPVOB);
+            String localReplica = BaselineMastership.getLocalReplica(pvobTag);
+            if (localReplica == null) {
+                localReplica = getLocalReplica(pvobTag, clearTool);
+                BaselineMastership.putLocalReplica(pvobTag, localReplica);
+            }
+            String master = BaselineMastership.getMaster(baselineWithPVOB);
+            if (master != null && !master.equals(localReplica)) {
+                List<String> baselines = foreignBaselines.get(master);
+                if (baselines == null) {
+                    baselines = new ArrayList<String>();
+                    foreignBaselines.put(master, baselines);
+                }
+                baselines.add(baselineWithPVOB);
+            }
+        }
 
-                // Keep the build
-                owner.keepLog();
+        //Report all the unreachable replicas before any promotion
+        StringBuilder unreachable = new StringBuilder();
+        for (Map.Entry<String, List<String>> foreign : foreignBaselines.entrySet()) {
+            if (BaselineMastership.getNode(foreign.getKey()) == null) {
+                unreachable.append("\n  ").append(foreign.getValue().size()).append(" baseline(s) mastered by the replica '")
+                        .append(foreign.getKey()).append("': ").append(foreign.getValue());
+            }
+        }
+        if (unreachable.length() != 0) {
+            throw new IOException("No node is configured to promote the baselines mastered by foreign replicas,"
+                    + " nothing has been promoted (see the system property " + BaselineMastership.class.getName() + ".replicaNodes):" + unreachable);
+        }
 
-            } else {
-                listener.getLogger().println("\nThe composite baseline '" + compositeBaseLine + "' hasn't the status BUILT.");
+        for (Map.Entry<String, List<String>> foreign : foreignBaselines.entrySet()) {
+            String node = BaselineMastership.getNode(foreign.getKey());
+            listener.getLogger().println(foreign.getValue().size() + " baseline(s) mastered by the replica '" + foreign.getKey() + "' are promoted from the node '" + node + "'");
+            ClearToolRunner nodeClearTool = createClearToolRunner(listener, node);
+            for (String baselineWithPVOB : foreign.getValue()) {
+                routes.put(baselineWithPVOB, nodeClearTool);
             }
         }
+        return routes;
     }
 
+    /**
+     * Get the replicas mastering a set of baselines with a minimal number of cleartool commands
+     *
+     * @param baselinesWithPVOB the baselines with the P_VOB
+     * @param clearTool         the cleartool runner
+     * @return the replica name mastering each baseline
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    //cleartool lsbl -fmt "%Xn %[master]p\n" LinkManager-4.3.0@\P_ORC P_TracMngt_Rqtf_CoreModel_V3.0.1@\P_ORC
+    //baseline:LinkManager-4.3.0@\P_ORC orc_site1@\P_ORC
+    //baseline:P_TracMngt_Rqtf_CoreModel_V3.0.1@\P_ORC orc_site2@\P_ORC
+    private Map<String, String> getMasterReplicas(List<String> baselinesWithPVOB,
+                                                  final ClearToolRunner clearTool)
+            throws IOException, InterruptedException {
 
-    public void performCancelRelease(TaskListener listener,
-                                     Run owner,
-                                     ClearcaseReleaseBuildBadgeAction releaseBuildBadgeAction,
-                                     ClearcaseReleaseCancelAction clearcaseReleaseCancelAction,
-                                     List<String> promotedBaselines) throws IOException, InterruptedException {
-
-        listener.getLogger().println("\nClearcase release cancel preforming");
-        Launcher launcher = new Launcher.LocalLauncher(listener);
-        HudsonClearToolLauncher clearToolLauncher = getHudsonClearToolLauncher(listener, launcher);
+        CommandStrategy strategy = planCommands(getCapabilities(clearTool), "lsbl", baselinesWithPVOB.size());
+        List<String> outputs = runCommands(strategy, baselinesWithPVOB, new ChunkCommand<String>() {
+            public String run(List<String> chunk) throws IOException, InterruptedException {
+                ArgumentListBuilder cmd = new ArgumentListBuilder();
+                cmd.add("lsbl");
+                cmd.add("-fmt");
+                cmd.add("\"%Xn %[master]p\\n\"");
+                for (String baselineWithPVOB : chunk) {
+                    cmd.add(baselineWithPVOB.trim());
+                }
+
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                clearTool.run(cmd.toCommandArray(), baos);
+                baos.close();
+                return baos.toString();
+            }
+        });
 
-        //Cancel the release baseline
-        for (String promotedBaseline : promotedBaselines) {
-            changeLevelBaseline(promotedBaseline, BASELINE_PROMOTION_LEVEL.BUILT.getLevel(), clearToolLauncher, workspaceRoot);
-            listener.getLogger().println("");
+        //Index the masters by the given baseline names, the output may use the other PVOB separator
+        Map<String, String> normalized = new LinkedHashMap<String, String>();
+        for (String baselineWithPVOB : baselinesWithPVOB) {
+            normalized.put(BaselineDescription.getKey(baselineWithPVOB), baselineWithPVOB);
         }
+        Map<String, String> masters = new LinkedHashMap<String, String>();
+        for (String output : outputs) {
+            for (String line : output.replace("\"", "").split("\n")) {
+                String[] tokens = line.trim().split(" ");
+                if (tokens.length == 2) {
+                    String baselineWithPVOB = normalized.get(BaselineDescription.getKey(tokens[0]));
+                    if (baselineWithPVOB != null) {
+                        masters.put(baselineWithPVOB, getReplicaName(tokens[1]));
+                    }
+                }
+            }
+        }
+        return masters;
+    }
 
-        //Remove the badge action
-        owner.getActions().remove(releaseBuildBadgeAction);
-
-        //Remove itself the cancel release action
-        owner.getActions().remove(clearcaseReleaseCancelAction);
+    /**
+     * Get the replica of a PVOB seen by the Hudson master
+     *
+     * @param pvobTag   the PVOB tag
+     * @param clearTool the cleartool runner
+     * @return the replica name
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    //cleartool describe -fmt "%[replica_name]p" vob:\P_ORC
+    //orc_site1
+    private String getLocalReplica(String pvobTag, ClearToolRunner clearTool) throws IOException, InterruptedException {
+        ArgumentListBuilder cmd = new ArgumentListBuilder();
+        cmd.add("describe");
+        cmd.add("-fmt");
+        cmd.add("\"%[replica_name]p\"");
+        cmd.add("vob:" + pvobTag);
 
-        //Unlock the owner
-        owner.keepLog(false);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        clearTool.run(cmd.toCommandArray(), baos);
+        baos.close();
+        return getReplicaName(baos.toString().replace("\"", "").trim());
     }
 
-    public void performLatestBaselineRelease(TaskListener listener,
-                                            AbstractProject project,
-                                            Run owner,
-                                            String customReleasePromotionLevel) throws IOException, InterruptedException {
-        listener.getLogger().println("\nClearcase release preforming");
-        Launcher launcher = new Launcher.LocalLauncher(listener);
+    /**
+     * @param baselineWithPVOB a baseline with the P_VOB
+     * @return the P_VOB tag, with its leading separator
+     */
+    private static String getPVOBTag(String baselineWithPVOB) {
+        String trimmed = baselineWithPVOB.trim();
+        return trimmed.substring(trimmed.indexOf('@') + 1);
+    }
 
-        ClearCaseUcmSCM clearCaseUcmSCM = (ClearCaseUcmSCM) project.getScm();
+    /**
+     * @param replica a replica selector, such as orc_site1@\P_ORC
+     * @return the replica name without the P_VOB
+     */
+    private static String getReplicaName(String replica) {
+        int index = replica.indexOf('@');
+        return index < 0 ? replica : replica.substring(0, index);
+    }
 
-        HudsonClearToolLauncher clearToolLauncher = getHudsonClearToolLauncher(listener, launcher);
+    /**
+     * Walk the dependency graph of a composite baseline.
+     * All the baselines of a graph level are described with a single cleartool command.
+     *
+     * @param compositeBaselineWithPVOB the composite baseline with the P_VOB
+     * @param clearTool         the cleartool runner
+     * @return the dependency graph
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    //cleartool lsbl -fmt "%Xn %[plevel]p %[depends_on]Xp\n" C_hudson-test_2009-10-29@\P_ORC
+    //baseline:C_hudson-test_2009-10-29@\P_ORC BUILT baseline:LinkManager-4.3.0@\P_ORC baseline:P_TracMngt_Rqtf_CoreModel_V3.0.1@\P_ORC
+    private BaselineDependencyGraph describeDependencyGraph(
+            String compositeBaselineWithPVOB,
+            final ClearToolRunner clearTool)
+            throws IOException, InterruptedException {
 
-        listener.getLogger().println("Performing the release of the latest baselines");
+        BaselineDependencyGraph graph = new BaselineDependencyGraph(compositeBaselineWithPVOB);
+        List<String> level = new ArrayList<String>();
+        level.add(compositeBaselineWithPVOB);
+        while (!level.isEmpty()) {
+            List<String> nextLevel = new ArrayList<String>();
+            CommandStrategy strategy = planCommands(getCapabilities(clearTool), "lsbl", level.size());
+            List<String> outputs = runCommands(strategy, level, new ChunkCommand<String>() {
+                public String run(List<String> chunk) throws IOException, InterruptedException {
+                    ArgumentListBuilder cmd = new ArgumentListBuilder();
+                    cmd.add("lsbl");
+                    cmd.add("-fmt");
+                    cmd.add("\"%Xn %[plevel]p %[depends_on]Xp\\n\"");
+                    for (String baselineWithPVOB : chunk) {
+                        cmd.add(baselineWithPVOB);
+                    }
+
+                    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                    clearTool.run(cmd.toCommandArray(), baos);
+                    baos.close();
+                    return baos.toString();
+                }
+            });
+
+            for (String output : outputs) {
+                for (String line : output.replace("\"", "").split("\n")) {
+                    BaselineDescription description = BaselineDescription.parseWithDependencies(line);
+                    if (description != null && BaselineDescription.getKey(description.getBaselineWithPVOB()).equals(BaselineDescription.getKey(compositeBaselineWithPVOB))) {
+                        //The composite baseline is looked up by its given name, the output may use the other PVOB separator
+                        description = new BaselineDescription(compositeBaselineWithPVOB, null, description.getPromotionLevel(), description.getDependsOn());
+                    }
+                    if (description != null && !graph.isVisited(description.getBaselineWithPVOB())) {
+                        for (String dependency : graph.add(description)) {
+                            if (!nextLevel.contains(dependency)) {
+                                nextLevel.add(dependency);
+                            }
+                        }
+                    }
+                }
+            }
+            nextLevel.removeAll(level);
+            level = nextLevel;
+        }
+        return graph;
+    }
 
-        String streamWithPVOB = clearCaseUcmSCM.getStream();
-        String pvob = streamWithPVOB;
-        if (pvob.contains("@" + File.separator)) {
-            pvob = pvob.substring(pvob.indexOf("@" + File.separator) + 2, pvob.length());
+    /**
+     * Stop the release when its thread has been interrupted
+     *
+     * @throws InterruptedException if the release has been aborted
+     */
+    private static void checkInterrupted() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException("The release has been aborted");
         }
+    }
 
+    /**
+     * Split a baseline list in chunks accepted by a single cleartool command line
+     *
+     * @param baselines the baseline list
+     * @return the chunks
+     */
+    private List<List<String>> split(List<String> baselines) {
+        return split(baselines, MAX_BASELINES_PER_COMMAND);
+    }
 
-        //Get all the latest baselines
-        List<String> latestBaselines = getLatestBaselines(streamWithPVOB, clearToolLauncher, workspaceRoot);
-        listener.getLogger().println("");
+    private List<List<String>> split(List<String> baselines, int chunkSize) {
+        List<List<String>> chunks = new ArrayList<List<String>>();
+        for (int i = 0; i < baselines.size(); i += chunkSize) {
+            chunks.add(baselines.subList(i, Math.min(i + chunkSize, baselines.size())));
+        }
+        return chunks;
+    }
 
-        //Get the read/write components
-        List<String> modComps = getModComponentsFromStream(streamWithPVOB, clearToolLauncher, workspaceRoot);
-        listener.getLogger().println("");
+    /**
+     * A cleartool command launched on a chunk of baselines
+     */
+    private interface ChunkCommand<T> {
+        T run(List<String> chunk) throws IOException, InterruptedException;
+    }
 
-        //Filtering
-        List<String> keepBaselines = new ArrayList<String>();
-        for (String latestBaseline : latestBaselines) {
+    /**
+     * Launch a cleartool command on a set of baselines with a given strategy
+     *
+     * @param strategy  the way of launching the command
+     * @param baselines the baselines
+     * @param command   the command launched on each chunk of baselines
+     * @return the result of each chunk, in the baseline order
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private <T> List<T> runCommands(CommandStrategy strategy, List<String> baselines, final ChunkCommand<T> command)
+            throws IOException, InterruptedException {
 
-            //Retrieve the component of the baseline
-            String comp = getComponentFromBaseline(latestBaseline, clearToolLauncher, workspaceRoot);
-            listener.getLogger().println("");
+        List<List<String>> chunks = split(baselines, strategy == CommandStrategy.BATCHED ? MAX_BASELINES_PER_COMMAND : 1);
+        List<T> results = new ArrayList<T>();
+        if (strategy == CommandStrategy.PER_ITEM || chunks.size() <= 1 || PROMOTION_PARALLELISM <= 1) {
+            for (List<String> chunk : chunks) {
+                checkInterrupted();
+                results.add(command.run(chunk));
+            }
+            return results;
+        }
 
-            //Keep on the a modifiable component
-            if (modComps.contains(comp)) {
-                keepBaselines.add(latestBaseline);
+        //Launch the chunks in parallel
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(PROMOTION_PARALLELISM, chunks.size()), new DaemonThreadFactory());
+        try {
+            List<Future<T>> futures = new ArrayList<Future<T>>();
+            for (final List<String> chunk : chunks) {
+                futures.add(executor.submit(new Callable<T>() {
+                    public T call() throws Exception {
+                        return command.run(chunk);
+                    }
+                }));
+            }
+            for (Future<T> future : futures) {
+                results.add(getResult(future));
             }
+            return results;
+        } finally {
+            executor.shutdownNow();
         }
+    }
 
-        if (keepBaselines.size() == 0) {
-            listener.getLogger().println("There is not baseline to promote to RELEASE");
-            return;
+    /**
+     * Get the capabilities of the cleartool launching the commands of a runner, probed once per node.
+     * The commands run on the node of the runner launcher, the Hudson master or the node of a foreign replica.
+     *
+     * @param clearTool the cleartool runner
+     * @return the capabilities
+     * @throws InterruptedException
+     */
+    private ClearToolCapabilities getCapabilities(ClearToolRunner clearTool) throws InterruptedException {
+        if (REPLAY_TRANSCRIPT != null) {
+            //The transcripts don't record the probe of the node
+            return ClearToolCapabilities.DEFAULT;
         }
+        return ClearToolCapabilities.get(runnerChannels.get(clearTool), clearTool);
+    }
 
-        //Promotion to RELEASED all the latest baseline on modifiable component
-        StringBuffer latestBls = new StringBuffer();
-        for (String latestBaselineWithPVOB : keepBaselines) {
-            String status = (customReleasePromotionLevel == null) ? BASELINE_PROMOTION_LEVEL.RELEASED.getLevel() : customReleasePromotionLevel;
-            changeLevelBaseline(latestBaselineWithPVOB, status, clearToolLauncher, workspaceRoot);
-            listener.getLogger().println("");
-            latestBls.append(";");
-            latestBls.append(latestBaselineWithPVOB);
+    /**
+     * Choose how to launch a cleartool command on a set of baselines.
+     * The strategy with the fewest successive commands wins, then the one launching the fewest commands.
+     *
+     * @param capabilities  the capabilities of the cleartool
+     * @param command       the cleartool command, lsbl or chbl
+     * @param baselineCount the number of baselines
+     * @return the strategy
+     */
+    public static CommandStrategy planCommands(ClearToolCapabilities capabilities, String command, int baselineCount) {
+        CommandStrategy best = CommandStrategy.PER_ITEM;
+        int bestRounds = getRounds(best, baselineCount);
+        int bestCount = getCommandCount(best, baselineCount);
+        for (CommandStrategy strategy : new CommandStrategy[]{CommandStrategy.POOLED, CommandStrategy.BATCHED}) {
+            if (strategy == CommandStrategy.BATCHED && !capabilities.acceptsMultipleBaselines(command)) {
+                continue;
+            }
+            int rounds = getRounds(strategy, baselineCount);
+            int count = getCommandCount(strategy, baselineCount);
+            if (rounds < bestRounds || (rounds == bestRounds && count < bestCount)) {
+                best = strategy;
+                bestRounds = rounds;
+                bestCount = count;
+            }
         }
-        if (latestBls.length() != 0) {
-            latestBls.delete(0, 1);
+        return best;
+    }
+
+    /**
+     * @param strategy      the way of launching a command
+     * @param baselineCount the number of baselines
+     * @return the number of cleartool commands launched on the baselines
+     */
+    public static int getCommandCount(CommandStrategy strategy, int baselineCount) {
+        if (strategy == CommandStrategy.BATCHED) {
+            return (baselineCount + MAX_BASELINES_PER_COMMAND - 1) / MAX_BASELINES_PER_COMMAND;
         }
+        return baselineCount;
+    }
 
-        //Add a badge icon
-        String latestBaselinesReleaseDescription = "The latest baseline has been released";
-        ClearcaseReleaseBuildBadgeAction releaseBuildBadgeAction = new ClearcaseReleaseBuildBadgeAction(latestBaselinesReleaseDescription);
-        owner.addAction(releaseBuildBadgeAction);
+    /**
+     * @param strategy      the way of launching a command
+     * @param baselineCount the number of baselines
+     * @return the number of cleartool commands launched one after the other
+     */
+    private static int getRounds(CommandStrategy strategy, int baselineCount) {
+        int count = getCommandCount(strategy, baselineCount);
+        if (strategy == CommandStrategy.PER_ITEM) {
+            return count;
+        }
+        int parallelism = Math.max(1, PROMOTION_PARALLELISM);
+        return (count + parallelism - 1) / parallelism;
+    }
 
-        ArrayList<ParameterValue> parameters = new ArrayList<ParameterValue>();
-        parameters.add(new StringParameterValue("LATEST_BASELINE", latestBls.toString()));
-        owner.addAction(new ParametersAction(parameters));
+    /**
+     * Group baselines by the promotion level to restore
+     *
+     * @param baselines     the baselines to restore
+     * @param previousLevels the promotion level of each baseline before the release, may be null
+     * @return the baselines indexed by the promotion level to restore
+     */
+    private Map<String, List<String>> groupByPreviousLevel(List<String> baselines, Map<String, String> previousLevels) {
+        Map<String, List<String>> groups = new LinkedHashMap<String, List<String>>();
+        for (String baseline : baselines) {
+            String level = (previousLevels == null) ? null : previousLevels.get(baseline);
+            if (level == null) {
+                //Releases recorded before the previous level tracking
+                level = BASELINE_PROMOTION_LEVEL.BUILT.getLevel();
+            }
+            List<String> group = groups.get(level);
+            if (group == null) {
+                group = new ArrayList<String>();
+                groups.put(level, group);
+            }
+            group.add(baseline);
+        }
+        return groups;
+    }
+
+
+    public ReleaseResult performCompoisteBaselineRelease(TaskListener listener, AbstractBuild owner, String customReleasePromotionLevel) throws IOException, InterruptedException {
+        return performCompoisteBaselineRelease(listener, owner, customReleasePromotionLevel, false);
+    }
+
+    public ReleaseResult performCompoisteBaselineRelease(TaskListener listener, AbstractBuild owner, String customReleasePromotionLevel, boolean promoteDependencies) throws IOException, InterruptedException {
+
+        //Get the composite baseline information
+        UcmMakeBaselineComposite composite = (UcmMakeBaselineComposite) owner.getProject().getPublishersList().get(hudson.plugins.clearcase.ucm.UcmMakeBaselineComposite.class);
+        if (composite == null) {
+            listener.getLogger().println("\nClearcase release preforming");
+            listener.getLogger().println("[ERROR] - No composite baseline has been configured for the job.");
+            return null;
+        } else {
+            String compositeBaseLine = composite.getCompositeNamePattern();
+            compositeBaseLine = Util.replaceMacro(compositeBaseLine, owner.getEnvironment(listener));
+
+            //Get the PVOB from the composite stream
+            String pvob = getPVOB(composite.getCompositeStreamSelector());
+
+            return performCompoisteBaselineRelease(listener, owner, compositeBaseLine, pvob, customReleasePromotionLevel, promoteDependencies);
+        }
+    }
+
+    /**
+     * Release a composite baseline already resolved at build time
+     *
+     * @param listener                    the Hudson listener
+     * @param owner                       the build having created the composite baseline
+     * @param compositeBaseLine           the composite baseline name, without the PVOB
+     * @param pvob                        the PVOB of the composite baseline
+     * @param customReleasePromotionLevel the promotion level, null for the default level
+     * @param promoteDependencies         true to promote also the baselines the composite baseline depends on
+     * @return the promoted baselines, null if nothing has been promoted
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public ReleaseResult performCompoisteBaselineRelease(TaskListener listener, AbstractBuild owner, String compositeBaseLine, String pvob, String customReleasePromotionLevel, boolean promoteDependencies) throws IOException, InterruptedException {
+        listener.getLogger().println("\nClearcase release preforming");
+
+        ReleaseResult result;
+        acquireLeases(listener, getLeaseKeys(getStreams(owner.getProject()), Arrays.asList(pvob)));
+        try {
+            //The release deadline starts once the leases are held
+            ClearToolRunner clearTool = createClearToolRunner(listener);
+            result = releaseCompositeBaseline(listener, clearTool, compositeBaseLine, pvob, customReleasePromotionLevel, promoteDependencies);
+        } catch (PartialReleaseException e) {
+            recordPartialRelease(listener, owner, owner.getProject(), compositeBaseLine + ":PARTIALLY RELEASED", e);
+            throw e;
+        } finally {
+            releaseLeases();
+        }
+        if (result == null) {
+            return null;
+        }
+
+        //Add a badge icon
+        String compositeBaseNameDescription = compositeBaseLine + ":RELEASED";
+        ClearcaseReleaseBuildBadgeAction releaseBuildBadgeAction = new ClearcaseReleaseBuildBadgeAction(compositeBaseNameDescription);
+        owner.addAction(releaseBuildBadgeAction);
+
+        //Add a cancel action
+        owner.addAction(new ClearcaseReleaseCancelAction(owner, owner.getProject(), workspaceRoot, releaseBuildBadgeAction, result.getChangedBaselines(), result.getPreviousLevels()));
+
+        // Keep the build
+        owner.keepLog();
+
+        firePromoted(owner, result);
+
+        return result;
+    }
+
+    /**
+     * Promote a composite baseline with the level BUILT, and optionally the baselines it depends on
+     *
+     * @param listener                    the Hudson listener
+     * @param clearTool                   the cleartool runner
+     * @param compositeBaseLine           the composite baseline name, without the PVOB
+     * @param pvob                        the PVOB of the composite baseline
+     * @param customReleasePromotionLevel the promotion level, null for the default level
+     * @param promoteDependencies         true to promote also the baselines the composite baseline depends on
+     * @return the promoted baselines, null if the composite baseline hasn't the status BUILT
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public ReleaseResult releaseCompositeBaseline(TaskListener listener,
+                                                  ClearToolRunner clearTool,
+                                                  String compositeBaseLine,
+                                                  String pvob,
+                                                  String customReleasePromotionLevel,
+                                                  boolean promoteDependencies) throws IOException, InterruptedException {
+
+        //Check the status
+        listener.getLogger().println("Check the status of the composite baseline '" + compositeBaseLine + "'");
+        Object phase = FlightRecorderEvents.PHASE.begin();
+        String compositeBaselineStatus = getStatusBaseLine(compositeBaseLine, pvob, clearTool);
+        FlightRecorderEvents.PHASE.commit(phase, "status", compositeBaseLine, 1);
+
+        if (!"BUILT".equals(compositeBaselineStatus)) {
+            listener.getLogger().println("\nThe composite baseline '" + compositeBaseLine + "' hasn't the status BUILT.");
+            return null;
+        }
+
+        String compositeBaselineWithPVOB = compositeBaseLine + "@\\" + pvob;
+        String status = (customReleasePromotionLevel == null) ? BASELINE_PROMOTION_LEVEL.RELEASED.getLevel() : customReleasePromotionLevel;
+        ReleaseResult result = new ReleaseResult(status);
+
+        //The member baselines to promote, by promotion layer
+        List<List<String>> promotionLayers = new ArrayList<List<String>>();
+        List<String> promoteBaselines = new ArrayList<String>();
+        if (promoteDependencies) {
+            listener.getLogger().println("Retrieve the baselines the composite baseline '" + compositeBaseLine + "' depends on");
+            phase = FlightRecorderEvents.PHASE.begin();
+            BaselineDependencyGraph graph = describeDependencyGraph(compositeBaselineWithPVOB, clearTool);
+            FlightRecorderEvents.PHASE.commit(phase, "dependencies", compositeBaselineWithPVOB, graph.size());
+            listener.getLogger().println("");
+            for (List<String> layer : graph.getPromotionLayers()) {
+                List<String> promotionLayer = new ArrayList<String>();
+                for (String baseline : layer) {
+                    String level = graph.getDescription(baseline).getPromotionLevel();
+                    if (BASELINE_PROMOTION_LEVEL.BUILT.getLevel().equals(level) && !baseline.equals(compositeBaselineWithPVOB)) {
+                        promotionLayer.add(baseline);
+                        result.add(baseline, level);
+                    }
+                }
+                if (!promotionLayer.isEmpty()) {
+                    promotionLayers.add(promotionLayer);
+                    promoteBaselines.addAll(promotionLayer);
+                }
+            }
+        }
+        promoteBaselines.add(compositeBaselineWithPVOB);
+        result.add(compositeBaselineWithPVOB, compositeBaselineStatus);
+        Map<String, ClearToolRunner> routes = routeBaselines(listener, clearTool, promoteBaselines);
+
+        Set<String> attempted = new HashSet<String>();
+        try {
+            //Promote the member baselines before the composite baselines depending on them
+            for (List<String> promotionLayer : promotionLayers) {
+                checkInterrupted();
+                listener.getLogger().println("Promote " + promotionLayer.size() + " member baseline(s) with the level '" + status + "'");
+                phase = FlightRecorderEvents.PHASE.begin();
+                attempted.addAll(promotionLayer);
+                changeLevelBaselines(promotionLayer, status, routes);
+                FlightRecorderEvents.PHASE.commit(phase, "promote", compositeBaselineWithPVOB, promotionLayer.size());
+                listener.getLogger().println("");
+            }
+
+            //Promote to the release promotion level the compiste baseline
+            checkInterrupted();
+            listener.getLogger().println("Promote to the release promotion level the composite baseline '" + compositeBaseLine + "' with the level '" + status + '"');
+            phase = FlightRecorderEvents.PHASE.begin();
+            attempted.add(compositeBaselineWithPVOB);
+            changeLevelBaseline(compositeBaselineWithPVOB, status, routes.get(compositeBaselineWithPVOB));
+            FlightRecorderEvents.PHASE.commit(phase, "promote", compositeBaselineWithPVOB, 1);
+            listener.getLogger().println("");
+        } catch (IOException e) {
+            throw toPartialRelease(e, result, attempted);
+        } catch (InterruptedException e) {
+            throw toPartialRelease(e, result, attempted);
+        }
+
+        return result;
+    }
+
+
+    public void performCancelRelease(TaskListener listener,
+                                     Run owner,
+                                     ClearcaseReleaseBuildBadgeAction releaseBuildBadgeAction,
+                                     ClearcaseReleaseCancelAction clearcaseReleaseCancelAction,
+                                     List<String> promotedBaselines,
+                                     Map<String, String> previousLevels) throws IOException, InterruptedException {
+
+        listener.getLogger().println("\nClearcase release cancel preforming");
+
+        //The leases of the release: the streams of the job, and the PVOBs of all the promoted baselines
+        List<String> pvobs = new ArrayList<String>();
+        for (String promotedBaseline : promotedBaselines) {
+            pvobs.add(getPVOB(promotedBaseline));
+        }
+        acquireLeases(listener, getLeaseKeys(getStreams(owner.getParent()), pvobs));
+        try {
+            //The release deadline starts once the leases are held
+            ClearToolRunner clearTool = createClearToolRunner(listener);
+            cancelRelease(listener, clearTool, promotedBaselines, previousLevels);
+        } finally {
+            releaseLeases();
+        }
+
+        //Remove the badge action
+        owner.getActions().remove(releaseBuildBadgeAction);
+
+        //Remove itself the cancel release action
+        owner.getActions().remove(clearcaseReleaseCancelAction);
+
+        //Unlock the owner
+        owner.keepLog(false);
+
+        ReleaseEventDispatcher.get().fire(new ReleaseEvent(ReleaseEvent.Type.CANCELLED, owner, null, promotedBaselines, previousLevels));
+    }
+
+    /**
+     * Get the leases covering a release or its cancellation.
+     * A cancellation takes the leases of all the releases it may undo, so that they exclude each other.
+     *
+     * @param streams the UCM streams of the job, with the PVOB
+     * @param pvobs   the PVOBs of the changed baselines
+     * @return the lease keys, in the key order
+     */
+    static Set<String> getLeaseKeys(Collection<String> streams, Collection<String> pvobs) {
+        Set<String> keys = new TreeSet<String>();
+        for (String stream : streams) {
+            String key = PromotionLease.getKey(getPVOB(stream), stream);
+            if (key != null) {
+                keys.add(key);
+            }
+        }
+        for (String pvob : pvobs) {
+            String key = PromotionLease.getKey(pvob, null);
+            if (key != null) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Take the leases covering a release, in the key order so that two releases never wait for each other
+     *
+     * @param listener the Hudson listener
+     * @param keys     the lease keys, see getLeaseKeys
+     * @throws IOException          if a lease can't be taken
+     * @throws InterruptedException if the release has been aborted while waiting
+     */
+    private void acquireLeases(TaskListener listener, Set<String> keys) throws IOException, InterruptedException {
+        List<PromotionLease> acquired = new ArrayList<PromotionLease>();
+        boolean held = false;
+        try {
+            for (String key : keys) {
+                PromotionLease lease = PromotionLease.acquire(listener, key);
+                if (lease != null) {
+                    acquired.add(lease);
+                }
+            }
+            held = true;
+        } finally {
+            if (!held) {
+                for (PromotionLease lease : acquired) {
+                    lease.release();
+                }
+            }
+        }
+        leases = acquired;
+    }
+
+    /**
+     * Stop the release if one of its leases has been taken over by another release
+     *
+     * @throws IOException if a lease isn't held anymore
+     */
+    private void checkLeases() throws IOException {
+        for (PromotionLease lease : leases) {
+            lease.checkHeld();
+        }
+    }
+
+    private void releaseLeases() {
+        List<PromotionLease> held = leases;
+        leases = Collections.emptyList();
+        for (PromotionLease lease : held) {
+            lease.release();
+        }
+    }
+
+    /**
+     * Get the UCM streams of a job
+     *
+     * @param job the job
+     * @return the streams with the PVOB, empty if the job doesn't use a UCM stream
+     */
+    private static List<String> getStreams(Job job) {
+        if (job instanceof AbstractProject) {
+            return getStreams(((AbstractProject) job).getScm());
+        }
+        return Collections.emptyList();
+    }
 
+    /**
+     * Get the UCM streams of a job: the stream of a ClearCase UCM SCM,
+     * or the streams of the ClearCase UCM SCMs aggregated by a multiple SCM exposing them with getConfiguredSCMs()
+     *
+     * @param scm the SCM of the job
+     * @return the streams with the PVOB, empty if the job doesn't use a UCM stream
+     */
+    public static List<String> getStreams(SCM scm) {
+        List<String> streams = new ArrayList<String>();
+        addStreams(scm, streams);
+        return streams;
+    }
+
+    private static void addStreams(Object scm, List<String> streams) {
+        if (scm instanceof ClearCaseUcmSCM) {
+            String stream = ((ClearCaseUcmSCM) scm).getStream();
+            if (!streams.contains(stream)) {
+                streams.add(stream);
+            }
+            return;
+        }
+        if (scm == null) {
+            return;
+        }
+
+        //The multiple SCM plugins are optional, use their accessor by reflection
+        Object configuredSCMs;
+        try {
+            configuredSCMs = scm.getClass().getMethod("getConfiguredSCMs").invoke(scm);
+        } catch (NoSuchMethodException e) {
+            return;
+        } catch (IllegalAccessException e) {
+            return;
+        } catch (InvocationTargetException e) {
+            return;
+        }
+        if (configuredSCMs instanceof Collection) {
+            for (Object configuredSCM : (Collection) configuredSCMs) {
+                addStreams(configuredSCM, streams);
+            }
+        }
+    }
+
+    /**
+     * Record on the build the baselines possibly promoted by a failed or aborted release, so that it can be cancelled
+     *
+     * @param listener    the Hudson listener
+     * @param owner       the released build
+     * @param project     the job of the released build
+     * @param description the badge description
+     * @param e           the partial release failure
+     * @throws IOException
+     * @throws InterruptedException the cause of the failure if the release has been aborted
+     */
+    private void recordPartialRelease(TaskListener listener, Run owner, AbstractProject project, String description, PartialReleaseException e) throws IOException, InterruptedException {
+        ReleaseResult result = e.getResult();
+        listener.getLogger().println("[WARNING] - " + result.getPromotedBaselines().size() + " baseline(s) may have been promoted, cancel the release to restore their level");
+
+        //Add a badge icon
+        ClearcaseReleaseBuildBadgeAction releaseBuildBadgeAction = new ClearcaseReleaseBuildBadgeAction(description);
+        owner.addAction(releaseBuildBadgeAction);
 
         //Add a cancel action
-        owner.addAction(new ClearcaseReleaseCancelAction(owner, project, workspaceRoot, releaseBuildBadgeAction, keepBaselines));
+        owner.addAction(new ClearcaseReleaseCancelAction(owner, project, workspaceRoot, releaseBuildBadgeAction, result.getChangedBaselines(), result.getPreviousLevels()));
 
         // Keep the build
         owner.keepLog();
+        owner.save();
+
+        //Keep the abort visible as an abort
+        if (e.isAborted()) {
+            throw (InterruptedException) e.getCause();
+        }
+    }
+
+    private void firePromoted(Run owner, ReleaseResult result) {
+        ReleaseEventDispatcher.get().fire(new ReleaseEvent(ReleaseEvent.Type.PROMOTED, owner, result.getPromotionLevel(), result.getPromotedBaselines(), result.getPreviousLevels()));
+    }
 
+    /**
+     * Restore promoted baselines to their level before the release
+     *
+     * @param listener          the Hudson listener
+     * @param clearTool         the cleartool runner
+     * @param promotedBaselines the promoted baselines with the PVOB
+     * @param previousLevels    the promotion level of each baseline before the release, may be null
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void cancelRelease(TaskListener listener,
+                              ClearToolRunner clearTool,
+                              List<String> promotedBaselines,
+                              Map<String, String> previousLevels) throws IOException, InterruptedException {
+
+        //Restore the baselines to their level before the release
+        Map<String, ClearToolRunner> routes = routeBaselines(listener, clearTool, promotedBaselines);
+        Map<String, List<String>> groups = groupByPreviousLevel(promotedBaselines, previousLevels);
+        for (Map.Entry<String, List<String>> group : groups.entrySet()) {
+            checkInterrupted();
+            listener.getLogger().println("Restore " + group.getValue().size() + " baseline(s) to the level '" + group.getKey() + "'");
+            Object phase = FlightRecorderEvents.PHASE.begin();
+            changeLevelBaselines(group.getValue(), group.getKey(), routes);
+            FlightRecorderEvents.PHASE.commit(phase, "restore", group.getKey(), group.getValue().size());
+            listener.getLogger().println("");
+        }
+    }
+
+    public ReleaseResult performLatestBaselineRelease(TaskListener listener,
+                                                     AbstractProject project,
+                                                     Run owner,
+                                                     String customReleasePromotionLevel) throws IOException, InterruptedException {
+        return performLatestBaselineRelease(listener, project, owner, customReleasePromotionLevel, null);
+    }
+
+    /**
+     * Release the latest baselines of the streams of a job, the level of each baseline being chosen by promotion rules
+     *
+     * @param listener                    the Hudson listener
+     * @param project                     the job
+     * @param owner                       the released build
+     * @param customReleasePromotionLevel the promotion level of the baselines matching no rule, null for the default level
+     * @param promotionRules              the promotion rules, one per line, null for none
+     * @return the promoted baselines, null if nothing has been promoted
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public ReleaseResult performLatestBaselineRelease(TaskListener listener,
+                                                     AbstractProject project,
+                                                     Run owner,
+                                                     String customReleasePromotionLevel,
+                                                     String promotionRules) throws IOException, InterruptedException {
+        listener.getLogger().println("\nClearcase release preforming");
+
+        PromotionRules rules;
+        try {
+            rules = PromotionRules.get(promotionRules);
+        } catch (IllegalArgumentException e) {
+            listener.getLogger().println("[ERROR] - Invalid promotion rules. " + e.getMessage());
+            return null;
+        }
+
+        List<String> streams = getStreams(project.getScm());
+        if (streams.isEmpty()) {
+            listener.getLogger().println("[ERROR] - The job doesn't use a ClearCase UCM stream.");
+            return null;
+        }
+
+        //Reuse the plans prefetched after the build if they are still fresh
+        Map<String, ReleasePlan> plans = ReleasePlan.getAll(owner);
+
+        ReleaseResult result;
+        acquireLeases(listener, getLeaseKeys(streams, Collections.<String>emptyList()));
+        try {
+            for (PromotionLease lease : leases) {
+                if (lease.isContended() && !plans.isEmpty()) {
+                    //Another release may have promoted the planned baselines while waiting: check their levels again
+                    listener.getLogger().println("The release plans prefetched after the build are discarded, another release held the lease");
+                    plans.clear();
+                }
+            }
+
+            //The release deadline starts once the leases are held
+            ClearToolRunner clearTool = createClearToolRunner(listener);
+            if (streams.size() == 1) {
+                result = releaseLatestBaselines(listener, clearTool, streams.get(0), plans.get(streams.get(0)), customReleasePromotionLevel, rules);
+            } else {
+                result = releaseLatestBaselinesOfStreams(listener, clearTool, streams, plans, customReleasePromotionLevel, rules);
+            }
+        } catch (PartialReleaseException e) {
+            ReleasePlan.remove(owner);
+            recordPartialRelease(listener, owner, project, "The latest baselines have been partially released", e);
+            throw e;
+        } finally {
+            releaseLeases();
+        }
+
+        //The plan no longer describes the promotion levels
+        ReleasePlan.remove(owner);
+
+        if (result == null) {
+            return null;
+        }
+
+        //Add a badge icon
+        String latestBaselinesReleaseDescription = "The latest baseline has been released";
+        ClearcaseReleaseBuildBadgeAction releaseBuildBadgeAction = new ClearcaseReleaseBuildBadgeAction(latestBaselinesReleaseDescription);
+        owner.addAction(releaseBuildBadgeAction);
+
+        //Add a cancel action, before anything that may fail: the baselines are already promoted
+        owner.addAction(new ClearcaseReleaseCancelAction(owner, project, workspaceRoot, releaseBuildBadgeAction, result.getChangedBaselines(), result.getPreviousLevels()));
+
+        //Expose the promoted baselines, the large sets only in a file of the build
+        ClearcaseReleaseBaselinesAction previousBaselinesAction = owner.getAction(ClearcaseReleaseBaselinesAction.class);
+        if (previousBaselinesAction != null) {
+            owner.getActions().remove(previousBaselinesAction);
+        }
+        try {
+            owner.addAction(new ClearcaseReleaseBaselinesAction(owner, result.getPromotedBaselines()));
+        } catch (IOException e) {
+            listener.getLogger().println("[WARNING] - Unable to store the promoted baselines in the build directory. " + e.getMessage());
+        }
+
+        // Keep the build
+        owner.keepLog();
+
+        firePromoted(owner, result);
+
+        return result;
+    }
+
+    /**
+     * Promote the latest baselines of the modifiable components of a stream
+     *
+     * @param listener                    the Hudson listener
+     * @param clearTool                   the cleartool runner
+     * @param streamWithPVOB              the UCM stream with the PVOB
+     * @param customReleasePromotionLevel the promotion level, null for the default level
+     * @return the promoted baselines, null if there is no baseline to promote
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public ReleaseResult releaseLatestBaselines(TaskListener listener,
+                                                ClearToolRunner clearTool,
+                                                String streamWithPVOB,
+                                                String customReleasePromotionLevel) throws IOException, InterruptedException {
+        return releaseLatestBaselines(listener, clearTool, streamWithPVOB, null, customReleasePromotionLevel);
+    }
+
+    /**
+     * Promote the latest baselines of the modifiable components of a stream from a prefetched plan
+     *
+     * @param listener                    the Hudson listener
+     * @param clearTool                   the cleartool runner
+     * @param streamWithPVOB              the UCM stream with the PVOB
+     * @param plan                        the prefetched plan, null to discover the baselines
+     * @param customReleasePromotionLevel the promotion level, null for the default level
+     * @return the promoted baselines, null if there is no baseline to promote
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public ReleaseResult releaseLatestBaselines(TaskListener listener,
+                                                ClearToolRunner clearTool,
+                                                String streamWithPVOB,
+                                                ReleasePlan plan,
+                                                String customReleasePromotionLevel) throws IOException, InterruptedException {
+        return releaseLatestBaselines(listener, clearTool, streamWithPVOB, plan, customReleasePromotionLevel, null);
+    }
+
+    /**
+     * Promote the latest baselines of the modifiable components of a stream, each one to the level chosen by promotion rules
+     *
+     * @param listener                    the Hudson listener
+     * @param clearTool                   the cleartool runner
+     * @param streamWithPVOB              the UCM stream with the PVOB
+     * @param plan                        the prefetched plan, null to discover the baselines
+     * @param customReleasePromotionLevel the promotion level of the baselines matching no rule, null for the default level
+     * @param rules                       the promotion rules, null to promote all the baselines to the same level
+     * @return the promoted baselines, null if there is no baseline to promote
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public ReleaseResult releaseLatestBaselines(TaskListener listener,
+                                                ClearToolRunner clearTool,
+                                                String streamWithPVOB,
+                                                ReleasePlan plan,
+                                                String customReleasePromotionLevel,
+                                                PromotionRules rules) throws IOException, InterruptedException {
+
+        listener.getLogger().println("Performing the release of the latest baselines");
+
+        //Get all the latest baselines
+        Object phase = FlightRecorderEvents.PHASE.begin();
+        List<String> latestBaselines = getLatestBaselines(streamWithPVOB, clearTool);
+        FlightRecorderEvents.PHASE.commit(phase, "discover", streamWithPVOB, latestBaselines.size());
+        listener.getLogger().println("");
+
+        String status = (customReleasePromotionLevel == null) ? BASELINE_PROMOTION_LEVEL.RELEASED.getLevel() : customReleasePromotionLevel;
+        if (plan == null || !plan.isFresh(streamWithPVOB, latestBaselines, PLAN_MAX_AGE_MILLIS)) {
+            if (plan != null) {
+                listener.getLogger().println("The release plan prefetched after the build is out of date");
+            }
+            if (!BaselineMastership.isEnabled() && rules == null) {
+                return releaseLatestBaselinesPipelined(listener, clearTool, streamWithPVOB, latestBaselines, status);
+            }
+            //The baselines are routed to the replicas mastering them, and grouped by level, before any promotion
+            plan = planLatestBaselineRelease(listener, clearTool, streamWithPVOB, latestBaselines);
+        } else {
+            listener.getLogger().println("Using the release plan prefetched after the build");
+            plan = describeCandidates(listener, clearTool, plan);
+        }
+
+        //Filtering
+        ReleaseResult result = new ReleaseResult(status);
+        Map<String, List<String>> batches = groupByTargetLevel(plan.getCandidates(), status, rules, result);
+
+        if (result.getPromotedBaselines().size() == 0) {
+            listener.getLogger().println("There is not baseline to promote to RELEASE");
+            return null;
+        }
+
+        //Promotion to RELEASED all the latest baseline on modifiable component
+        promoteBatches(listener, clearTool, batches, streamWithPVOB, result);
+
+        return result;
+    }
+
+    /**
+     * Promote the latest baselines of the modifiable components of several streams as a single release.
+     * The streams are discovered concurrently, and a baseline shared by several streams is promoted once.
+     *
+     * @param listener                    the Hudson listener
+     * @param clearTool                   the cleartool runner
+     * @param streamsWithPVOB             the UCM streams with the PVOB
+     * @param prefetchedPlans             the plans prefetched after the build, by stream with the PVOB
+     * @param customReleasePromotionLevel the promotion level of the baselines matching no rule, null for the default level
+     * @param rules                       the promotion rules, null to promote all the baselines to the same level
+     * @return the promoted baselines of all the streams, null if there is no baseline to promote
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public ReleaseResult releaseLatestBaselinesOfStreams(final TaskListener listener,
+                                                         final ClearToolRunner clearTool,
+                                                         List<String> streamsWithPVOB,
+                                                         final Map<String, ReleasePlan> prefetchedPlans,
+                                                         String customReleasePromotionLevel,
+                                                         PromotionRules rules) throws IOException, InterruptedException {
+
+        listener.getLogger().println("Performing the release of the latest baselines of " + streamsWithPVOB.size() + " streams");
+
+        //Discover the streams concurrently
+        List<ReleasePlan> plans = new ArrayList<ReleasePlan>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(PROMOTION_PARALLELISM, streamsWithPVOB.size())), new DaemonThreadFactory());
+        try {
+            List<Future<ReleasePlan>> futures = new ArrayList<Future<ReleasePlan>>();
+            for (final String streamWithPVOB : streamsWithPVOB) {
+                futures.add(executor.submit(new Callable<ReleasePlan>() {
+                    public ReleasePlan call() throws Exception {
+                        Object phase = FlightRecorderEvents.PHASE.begin();
+                        List<String> latestBaselines = getLatestBaselines(streamWithPVOB, clearTool);
+                        FlightRecorderEvents.PHASE.commit(phase, "discover", streamWithPVOB, latestBaselines.size());
+                        ReleasePlan plan = prefetchedPlans.get(streamWithPVOB);
+                        if (plan != null && plan.isFresh(streamWithPVOB, latestBaselines, PLAN_MAX_AGE_MILLIS)) {
+                            return describeCandidates(listener, clearTool, plan);
+                        }
+                        return planLatestBaselineRelease(listener, clearTool, streamWithPVOB, latestBaselines);
+                    }
+                }));
+            }
+            for (Future<ReleasePlan> future : futures) {
+                plans.add(getResult(future));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        //Merge the plans, the baselines shared by several streams once
+        String status = (customReleasePromotionLevel == null) ? BASELINE_PROMOTION_LEVEL.RELEASED.getLevel() : customReleasePromotionLevel;
+        List<BaselineDescription> candidates = new ArrayList<BaselineDescription>();
+        Set<String> candidateNames = new HashSet<String>();
+        int sharedBaselines = 0;
+        for (ReleasePlan streamPlan : plans) {
+            for (BaselineDescription candidate : streamPlan.getCandidates()) {
+                if (!candidateNames.add(candidate.getBaselineWithPVOB().trim())) {
+                    sharedBaselines++;
+                    continue;
+                }
+                candidates.add(candidate);
+            }
+        }
+        ReleaseResult result = new ReleaseResult(status);
+        Map<String, List<String>> batches = groupByTargetLevel(candidates, status, rules, result);
+        if (sharedBaselines != 0) {
+            listener.getLogger().println(sharedBaselines + " baseline(s) shared by several streams are promoted once");
+        }
+
+        if (result.getPromotedBaselines().size() == 0) {
+            listener.getLogger().println("There is not baseline to promote to RELEASE");
+            return null;
+        }
+
+        //Promote the baselines of all the streams at once
+        promoteBatches(listener, clearTool, batches, streamsWithPVOB.toString(), result);
+
+        return result;
+    }
+
+    /**
+     * Choose in a single pass the promotion level of each candidate baseline, and group the baselines to promote by level
+     *
+     * @param candidates the latest baselines of the modifiable components
+     * @param status     the release promotion level
+     * @param rules      the promotion rules, null to promote all the candidates to the release level
+     * @param result     the release result recording the released candidates
+     * @return the baselines to promote, by promotion level
+     */
+    static Map<String, List<String>> groupByTargetLevel(List<BaselineDescription> candidates,
+                                                        String status,
+                                                        PromotionRules rules,
+                                                        ReleaseResult result) {
+        Map<String, List<String>> batches = new LinkedHashMap<String, List<String>>();
+        for (BaselineDescription candidate : candidates) {
+            String level = (rules == null) ? status : rules.getLevel(candidate.getComponent(), candidate.getBaselineWithPVOB(), status);
+            if (level == null) {
+                //Skipped by a rule
+                continue;
+            }
+            result.add(candidate.getBaselineWithPVOB(), candidate.getPromotionLevel(), level);
+            if (!level.equals(candidate.getPromotionLevel())) {
+                List<String> batch = batches.get(level);
+                if (batch == null) {
+                    batch = new ArrayList<String>();
+                    batches.put(level, batch);
+                }
+                batch.add(candidate.getBaselineWithPVOB());
+            }
+        }
+        return batches;
+    }
+
+    /**
+     * Promote the baselines of a release, with the commands of a promotion level at a time
+     *
+     * @param listener  the Hudson listener
+     * @param clearTool the cleartool runner
+     * @param batches   the baselines to promote, by promotion level
+     * @param released  the released streams, for the Flight Recorder events
+     * @param result    the released baselines, with their level before the release
+     * @throws PartialReleaseException if the release has failed or has been aborted after launching some promotions
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private void promoteBatches(TaskListener listener,
+                                ClearToolRunner clearTool,
+                                Map<String, List<String>> batches,
+                                String released,
+                                ReleaseResult result) throws IOException, InterruptedException {
+        List<String> promoteBaselines = new ArrayList<String>();
+        for (List<String> batch : batches.values()) {
+            promoteBaselines.addAll(batch);
+        }
+        Map<String, ClearToolRunner> routes = routeBaselines(listener, clearTool, promoteBaselines);
+        Set<String> attempted = new HashSet<String>();
+        try {
+            for (Map.Entry<String, List<String>> batch : batches.entrySet()) {
+                checkInterrupted();
+                if (batches.size() > 1) {
+                    listener.getLogger().println("Promote " + batch.getValue().size() + " baseline(s) with the level '" + batch.getKey() + "'");
+                }
+                Object phase = FlightRecorderEvents.PHASE.begin();
+                attempted.addAll(batch.getValue());
+                changeLevelBaselines(batch.getValue(), batch.getKey(), routes);
+                FlightRecorderEvents.PHASE.commit(phase, "promote", released, batch.getValue().size());
+                listener.getLogger().println("");
+            }
+        } catch (IOException e) {
+            throw toPartialRelease(e, result, attempted);
+        } catch (InterruptedException e) {
+            throw toPartialRelease(e, result, attempted);
+        }
+    }
+
+    /**
+     * Promote the latest baselines of the modifiable components of a stream, the discovery and the promotion overlapping:
+     * the baselines of each described chunk are promoted while the next chunk is described.
+     * The chunks waiting for the promotion are bounded, the description waits when the promotion doesn't keep up.
+     *
+     * @param listener        the Hudson listener
+     * @param clearTool       the cleartool runner
+     * @param streamWithPVOB  the UCM stream with the PVOB
+     * @param latestBaselines the latest baselines of the stream
+     * @param status          the promotion level
+     * @return the promoted baselines, null if there is no baseline to promote
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private ReleaseResult releaseLatestBaselinesPipelined(TaskListener listener,
+                                                          final ClearToolRunner clearTool,
+                                                          final String streamWithPVOB,
+                                                          List<String> latestBaselines,
+                                                          final String status) throws IOException, InterruptedException {
+
+        Object phase = FlightRecorderEvents.PHASE.begin();
+        List<List<String>> chunks = split(latestBaselines);
+        int promoters = Math.max(1, Math.min(PROMOTION_PARALLELISM, chunks.size()));
+        final BlockingQueue<List<String>> promotions = new ArrayBlockingQueue<List<String>>(PIPELINE_DEPTH);
+        final List<String> endOfPromotions = new ArrayList<String>();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final AtomicInteger promotedCount = new AtomicInteger();
+        final ReleaseResult result = new ReleaseResult(status);
+
+        //The baselines whose promotion has been launched, no promotion is launched once a failure is recorded
+        final Set<String> attempted = new HashSet<String>();
+
+        //The promoters already run in parallel, each chunk is promoted with a single command when supported
+        final CommandStrategy promotionStrategy = getCapabilities(clearTool).acceptsMultipleBaselines("chbl")
+                ? CommandStrategy.BATCHED
+                : CommandStrategy.PER_ITEM;
+
+        ExecutorService executor = Executors.newFixedThreadPool(promoters + 1, new DaemonThreadFactory());
+        try {
+            //Get the read/write components while the first baselines are described
+            Future<List<String>> modCompsFuture = executor.submit(new Callable<List<String>>() {
+                public List<String> call() throws Exception {
+                    return getModComponentsFromStream(streamWithPVOB, clearTool);
+                }
+            });
+
+            //Promote the chunks as they come
+            List<Future<?>> promoterFutures = new ArrayList<Future<?>>();
+            for (int i = 0; i < promoters; i++) {
+                promoterFutures.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        while (true) {
+                            List<String> chunk = promotions.take();
+                            if (chunk == endOfPromotions) {
+                                return null;
+                            }
+                            //Drain the queue after a failure, the description stops at the next chunk
+                            synchronized (attempted) {
+                                if (failure.get() != null) {
+                                    continue;
+                                }
+                                attempted.addAll(chunk);
+                            }
+                            try {
+                                changeLevelBaselines(chunk, status, clearTool, promotionStrategy);
+                                promotedCount.addAndGet(chunk.size());
+                            } catch (Throwable e) {
+                                failure.compareAndSet(null, e);
+                            }
+                        }
+                    }
+                }));
+            }
+
+            //Describe the baselines chunk by chunk and keep the ones on a modifiable component
+            List<String> modComps = null;
+            try {
+                for (List<String> chunk : chunks) {
+                    checkInterrupted();
+                    if (failure.get() != null) {
+                        break;
+                    }
+                    Map<String, BaselineDescription> descriptions = describeBaselines(chunk, clearTool);
+                    if (modComps == null) {
+                        modComps = getResult(modCompsFuture);
+                    }
+
+                    List<String> promoteBaselines = new ArrayList<String>();
+                    for (String latestBaseline : chunk) {
+                        BaselineDescription description = descriptions.get(latestBaseline.trim());
+
+                        //Keep on the a modifiable component
+                        if (description != null && modComps.contains(description.getComponent())) {
+                            result.add(latestBaseline, description.getPromotionLevel());
+                            if (!status.equals(description.getPromotionLevel())) {
+                                promoteBaselines.add(latestBaseline);
+                            }
+                        }
+                    }
+                    if (!promoteBaselines.isEmpty()) {
+                        promotions.put(promoteBaselines);
+                    }
+                }
+            } catch (IOException e) {
+                //Stop launching the queued promotions before ending the promoters, and before keeping the attempted ones
+                failure.compareAndSet(null, e);
+                throw e;
+            } catch (InterruptedException e) {
+                failure.compareAndSet(null, e);
+                throw e;
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+                throw e;
+            } finally {
+                for (int i = 0; i < promoters; i++) {
+                    promotions.put(endOfPromotions);
+                }
+            }
+
+            for (Future<?> promoterFuture : promoterFutures) {
+                getResult(promoterFuture);
+            }
+            Throwable cause = failure.get();
+            if (cause != null) {
+                throw toIOException(cause);
+            }
+            FlightRecorderEvents.PHASE.commit(phase, "pipeline", streamWithPVOB, promotedCount.get());
+
+            if (result.getPromotedBaselines().size() == 0) {
+                listener.getLogger().println("There is not baseline to promote to RELEASE");
+                return null;
+            }
+            listener.getLogger().println("");
+            return result;
+        } catch (IOException e) {
+            throw toPartialRelease(e, result, attempted);
+        } catch (InterruptedException e) {
+            //Stop launching the queued promotions
+            failure.compareAndSet(null, e);
+            throw toPartialRelease(e, result, attempted);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Keep the baselines possibly promoted by a failed or aborted release, so that the release can be cancelled
+     *
+     * @param failure   the failure of the release
+     * @param result    the baselines of the release, with their level before the release
+     * @param attempted the baselines whose promotion has been launched
+     * @return the partial release failure, or the failure itself if no promotion has been launched
+     * @throws InterruptedException if the release has been aborted before any promotion
+     */
+    private static IOException toPartialRelease(Exception failure, ReleaseResult result, Collection<String> attempted) throws InterruptedException {
+        ReleaseResult partialResult = new ReleaseResult(result.getPromotionLevel());
+        synchronized (attempted) {
+            for (String baseline : result.getPromotedBaselines()) {
+                if (attempted.contains(baseline)) {
+                    partialResult.add(baseline, result.getPreviousLevels().get(baseline), result.getTargetLevel(baseline));
+                }
+            }
+        }
+        if (partialResult.getPromotedBaselines().isEmpty()) {
+            if (failure instanceof InterruptedException) {
+                throw (InterruptedException) failure;
+            }
+            return (IOException) failure;
+        }
+        String message = ((failure instanceof InterruptedException) ? "The release has been aborted" : "The release has failed")
+                + " after launching the promotion of " + partialResult.getPromotedBaselines().size() + " baseline(s): " + failure.getMessage();
+        return new PartialReleaseException(message, partialResult, failure);
+    }
+
+    /**
+     * Wait for the result of a pipeline stage
+     *
+     * @param future the stage
+     * @return the stage result
+     * @throws IOException          if the stage has failed
+     * @throws InterruptedException
+     */
+    private static <T> T getResult(Future<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw toIOException(e.getCause());
+        }
+    }
+
+    private static IOException toIOException(Throwable cause) throws InterruptedException {
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        if (cause instanceof InterruptedException) {
+            throw (InterruptedException) cause;
+        }
+        IOException ioe = new IOException("Promotion failed: " + cause);
+        ioe.initCause(cause);
+        return ioe;
+    }
+
+    /**
+     * Discover the latest baselines of the modifiable components of a stream without promoting them
+     *
+     * @param listener       the Hudson listener
+     * @param streamWithPVOB the UCM stream with the PVOB
+     * @return the release plan
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public ReleasePlan planLatestBaselineRelease(TaskListener listener, String streamWithPVOB) throws IOException, InterruptedException {
+        return planLatestBaselineRelease(listener, createClearToolRunner(listener), streamWithPVOB);
+    }
+
+    /**
+     * Discover the latest baselines of the modifiable components of a stream without promoting them
+     *
+     * @param listener       the Hudson listener
+     * @param clearTool      the cleartool runner
+     * @param streamWithPVOB the UCM stream with the PVOB
+     * @return the release plan
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public ReleasePlan planLatestBaselineRelease(TaskListener listener,
+                                                ClearToolRunner clearTool,
+                                                String streamWithPVOB) throws IOException, InterruptedException {
+        List<String> latestBaselines = getLatestBaselines(streamWithPVOB, clearTool);
+        listener.getLogger().println("");
+        return planLatestBaselineRelease(listener, clearTool, streamWithPVOB, latestBaselines);
+    }
+
+    /**
+     * Describe again the candidates of a prefetched plan with a single command.
+     * The plan keeps the baselines to promote, another release may have changed their promotion level since the prefetch.
+     *
+     * @param listener  the Hudson listener
+     * @param clearTool the cleartool runner
+     * @param plan      the prefetched plan
+     * @return the plan with the current promotion levels of its candidates
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private ReleasePlan describeCandidates(TaskListener listener,
+                                           ClearToolRunner clearTool,
+                                           ReleasePlan plan) throws IOException, InterruptedException {
+        ReleasePlan currentPlan = new ReleasePlan(plan.getStreamWithPVOB(), plan.getLatestBaselines());
+        if (plan.getCandidates().isEmpty()) {
+            return currentPlan;
+        }
+
+        checkInterrupted();
+        List<String> candidates = new ArrayList<String>();
+        for (BaselineDescription candidate : plan.getCandidates()) {
+            candidates.add(candidate.getBaselineWithPVOB());
+        }
+        Map<String, BaselineDescription> descriptions = describeBaselines(candidates, clearTool);
+        listener.getLogger().println("");
+
+        for (BaselineDescription candidate : plan.getCandidates()) {
+            BaselineDescription description = descriptions.get(candidate.getBaselineWithPVOB().trim());
+            if (description != null) {
+                currentPlan.addCandidate(new BaselineDescription(candidate.getBaselineWithPVOB(), candidate.getComponent(), description.getPromotionLevel()));
+            }
+        }
+        return currentPlan;
+    }
+
+    private ReleasePlan planLatestBaselineRelease(TaskListener listener,
+                                                 ClearToolRunner clearTool,
+                                                 String streamWithPVOB,
+                                                 List<String> latestBaselines) throws IOException, InterruptedException {
+
+        //Get the read/write components
+        checkInterrupted();
+        Object phase = FlightRecorderEvents.PHASE.begin();
+        List<String> modComps = getModComponentsFromStream(streamWithPVOB, clearTool);
+        listener.getLogger().println("");
+
+        //Describe all the latest baselines at once
+        Map<String, BaselineDescription> descriptions = describeBaselines(latestBaselines, clearTool);
+        listener.getLogger().println("");
+
+        ReleasePlan plan = new ReleasePlan(streamWithPVOB, latestBaselines);
+        for (String latestBaseline : latestBaselines) {
+
+            BaselineDescription description = descriptions.get(latestBaseline.trim());
+
+            //Keep on the a modifiable component
+            if (description != null && modComps.contains(description.getComponent())) {
+                plan.addCandidate(new BaselineDescription(latestBaseline, description.getComponent(), description.getPromotionLevel()));
+            }
+        }
+        FlightRecorderEvents.PHASE.commit(phase, "plan", streamWithPVOB, plan.getCandidates().size());
+        return plan;
+    }
+
+    /**
+     * Compute the baselines a latest baselines release would promote, without changing any baseline.
+     * The fresh plans prefetched after the build are used as is, only the other streams are planned with cleartool.
+     *
+     * @param listener                    the Hudson listener
+     * @param streamsWithPVOB             the UCM streams of the job, with the PVOB
+     * @param prefetchedPlans             the plans prefetched after the build, by stream with the PVOB
+     * @param customReleasePromotionLevel the promotion level of the baselines matching no rule, null for the default level
+     * @param promotionRules              the promotion rules, one per line, null for none
+     * @return the release preview
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public ReleasePreview previewLatestBaselineRelease(TaskListener listener,
+                                                       List<String> streamsWithPVOB,
+                                                       Map<String, ReleasePlan> prefetchedPlans,
+                                                       String customReleasePromotionLevel,
+                                                       String promotionRules) throws IOException, InterruptedException {
+
+        PromotionRules rules = PromotionRules.get(promotionRules);
+
+        ClearToolRunner clearTool = null;
+        List<ReleasePlan> plans = new ArrayList<ReleasePlan>();
+        Set<String> cachedStreams = new HashSet<String>();
+        for (String streamWithPVOB : streamsWithPVOB) {
+            ReleasePlan plan = prefetchedPlans.get(streamWithPVOB);
+            if (plan != null && plan.isFresh(streamWithPVOB, PLAN_MAX_AGE_MILLIS)) {
+                plans.add(plan);
+                cachedStreams.add(streamWithPVOB);
+                continue;
+            }
+            if (clearTool == null) {
+                clearTool = createClearToolRunner(listener);
+            }
+            plans.add(planLatestBaselineRelease(listener, clearTool, streamWithPVOB));
+        }
+
+        //The releases launch their commands from the Hudson master
+        ClearToolCapabilities capabilities = (clearTool == null) ? ClearToolCapabilities.peek(Hudson.MasterComputer.localChannel) : getCapabilities(clearTool);
+        return previewPlans(plans, cachedStreams, capabilities, customReleasePromotionLevel, rules);
+    }
+
+    /**
+     * Compute the baselines a latest baselines release would promote from the plans prefetched after the build only,
+     * without any cleartool command
+     *
+     * @param streamsWithPVOB             the UCM streams of the job, with the PVOB
+     * @param prefetchedPlans             the plans prefetched after the build, by stream with the PVOB
+     * @param customReleasePromotionLevel the promotion level of the baselines matching no rule, null for the default level
+     * @param promotionRules              the promotion rules, one per line, null for none
+     * @return the release preview, null if a stream has no fresh prefetched plan
+     */
+    public static ReleasePreview previewCachedLatestBaselineRelease(List<String> streamsWithPVOB,
+                                                                    Map<String, ReleasePlan> prefetchedPlans,
+                                                                    String customReleasePromotionLevel,
+                                                                    String promotionRules) {
+        List<ReleasePlan> plans = new ArrayList<ReleasePlan>();
+        for (String streamWithPVOB : streamsWithPVOB) {
+            ReleasePlan plan = prefetchedPlans.get(streamWithPVOB);
+            if (plan == null || !plan.isFresh(streamWithPVOB, PLAN_MAX_AGE_MILLIS)) {
+                return null;
+            }
+            plans.add(plan);
+        }
+        return previewPlans(plans, new HashSet<String>(streamsWithPVOB), ClearToolCapabilities.peek(Hudson.MasterComputer.localChannel),
+                customReleasePromotionLevel, PromotionRules.get(promotionRules));
+    }
+
+    /**
+     * Preview the release of planned streams
+     *
+     * @param plans                       the plans of the streams
+     * @param cachedStreams               the streams whose plan was prefetched, the release only describes their candidates again
+     * @param capabilities                the capabilities of the cleartool launching the release commands
+     * @param customReleasePromotionLevel the promotion level of the baselines matching no rule, null for the default level
+     * @param rules                       the promotion rules, null for none
+     * @return the release preview
+     */
+    private static ReleasePreview previewPlans(List<ReleasePlan> plans,
+                                               Set<String> cachedStreams,
+                                               ClearToolCapabilities capabilities,
+                                               String customReleasePromotionLevel,
+                                               PromotionRules rules) {
+
+        String status = (customReleasePromotionLevel == null) ? BASELINE_PROMOTION_LEVEL.RELEASED.getLevel() : customReleasePromotionLevel;
+        ReleasePreview preview = new ReleasePreview(status, cachedStreams.size() == plans.size());
+
+        Set<String> candidates = new HashSet<String>();
+        for (ReleasePlan streamPlan : plans) {
+            String streamWithPVOB = streamPlan.getStreamWithPVOB();
+
+            //The release lists the latest baselines, and describes them again, all of them without a prefetched plan
+            estimate(preview, capabilities, streamWithPVOB, "lsstream", 1);
+            if (cachedStreams.contains(streamWithPVOB)) {
+                estimate(preview, capabilities, streamWithPVOB, "lsbl", streamPlan.getCandidates().size());
+            } else {
+                estimate(preview, capabilities, streamWithPVOB, "lsstream", 1);
+                estimate(preview, capabilities, streamWithPVOB, "lsbl", streamPlan.getLatestBaselines().size());
+            }
+
+            Map<String, Integer> promoteCounts = new LinkedHashMap<String, Integer>();
+            for (BaselineDescription candidate : streamPlan.getCandidates()) {
+                if (!candidates.add(candidate.getBaselineWithPVOB().trim())) {
+                    continue;
+                }
+                String level = (rules == null) ? status : rules.getLevel(candidate.getComponent(), candidate.getBaselineWithPVOB(), status);
+                preview.add(candidate.getBaselineWithPVOB().trim(), candidate.getPromotionLevel(), level);
+                if (level != null && !level.equals(candidate.getPromotionLevel())) {
+                    Integer count = promoteCounts.get(level);
+                    promoteCounts.put(level, (count == null) ? 1 : count + 1);
+                }
+            }
+            for (int promoteCount : promoteCounts.values()) {
+                estimate(preview, capabilities, streamWithPVOB, "chbl", promoteCount);
+            }
+        }
+        return preview;
+    }
+
+    /**
+     * Compute the baselines a composite baseline release would promote, without changing any baseline
+     *
+     * @param listener                    the Hudson listener
+     * @param compositeBaseLine           the composite baseline name, without the PVOB
+     * @param pvob                        the PVOB of the composite baseline
+     * @param customReleasePromotionLevel the promotion level, null for the default level
+     * @param promoteDependencies         true to promote also the baselines the composite baseline depends on
+     * @return the release preview
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public ReleasePreview previewCompositeBaselineRelease(TaskListener listener,
+                                                          String compositeBaseLine,
+                                                          String pvob,
+                                                          String customReleasePromotionLevel,
+                                                          boolean promoteDependencies) throws IOException, InterruptedException {
+
+        String status = (customReleasePromotionLevel == null) ? BASELINE_PROMOTION_LEVEL.RELEASED.getLevel() : customReleasePromotionLevel;
+        ReleasePreview preview = new ReleasePreview(status, false);
+
+        ClearToolRunner clearTool = createClearToolRunner(listener);
+        ClearToolCapabilities capabilities = getCapabilities(clearTool);
+        String compositeBaselineWithPVOB = compositeBaseLine + "@\\" + pvob;
+
+        //The dependency graph gives the level of the composite baseline as well
+        String compositeLevel;
+        BaselineDependencyGraph graph = null;
+        if (promoteDependencies) {
+            graph = describeDependencyGraph(compositeBaselineWithPVOB, clearTool);
+            BaselineDescription description = graph.getDescription(compositeBaselineWithPVOB);
+            compositeLevel = (description == null) ? null : description.getPromotionLevel();
+        } else {
+            compositeLevel = getStatusBaseLine(compositeBaseLine, pvob, clearTool);
+        }
+        boolean built = BASELINE_PROMOTION_LEVEL.BUILT.getLevel().equals(compositeLevel);
+        estimate(preview, capabilities, compositeBaselineWithPVOB, "lsbl", 1);
+
+        if (graph != null) {
+            if (built) {
+                estimate(preview, capabilities, compositeBaselineWithPVOB, "lsbl", graph.size());
+            }
+            for (List<String> layer : graph.getPromotionLayers()) {
+                int promoteCount = 0;
+                for (String baseline : layer) {
+                    if (baseline.equals(compositeBaselineWithPVOB)) {
+                        continue;
+                    }
+                    String level = graph.getDescription(baseline).getPromotionLevel();
+                    boolean promoted = built && BASELINE_PROMOTION_LEVEL.BUILT.getLevel().equals(level);
+                    preview.add(baseline, level, promoted);
+                    if (promoted) {
+                        promoteCount++;
+                    }
+                }
+                estimate(preview, capabilities, compositeBaselineWithPVOB, "chbl", promoteCount);
+            }
+        }
+
+        //The release promotes nothing if the composite baseline hasn't the status BUILT
+        preview.add(compositeBaselineWithPVOB, compositeLevel, built);
+        if (built) {
+            estimate(preview, capabilities, compositeBaselineWithPVOB, "chbl", 1);
+        }
+        return preview;
+    }
+
+    /**
+     * Add the cleartool commands launched on a set of baselines to the estimate of a release
+     *
+     * @param preview      the release preview
+     * @param capabilities the capabilities of the cleartool
+     * @param selector     an UCM selector with the PVOB the commands are launched on
+     * @param command      the cleartool command
+     * @param count        the number of baselines, or of streams
+     */
+    private static void estimate(ReleasePreview preview, ClearToolCapabilities capabilities, String selector, String command, int count) {
+        if (count == 0) {
+            return;
+        }
+        CommandStrategy strategy = planCommands(capabilities, command, count);
+        int arity = (strategy == CommandStrategy.BATCHED) ? Math.min(count, MAX_BASELINES_PER_COMMAND) : 1;
+        long latency = PvobConcurrencyLimiter.get(ResilientClearToolRunner.getPVOB(new String[]{selector})).getUsualLatency(command, arity);
+        if (latency < 0) {
+            latency = ESTIMATED_COMMAND_MILLIS;
+        }
+        preview.addEstimate(getCommandCount(strategy, count), getRounds(strategy, count) * latency);
     }
 }
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease.biz;
+
+import hudson.util.NullStream;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+
+/**
+ * Emits a Flight Recorder event for each cleartool command launched by a delegate runner
+ */
+public class FlightRecorderClearToolRunner implements ClearToolRunner {
+
+    private final ClearToolRunner delegate;
+
+    /**
+     * The name of the thread that launched the release, the release task thread
+     */
+    private final String releaseThread;
+
+    public FlightRecorderClearToolRunner(ClearToolRunner delegate) {
+        this.delegate = delegate;
+        this.releaseThread = Thread.currentThread().getName();
+    }
+
+    /**
+     * Counts the bytes written by a command
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    public void run(String[] cmd, OutputStream out) throws IOException, InterruptedException {
+        Object event = FlightRecorderEvents.COMMAND.begin();
+        if (event == null) {
+            delegate.run(cmd, out);
+            return;
+        }
+
+        CountingOutputStream counter = new CountingOutputStream(out == null ? new NullStream() : out);
+        int exitCode = -1;
+        try {
+            delegate.run(cmd, counter);
+            exitCode = 0;
+        } catch (ClearToolExitException e) {
+            exitCode = e.getExitCode();
+            throw e;
+        } finally {
+            FlightRecorderEvents.COMMAND.commit(event, cmd[0], ResilientClearToolRunner.getPVOB(cmd), counter.count, exitCode, releaseThread);
+        }
+    }
+}
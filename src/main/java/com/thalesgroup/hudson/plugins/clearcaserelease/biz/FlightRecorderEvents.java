@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease.biz;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * Emits Java Flight Recorder events for the cleartool commands and the release phases.
+ * The plugin is compiled for Java 5, the event types are therefore created at runtime with jdk.jfr.EventFactory through reflection.
+ * Nothing is emitted on a JVM without Flight Recorder, or when the events are disabled in the recording settings.
+ */
+public final class FlightRecorderEvents {
+
+    private static final Logger LOGGER = Logger.getLogger(FlightRecorderEvents.class.getName());
+
+    private static final String[] CATEGORY = {"Hudson", "ClearCase Release"};
+
+    /**
+     * A cleartool command, the thread that launched the release is given as the command may be run by a pool thread
+     */
+    public static final FlightRecorderEvents COMMAND = new FlightRecorderEvents(
+            "com.thalesgroup.hudson.plugins.clearcaserelease.ClearToolCommand", "cleartool Command",
+            new String[]{"command", "pvob", "outputBytes", "exitCode", "releaseThread"},
+            new Class[]{String.class, String.class, long.class, int.class, String.class});
+
+    /**
+     * A phase of a release, such as the discovery of the baselines or their promotion
+     */
+    public static final FlightRecorderEvents PHASE = new FlightRecorderEvents(
+            "com.thalesgroup.hudson.plugins.clearcaserelease.ReleasePhase", "ClearCase Release Phase",
+            new String[]{"phase", "target", "baselineCount"},
+            new Class[]{String.class, String.class, int.class});
+
+    private static Method newEvent;
+    private static Method isEnabled;
+    private static Method begin;
+    private static Method end;
+    private static Method shouldCommit;
+    private static Method set;
+    private static Method commit;
+
+    /**
+     * The jdk.jfr.EventFactory of the event type, null without Flight Recorder
+     */
+    private final Object factory;
+
+    private FlightRecorderEvents(String name, String label, String[] fieldNames, Class[] fieldTypes) {
+        Object eventFactory = null;
+        try {
+            Class<?> annotationElementClass = Class.forName("jdk.jfr.AnnotationElement");
+            Constructor<?> annotationElement = annotationElementClass.getConstructor(Class.class, Object.class);
+            Class<?> valueDescriptorClass = Class.forName("jdk.jfr.ValueDescriptor");
+            Constructor<?> valueDescriptor = valueDescriptorClass.getConstructor(Class.class, String.class, List.class);
+
+            List<Object> annotations = new ArrayList<Object>();
+            annotations.add(annotationElement.newInstance(Class.forName("jdk.jfr.Name"), name));
+            annotations.add(annotationElement.newInstance(Class.forName("jdk.jfr.Label"), label));
+            annotations.add(annotationElement.newInstance(Class.forName("jdk.jfr.Category"), CATEGORY));
+
+            List<Object> fields = new ArrayList<Object>();
+            for (int i = 0; i < fieldNames.length; i++) {
+                List<Object> fieldAnnotations = Arrays.asList(annotationElement.newInstance(Class.forName("jdk.jfr.Label"), fieldNames[i]));
+                fields.add(valueDescriptor.newInstance(fieldTypes[i], fieldNames[i], fieldAnnotations));
+            }
+
+            Class<?> factoryClass = Class.forName("jdk.jfr.EventFactory");
+            eventFactory = factoryClass.getMethod("create", List.class, List.class).invoke(null, annotations, fields);
+            initMethods(factoryClass);
+        } catch (ClassNotFoundException e) {
+            //No Flight Recorder
+        } catch (Throwable e) {
+            LOGGER.log(Level.FINE, "Unable to create the Flight Recorder event " + name, e);
+            eventFactory = null;
+        }
+        this.factory = eventFactory;
+    }
+
+    private static synchronized void initMethods(Class<?> factoryClass) throws Exception {
+        if (newEvent == null) {
+            Class<?> eventClass = Class.forName("jdk.jfr.Event");
+            isEnabled = eventClass.getMethod("isEnabled");
+            begin = eventClass.getMethod("begin");
+            end = eventClass.getMethod("end");
+            shouldCommit = eventClass.getMethod("shouldCommit");
+            set = eventClass.getMethod("set", int.class, Object.class);
+            commit = eventClass.getMethod("commit");
+            newEvent = factoryClass.getMethod("newEvent");
+        }
+    }
+
+    /**
+     * @return true if the events can be emitted on this JVM
+     */
+    public boolean isAvailable() {
+        return factory != null;
+    }
+
+    /**
+     * Start an event
+     *
+     * @return the started event, null if the event is not recorded
+     */
+    public Object begin() {
+        if (factory == null) {
+            return null;
+        }
+        try {
+            Object event = newEvent.invoke(factory);
+            if (!(Boolean) isEnabled.invoke(event)) {
+                return null;
+            }
+            begin.invoke(event);
+            return event;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * End and commit an event
+     *
+     * @param event  the event returned by {@link #begin()}, may be null
+     * @param values the values of the event fields
+     */
+    public void commit(Object event, Object... values) {
+        if (event == null) {
+            return;
+        }
+        try {
+            end.invoke(event);
+            if ((Boolean) shouldCommit.invoke(event)) {
+                for (int i = 0; i < values.length; i++) {
+                    set.invoke(event, i, values[i]);
+                }
+                commit.invoke(event);
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Unable to commit the Flight Recorder event", e);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease.biz;
+
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Proc;
+import hudson.util.ArgumentListBuilder;
+import hudson.util.NullStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+
+/**
+ * Launches the cleartool commands with a Hudson launcher.
+ * A command still running at its deadline, or when the release thread is interrupted, is killed with its process tree.
+ */
+public class HudsonClearToolRunner implements ClearToolRunner {
+
+    /**
+     * The delay between two checks of a running command
+     */
+    private static final long POLL_MILLIS = 100;
+
+    private final String executable;
+
+    private final Launcher launcher;
+
+    private final FilePath filePath;
+
+    private final long commandTimeoutMillis;
+
+    private final long releaseDeadline;
+
+    /**
+     * @param executable           the cleartool executable
+     * @param launcher             the Hudson launcher
+     * @param filePath             the location where to launch the clearcase commands
+     * @param commandTimeoutMillis the maximal duration of a command, 0 for no limit
+     * @param releaseDeadline      the time the whole release must be completed by, 0 for no limit
+     */
+    public HudsonClearToolRunner(String executable, Launcher launcher, FilePath filePath, long commandTimeoutMillis, long releaseDeadline) {
+        this.executable = executable;
+        this.launcher = launcher;
+        this.filePath = filePath;
+        this.commandTimeoutMillis = commandTimeoutMillis;
+        this.releaseDeadline = releaseDeadline;
+    }
+
+    public void run(String[] cmd, OutputStream out) throws IOException, InterruptedException {
+        long deadline = getDeadline(cmd);
+
+        ArgumentListBuilder args = new ArgumentListBuilder();
+        args.add(executable);
+        for (String arg : cmd) {
+            args.add(arg);
+        }
+
+        Launcher.ProcStarter starter = launcher.launch().cmds(args).stdout(out == null ? new NullStream() : out);
+        if (filePath != null) {
+            starter.pwd(filePath);
+        }
+        Proc proc = starter.start();
+
+        try {
+            while (proc.isAlive()) {
+                if (deadline != 0 && System.currentTimeMillis() >= deadline) {
+                    proc.kill();
+                    if (deadline == releaseDeadline) {
+                        //A long release says nothing about the PVOB health
+                        throw new ClearToolException(ClearToolException.Type.DEADLINE,
+                                "cleartool " + cmd[0] + " killed, the release deadline has expired");
+                    }
+                    throw new ClearToolException(ClearToolException.Type.TIMEOUT,
+                            "cleartool " + cmd[0] + " killed, the command timeout has expired");
+                }
+                Thread.sleep(POLL_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            //The release has been aborted
+            proc.kill();
+            throw e;
+        }
+
+        int exitCode = proc.join();
+        if (exitCode != 0) {
+            throw new ClearToolExitException("cleartool " + cmd[0] + " returned the exit code " + exitCode, exitCode);
+        }
+    }
+
+    /**
+     * Compute the deadline of a command from the command timeout and the release deadline
+     *
+     * @param cmd the cleartool arguments
+     * @return the deadline, 0 for no limit
+     * @throws ClearToolException if the release deadline has already expired
+     */
+    private long getDeadline(String[] cmd) throws ClearToolException {
+        long now = System.currentTimeMillis();
+        if (releaseDeadline != 0 && now >= releaseDeadline) {
+            throw new ClearToolException(ClearToolException.Type.DEADLINE,
+                    "cleartool " + cmd[0] + " not launched, the release deadline has expired");
+        }
+        long deadline = (commandTimeoutMillis == 0) ? 0 : now + commandTimeoutMillis;
+        if (releaseDeadline != 0 && (deadline == 0 || releaseDeadline < deadline)) {
+            deadline = releaseDeadline;
+        }
+        return deadline;
+    }
+}
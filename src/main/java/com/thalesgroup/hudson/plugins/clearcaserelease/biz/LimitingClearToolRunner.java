@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease.biz;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+
+/**
+ * Launches the cleartool commands of a delegate runner within the adaptive concurrency limit of their PVOB,
+ * in a priority lane
+ */
+public class LimitingClearToolRunner implements ClearToolRunner {
+
+    private final ClearToolRunner delegate;
+
+    private final ReleaseLane lane;
+
+    /**
+     * @param delegate the runner launching the commands
+     * @param lane     the priority lane of the commands
+     */
+    public LimitingClearToolRunner(ClearToolRunner delegate, ReleaseLane lane) {
+        this.delegate = delegate;
+        this.lane = lane;
+    }
+
+    public void run(String[] cmd, OutputStream out) throws IOException, InterruptedException {
+        PvobConcurrencyLimiter limiter = PvobConcurrencyLimiter.get(ResilientClearToolRunner.getPVOB(cmd));
+        limiter.acquire(lane);
+
+        long start = System.currentTimeMillis();
+        boolean overloaded = false;
+        boolean completed = true;
+        try {
+            delegate.run(cmd, out);
+        } catch (IOException e) {
+            ClearToolException.Type type = (e instanceof ClearToolException)
+                    ? ((ClearToolException) e).getType()
+                    : ClearToolException.classify(e.getMessage(), (out instanceof ByteArrayOutputStream) ? out.toString() : null);
+            overloaded = type.isUnhealthy();
+            //Killed by the release deadline, its duration isn't a latency
+            completed = type != ClearToolException.Type.DEADLINE;
+            throw e;
+        } catch (InterruptedException e) {
+            //Killed by an abort
+            completed = false;
+            throw e;
+        } finally {
+            if (completed) {
+                limiter.release(cmd[0], PvobConcurrencyLimiter.getArity(cmd), System.currentTimeMillis() - start, overloaded);
+            } else {
+                limiter.release();
+            }
+        }
+    }
+}
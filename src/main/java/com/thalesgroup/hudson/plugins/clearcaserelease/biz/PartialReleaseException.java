@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease.biz;
+
+import java.io.IOException;
+
+
+/**
+ * Represents a release failed or aborted after launching some promotions.
+ * The baselines possibly promoted are kept, so that the release can be cancelled.
+ */
+public class PartialReleaseException extends IOException {
+
+    private final ReleaseResult result;
+
+    /**
+     * @param message the failure message
+     * @param result  the baselines possibly promoted before the failure
+     * @param cause   the failure, an InterruptedException if the release has been aborted
+     */
+    public PartialReleaseException(String message, ReleaseResult result, Throwable cause) {
+        super(message);
+        this.result = result;
+        initCause(cause);
+    }
+
+    /**
+     * @return the baselines possibly promoted before the failure, with their level before the release
+     */
+    public ReleaseResult getResult() {
+        return result;
+    }
+
+    /**
+     * @return true if the release has been aborted, false if it has failed
+     */
+    public boolean isAborted() {
+        return getCause() instanceof InterruptedException;
+    }
+}
@@ -0,0 +1,350 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease.biz;
+
+import hudson.model.TaskListener;
+import hudson.util.DaemonThreadFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * A lease on the promotions of a PVOB or of a stream, shared by the Hudson instances releasing on the same PVOBs.
+ * <p/>
+ * The lease is a lock file in a shared directory, created atomically and holding the lease owner and a heartbeat counter.
+ * A lock file unchanged for the expiry period, measured with the local clock of the waiting instance, belongs to a crashed
+ * instance and is taken over.
+ */
+public class PromotionLease {
+
+    private static final Logger LOGGER = Logger.getLogger(PromotionLease.class.getName());
+
+    /**
+     * The shared directory of the lock files, no lease when not set
+     */
+    private static final String DIRECTORY = System.getProperty(PromotionLease.class.getName() + ".directory");
+
+    /**
+     * The lease granularity: 'pvob' or 'stream'
+     */
+    private static final String SCOPE = System.getProperty(PromotionLease.class.getName() + ".scope", "pvob");
+
+    private static final long EXPIRY_MILLIS = Long.getLong(PromotionLease.class.getName() + ".expirySeconds", 300L) * 1000L;
+
+    private static final long HEARTBEAT_MILLIS = Long.getLong(PromotionLease.class.getName() + ".heartbeatSeconds", 30L) * 1000L;
+
+    /**
+     * The maximal wait for a lease held by another release, 0 for no limit
+     */
+    private static final long MAX_WAIT_MILLIS = Long.getLong(PromotionLease.class.getName() + ".maxWaitMinutes", 60L) * 60000L;
+
+    private static final long POLL_MILLIS = Math.min(HEARTBEAT_MILLIS, 2000L);
+
+    private static final String INSTANCE = ManagementFactory.getRuntimeMXBean().getName();
+
+    private static final AtomicLong leaseCounter = new AtomicLong();
+
+    private static final ScheduledExecutorService HEARTBEATS = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory());
+
+    private final String key;
+
+    private final File file;
+
+    private final String owner;
+
+    private final boolean contended;
+
+    private long sequence;
+
+    private boolean lost;
+
+    private ScheduledFuture<?> heartbeat;
+
+    private PromotionLease(String key, File file, String owner, boolean contended) {
+        this.key = key;
+        this.file = file;
+        this.owner = owner;
+        this.contended = contended;
+    }
+
+    /**
+     * @return true if the releases take a lease before launching cleartool commands
+     */
+    public static boolean isEnabled() {
+        return DIRECTORY != null;
+    }
+
+    /**
+     * Take the lease of a PVOB or of a stream, according to the configured scope, waiting for the current holder
+     *
+     * @param listener the Hudson listener
+     * @param pvob     the PVOB of the release
+     * @param stream   the stream of the release with its PVOB, null if unknown
+     * @return the lease, null when the leases are disabled or the release has no PVOB
+     * @throws IOException          if the lease can't be created or the wait has expired
+     * @throws InterruptedException if the release has been aborted while waiting
+     */
+    public static PromotionLease acquire(TaskListener listener, String pvob, String stream) throws IOException, InterruptedException {
+        return acquire(listener, getKey(pvob, stream));
+    }
+
+    /**
+     * Get the lease covering a release, according to the configured scope
+     *
+     * @param pvob   the PVOB of the release
+     * @param stream the stream of the release with its PVOB, null if unknown
+     * @return the lease key, null if the release has no PVOB
+     */
+    public static String getKey(String pvob, String stream) {
+        return ("stream".equals(SCOPE) && stream != null) ? stream : pvob;
+    }
+
+    /**
+     * Take a lease, waiting for the current holder.
+     * A release needing several leases takes them in the key order, so that two releases never wait for each other.
+     *
+     * @param listener the Hudson listener
+     * @param key      the lease key, see getKey
+     * @return the lease, null when the leases are disabled or the key is null
+     * @throws IOException          if the lease can't be created or the wait has expired
+     * @throws InterruptedException if the release has been aborted while waiting
+     */
+    public static PromotionLease acquire(TaskListener listener, String key) throws IOException, InterruptedException {
+        return acquire(listener, isEnabled() ? new File(DIRECTORY) : null, key);
+    }
+
+    /**
+     * Take a lease in a given directory, waiting for the current holder
+     *
+     * @param listener  the Hudson listener
+     * @param directory the shared directory of the lock files, null for no lease
+     * @param key       the lease key, see getKey
+     * @return the lease, null when the directory or the key is null
+     * @throws IOException          if the lease can't be created or the wait has expired
+     * @throws InterruptedException if the release has been aborted while waiting
+     */
+    static PromotionLease acquire(TaskListener listener, File directory, String key) throws IOException, InterruptedException {
+        if (directory == null || key == null) {
+            return null;
+        }
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create the lease directory '" + directory + "'");
+        }
+        File file = new File(directory, sanitize(key) + ".lease");
+        String owner = INSTANCE + "#" + leaseCounter.incrementAndGet();
+
+        long start = System.currentTimeMillis();
+        String observed = null;
+        long observedSince = 0;
+        boolean contended = false;
+        while (true) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException("The release has been aborted while waiting for the lease of '" + key + "'");
+            }
+
+            if (file.createNewFile()) {
+                final PromotionLease lease = new PromotionLease(key, file, owner, contended);
+                lease.write();
+                lease.heartbeat = HEARTBEATS.scheduleWithFixedDelay(new Runnable() {
+                    public void run() {
+                        lease.beat();
+                    }
+                }, HEARTBEAT_MILLIS, HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+                if (contended) {
+                    listener.getLogger().println("Got the lease of '" + key + "' after " + (System.currentTimeMillis() - start) / 1000 + "s");
+                }
+                return lease;
+            }
+
+            String current = read(file);
+            if (current == null) {
+                //Released in the meantime
+                continue;
+            }
+
+            long now = System.currentTimeMillis();
+            if (!current.equals(observed)) {
+                if (observed == null || !getOwner(current).equals(getOwner(observed))) {
+                    listener.getLogger().println("Waiting for the lease of '" + key + "' held by " + getOwner(current));
+                }
+                observed = current;
+                observedSince = now;
+                contended = true;
+            } else if (now - observedSince >= EXPIRY_MILLIS) {
+                listener.getLogger().println("The lease of '" + key + "' held by " + getOwner(current) + " has expired, taking it over");
+                breakExpired(file, observed, owner);
+                observed = null;
+                continue;
+            }
+
+            if (MAX_WAIT_MILLIS != 0 && now - start >= MAX_WAIT_MILLIS) {
+                throw new IOException("The lease of '" + key + "' is still held by " + getOwner(current) + " after " + MAX_WAIT_MILLIS / 60000 + " minutes");
+            }
+            Thread.sleep(POLL_MILLIS);
+        }
+    }
+
+    /**
+     * @return true if the lease was held by another release when requested:
+     *         the promotion levels may have changed while waiting
+     */
+    public boolean isContended() {
+        return contended;
+    }
+
+    /**
+     * @return true if the lease has been taken over by another release, its heartbeats being too late
+     */
+    public synchronized boolean isLost() {
+        return lost;
+    }
+
+    /**
+     * Check that the lease is still held, before changing a baseline
+     *
+     * @throws IOException if the lease has been taken over by another release, or can't be read
+     */
+    public synchronized void checkHeld() throws IOException {
+        if (!lost && !owner.equals(getOwner(read(file)))) {
+            lost = true;
+            LOGGER.warning("The lease '" + file + "' has been taken over by another release");
+        }
+        if (lost) {
+            throw new IOException("The lease of '" + key + "' has been taken over by another release, the release is stopped");
+        }
+    }
+
+    /**
+     * Give the lease back
+     */
+    public void release() {
+        heartbeat.cancel(false);
+        synchronized (this) {
+            try {
+                if (!lost && owner.equals(getOwner(read(file)))) {
+                    if (!file.delete()) {
+                        LOGGER.warning("Unable to delete the lease '" + file + "'");
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Unable to release the lease '" + file + "'", e);
+            }
+        }
+    }
+
+    /**
+     * Renew the lease, unless another release has taken it over
+     */
+    synchronized void beat() {
+        if (lost) {
+            return;
+        }
+        try {
+            if (!owner.equals(getOwner(read(file)))) {
+                lost = true;
+                LOGGER.warning("The lease '" + file + "' has been taken over by another release, the heartbeats were too late");
+                return;
+            }
+            sequence++;
+            write();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Unable to renew the lease '" + file + "'", e);
+        }
+    }
+
+    private void write() throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write((owner + "\n" + sequence + "\n").getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Remove an expired lock file, unless another instance has taken it over in the meantime
+     */
+    private static void breakExpired(File file, String expired, String owner) throws IOException {
+        File moved = new File(file.getParentFile(), file.getName() + "." + sanitize(owner) + ".expired");
+        if (!file.renameTo(moved)) {
+            //Already taken over
+            return;
+        }
+        if (expired.equals(read(moved))) {
+            moved.delete();
+        } else if (!moved.renameTo(file)) {
+            //A fresh lease has been moved, and a new one created since
+            LOGGER.warning("The lease '" + file + "' may have been broken while renewed");
+            moved.delete();
+        }
+    }
+
+    /**
+     * @return the file content, null if the file doesn't exist
+     */
+    private static String read(File file) throws IOException {
+        InputStream in;
+        try {
+            in = new FileInputStream(file);
+        } catch (IOException e) {
+            return file.exists() ? "" : null;
+        }
+        try {
+            StringBuilder content = new StringBuilder();
+            byte[] buffer = new byte[256];
+            for (int read = in.read(buffer); read > 0; read = in.read(buffer)) {
+                content.append(new String(buffer, 0, read, "UTF-8"));
+            }
+            return content.toString();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String getOwner(String content) {
+        if (content == null) {
+            return "";
+        }
+        int index = content.indexOf('\n');
+        return index < 0 ? content : content.substring(0, index);
+    }
+
+    private static String sanitize(String name) {
+        return name.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+}
@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease.biz;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.LogTaskListener;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * The promotion levels defined in each PVOB, for the validation of the job configurations.
+ * The levels are listed in the background, at most once per PVOB and per cache period.
+ */
+public class PromotionLevels {
+
+    private static final Logger LOGGER = Logger.getLogger(PromotionLevels.class.getName());
+
+    private static final long CACHE_MILLIS = Long.getLong(PromotionLevels.class.getName() + ".cacheMinutes", 30L) * 60000L;
+
+    /**
+     * The duration a failed listing is kept, before being tried again
+     */
+    private static final long FAILURE_CACHE_MILLIS = 60000L;
+
+    private static final ConcurrentMap<String, Entry> LEVELS = new ConcurrentHashMap<String, Entry>();
+
+    private static final ConcurrentMap<String, FutureTask<List<String>>> LOADS = new ConcurrentHashMap<String, FutureTask<List<String>>>();
+
+    private static final ExecutorService LOADER = Executors.newCachedThreadPool(new DaemonThreadFactory());
+
+    private static class Entry {
+
+        private final List<String> levels;
+
+        private final long expiry;
+
+        private Entry(List<String> levels) {
+            this.levels = levels;
+            this.expiry = System.currentTimeMillis() + (levels == null ? FAILURE_CACHE_MILLIS : CACHE_MILLIS);
+        }
+    }
+
+    /**
+     * Get the promotion levels of a PVOB without waiting, listing them in the background when they aren't known or have expired
+     *
+     * @param pvob the PVOB
+     * @return the levels from the lowest to the highest, the expired ones while they are listed again,
+     *         null if they aren't known yet or can't be listed
+     */
+    public static List<String> get(String pvob) {
+        Entry entry = LEVELS.get(pvob);
+        if (entry == null || entry.expiry <= System.currentTimeMillis()) {
+            load(pvob);
+        }
+        return (entry == null) ? null : entry.levels;
+    }
+
+    /**
+     * @param pvob the PVOB
+     * @return true if the levels of the PVOB are being listed
+     */
+    public static boolean isListing(String pvob) {
+        return LOADS.containsKey(pvob);
+    }
+
+    /**
+     * List the promotion levels of a PVOB in the background, unless a listing is already running
+     */
+    private static Future<List<String>> load(final String pvob) {
+        FutureTask<List<String>> load = LOADS.get(pvob);
+        if (load != null) {
+            return load;
+        }
+
+        FutureTask<List<String>> created = new FutureTask<List<String>>(new Callable<List<String>>() {
+            public List<String> call() throws Exception {
+                List<String> levels = null;
+                try {
+                    ClearcaseReleaseActionImpl releaseImpl = new ClearcaseReleaseActionImpl(null, ReleaseLane.BACKGROUND);
+                    levels = releaseImpl.listPromotionLevels(new LogTaskListener(LOGGER, Level.FINE), pvob);
+                } catch (Exception e) {
+                    LOGGER.log(Level.WARNING, "Unable to list the promotion levels of the PVOB '" + pvob + "'", e);
+                }
+                LEVELS.put(pvob, new Entry(levels));
+                LOADS.remove(pvob);
+                return levels;
+            }
+        });
+        load = LOADS.putIfAbsent(pvob, created);
+        if (load != null) {
+            return load;
+        }
+        LOADER.execute(created);
+        return created;
+    }
+}
@@ -0,0 +1,317 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease.biz;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+
+/**
+ * An ordered table of rules choosing the promotion level of each baseline of a release, the first matching rule wins.
+ * <p/>
+ * A rule is a line 'pattern = level', or 'pattern = skip' to leave the matching baselines unchanged.
+ * The pattern applies to the component name, or to the baseline name without the PVOB when prefixed by 'baseline:'.
+ * It is a name, a name prefix ending with '*', a wildcard pattern with '*' and '?', or a regular expression between '/'.
+ * The empty lines and the lines starting with '#' are ignored.
+ * <pre>
+ * ThirdParty_* = QUALIFIED
+ * baseline:/.*_draft_.*&#47; = skip
+ * </pre>
+ * The names and the prefixes are compiled in a trie per target and the other patterns in precompiled regular expressions,
+ * a baseline is matched in a single walk of its names whatever the number of rules.
+ */
+public class PromotionRules {
+
+    private static final String SKIP = "skip";
+
+    private static final String BASELINE_PREFIX = "baseline:";
+
+    private static final String COMPONENT_PREFIX = "component:";
+
+    private static final int NO_RULE = Integer.MAX_VALUE;
+
+    /**
+     * The maximal number of compiled tables kept, a table being compiled once for all the releases of its jobs
+     */
+    static final int CACHE_SIZE = 100;
+
+    /**
+     * The compiled tables by text, the least recently used one is evicted first
+     */
+    private static final Map<String, PromotionRules> COMPILED = Collections.synchronizedMap(new LinkedHashMap<String, PromotionRules>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PromotionRules> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    });
+
+    /**
+     * The level of each rule by rule index, null for a rule skipping the baselines
+     */
+    private final List<String> levels = new ArrayList<String>();
+
+    private final TrieNode componentTrie = new TrieNode();
+
+    private final TrieNode baselineTrie = new TrieNode();
+
+    /**
+     * The rules with a regular expression, by increasing rule index
+     */
+    private final List<RegexRule> regexRules = new ArrayList<RegexRule>();
+
+    /**
+     * Represents a node of a trie, with the first rules matching the names ending at the node or starting with it
+     */
+    private static final class TrieNode {
+
+        private final Map<Character, TrieNode> children = new HashMap<Character, TrieNode>();
+
+        private int exactRule = NO_RULE;
+
+        private int prefixRule = NO_RULE;
+
+        private TrieNode getOrCreate(String key) {
+            TrieNode node = this;
+            for (int i = 0; i < key.length(); i++) {
+                TrieNode child = node.children.get(key.charAt(i));
+                if (child == null) {
+                    child = new TrieNode();
+                    node.children.put(key.charAt(i), child);
+                }
+                node = child;
+            }
+            return node;
+        }
+
+        /**
+         * @param name the component or the baseline name
+         * @return the index of the first rule matching the name, NO_RULE if none
+         */
+        private int match(String name) {
+            int best = prefixRule;
+            TrieNode node = this;
+            for (int i = 0; i < name.length(); i++) {
+                node = node.children.get(name.charAt(i));
+                if (node == null) {
+                    return best;
+                }
+                best = Math.min(best, node.prefixRule);
+            }
+            return Math.min(best, node.exactRule);
+        }
+    }
+
+    private static final class RegexRule {
+
+        private final int index;
+
+        private final boolean baseline;
+
+        private final Pattern pattern;
+
+        private RegexRule(int index, boolean baseline, Pattern pattern) {
+            this.index = index;
+            this.baseline = baseline;
+            this.pattern = pattern;
+        }
+    }
+
+    private PromotionRules() {
+    }
+
+    /**
+     * Get the compiled rule table of a text
+     *
+     * @param text the rules, one per line
+     * @return the compiled rules, null if the text has no rule
+     * @throws IllegalArgumentException if a rule is invalid
+     */
+    public static PromotionRules get(String text) {
+        if (text == null || text.trim().length() == 0) {
+            return null;
+        }
+        PromotionRules rules = COMPILED.get(text);
+        if (rules == null) {
+            rules = compile(text);
+            COMPILED.put(text, rules);
+        }
+        return rules.levels.isEmpty() ? null : rules;
+    }
+
+    /**
+     * Compile a rule table
+     *
+     * @param text the rules, one per line
+     * @return the compiled rules
+     * @throws IllegalArgumentException if a rule is invalid
+     */
+    static PromotionRules compile(String text) {
+        PromotionRules rules = new PromotionRules();
+        String[] lines = text.split("\r?\n");
+        for (int lineNumber = 1; lineNumber <= lines.length; lineNumber++) {
+            String line = lines[lineNumber - 1].trim();
+            if (line.length() == 0 || line.startsWith("#")) {
+                continue;
+            }
+
+            //The level can't contain '=', a regular expression can
+            int separator = line.lastIndexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": the rule '" + line + "' isn't of the form 'pattern = level'");
+            }
+            String pattern = line.substring(0, separator).trim();
+            String level = line.substring(separator + 1).trim();
+            if (level.length() == 0 || level.contains(" ")) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": '" + level + "' isn't a promotion level");
+            }
+
+            boolean baseline = false;
+            if (pattern.startsWith(BASELINE_PREFIX)) {
+                baseline = true;
+                pattern = pattern.substring(BASELINE_PREFIX.length()).trim();
+            } else if (pattern.startsWith(COMPONENT_PREFIX)) {
+                pattern = pattern.substring(COMPONENT_PREFIX.length()).trim();
+            }
+            if (pattern.length() == 0) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": the rule has no pattern");
+            }
+
+            int index = rules.levels.size();
+            rules.levels.add(SKIP.equalsIgnoreCase(level) ? null : level);
+            try {
+                rules.add(index, baseline, pattern);
+            } catch (PatternSyntaxException e) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": " + e.getDescription() + " in the regular expression '" + e.getPattern() + "'");
+            }
+        }
+        return rules;
+    }
+
+    private void add(int index, boolean baseline, String pattern) {
+        TrieNode trie = baseline ? baselineTrie : componentTrie;
+        if (pattern.length() > 2 && pattern.startsWith("/") && pattern.endsWith("/")) {
+            regexRules.add(new RegexRule(index, baseline, Pattern.compile(pattern.substring(1, pattern.length() - 1))));
+            return;
+        }
+        int wildcard = indexOfWildcard(pattern);
+        if (wildcard < 0) {
+            TrieNode node = trie.getOrCreate(pattern);
+            node.exactRule = Math.min(node.exactRule, index);
+        } else if (wildcard == pattern.length() - 1 && pattern.charAt(wildcard) == '*') {
+            TrieNode node = trie.getOrCreate(pattern.substring(0, wildcard));
+            node.prefixRule = Math.min(node.prefixRule, index);
+        } else {
+            regexRules.add(new RegexRule(index, baseline, Pattern.compile(toRegex(pattern))));
+        }
+    }
+
+    private static int indexOfWildcard(String pattern) {
+        for (int i = 0; i < pattern.length(); i++) {
+            if (pattern.charAt(i) == '*' || pattern.charAt(i) == '?') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String toRegex(String wildcardPattern) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < wildcardPattern.length(); i++) {
+            char c = wildcardPattern.charAt(i);
+            if (c == '*' || c == '?') {
+                if (literal.length() != 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '*' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() != 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return regex.toString();
+    }
+
+    /**
+     * Choose the promotion level of a baseline
+     *
+     * @param component        the component of the baseline
+     * @param baselineWithPVOB the baseline with the PVOB
+     * @param defaultLevel     the level of the baselines matching no rule
+     * @return the promotion level, null if the baseline is skipped
+     */
+    public String getLevel(String component, String baselineWithPVOB, String defaultLevel) {
+        String baseline = baselineWithPVOB.trim();
+        int pvobIndex = baseline.indexOf('@');
+        if (pvobIndex >= 0) {
+            baseline = baseline.substring(0, pvobIndex);
+        }
+        String componentName = (component == null) ? "" : component.trim();
+
+        int best = Math.min(componentTrie.match(componentName), baselineTrie.match(baseline));
+
+        //Only the regular expressions of the rules before the best trie rule can win
+        for (RegexRule rule : regexRules) {
+            if (rule.index >= best) {
+                break;
+            }
+            if (rule.pattern.matcher(rule.baseline ? baseline : componentName).matches()) {
+                best = rule.index;
+                break;
+            }
+        }
+        return (best == NO_RULE) ? defaultLevel : levels.get(best);
+    }
+
+    /**
+     * @return the promotion levels of the rules, skip excluded
+     */
+    public Set<String> getLevels() {
+        Set<String> result = new LinkedHashSet<String>();
+        for (String level : levels) {
+            if (level != null) {
+                result.add(level);
+            }
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
+    /**
+     * @return the number of rules
+     */
+    public int size() {
+        return levels.size();
+    }
+}
@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease.biz;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * Stops launching cleartool commands on a PVOB after consecutive transient failures.
+ * After a cooldown period, a single trial command decides whether the PVOB is healthy again.
+ */
+public class PvobCircuitBreaker {
+
+    private static final int FAILURE_THRESHOLD = Integer.getInteger(PvobCircuitBreaker.class.getName() + ".failureThreshold", 5);
+
+    private static final long OPEN_MILLIS = Long.getLong(PvobCircuitBreaker.class.getName() + ".openMillis", 60000L);
+
+    private static final ConcurrentMap<String, PvobCircuitBreaker> BREAKERS = new ConcurrentHashMap<String, PvobCircuitBreaker>();
+
+    private final String pvob;
+
+    private int consecutiveFailures;
+
+    private long openUntil;
+
+    private boolean trialInProgress;
+
+    private PvobCircuitBreaker(String pvob) {
+        this.pvob = pvob;
+    }
+
+    /**
+     * Get the circuit breaker shared by all the releases on a PVOB
+     *
+     * @param pvob the PVOB, null for commands without PVOB
+     * @return the circuit breaker
+     */
+    public static PvobCircuitBreaker get(String pvob) {
+        String key = (pvob == null) ? "" : pvob;
+        PvobCircuitBreaker breaker = BREAKERS.get(key);
+        if (breaker == null) {
+            PvobCircuitBreaker created = new PvobCircuitBreaker(key);
+            breaker = BREAKERS.putIfAbsent(key, created);
+            if (breaker == null) {
+                breaker = created;
+            }
+        }
+        return breaker;
+    }
+
+    /**
+     * Check a command can be launched on the PVOB
+     *
+     * @throws ClearToolException when the PVOB is considered unhealthy
+     */
+    public synchronized void acquire() throws ClearToolException {
+        if (consecutiveFailures < FAILURE_THRESHOLD) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (now < openUntil || trialInProgress) {
+            long retryAfter = Math.max(0, openUntil - now) / 1000;
+            throw new ClearToolException(ClearToolException.Type.UNAVAILABLE,
+                    "The PVOB '" + pvob + "' is considered unhealthy after " + consecutiveFailures
+                            + " consecutive failures, retry in " + retryAfter + " s");
+        }
+        //Let a single trial command go through
+        trialInProgress = true;
+    }
+
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        trialInProgress = false;
+    }
+
+    public synchronized void recordFailure(ClearToolException.Type type) {
+        trialInProgress = false;
+        if (!type.isUnhealthy()) {
+            return;
+        }
+        consecutiveFailures++;
+        if (consecutiveFailures >= FAILURE_THRESHOLD) {
+            openUntil = System.currentTimeMillis() + OPEN_MILLIS;
+        }
+    }
+
+    public synchronized boolean isOpen() {
+        return consecutiveFailures >= FAILURE_THRESHOLD;
+    }
+}
@@ -0,0 +1,378 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease.biz;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * Limits the number of cleartool commands running at the same time on a PVOB, all releases included.
+ * The limit follows an AIMD algorithm: it grows by one command per round trip while the commands succeed at their usual latency,
+ * and it is reduced by a quarter when a command is slower than the tolerance or fails on an overloaded server.
+ * <p/>
+ * The commands waiting for a slot are served by priority lane, in order within a lane.
+ * A command waiting for longer than the starvation delay is served first whatever its lane.
+ */
+public class PvobConcurrencyLimiter {
+
+    private static final int MIN_LIMIT = 1;
+
+    private static final int MAX_LIMIT = Integer.getInteger(PvobConcurrencyLimiter.class.getName() + ".maxLimit", 16);
+
+    private static final int INITIAL_LIMIT = Integer.getInteger(PvobConcurrencyLimiter.class.getName() + ".initialLimit", 4);
+
+    /**
+     * The ratio to the usual latency from which a command is considered slow
+     */
+    private static final double LATENCY_TOLERANCE = Double.parseDouble(System.getProperty(PvobConcurrencyLimiter.class.getName() + ".latencyTolerance", "1.5"));
+
+    private static final double BACKOFF_RATIO = 0.75;
+
+    /**
+     * The period over which the fastest latency is kept as the usual latency
+     */
+    private static final long LATENCY_WINDOW_MILLIS = Long.getLong(PvobConcurrencyLimiter.class.getName() + ".latencyWindowMillis", 300000L);
+
+    /**
+     * The waiting time from which a command is served before the commands of higher priority lanes
+     */
+    private static final long STARVATION_MILLIS = Long.getLong(PvobConcurrencyLimiter.class.getName() + ".starvationMillis", 30000L);
+
+    private static final ConcurrentMap<String, PvobConcurrencyLimiter> LIMITERS = new ConcurrentHashMap<String, PvobConcurrencyLimiter>();
+
+    private final String pvob;
+
+    private double limit = Math.max(MIN_LIMIT, Math.min(MAX_LIMIT, INITIAL_LIMIT));
+
+    private int inFlight;
+
+    /**
+     * The usual latency of each cleartool command type and arity, close to the latency of an unloaded server
+     */
+    private final Map<String, LatencyWindow> usualLatencies = new HashMap<String, LatencyWindow>();
+
+    private long lastDecrease;
+
+    private long slowCommands;
+
+    private long overloadErrors;
+
+    /**
+     * The commands waiting for a slot, by lane
+     */
+    private final Map<ReleaseLane, LinkedList<Waiter>> waiters = new EnumMap<ReleaseLane, LinkedList<Waiter>>(ReleaseLane.class);
+
+    /**
+     * The number of commands launched since the startup, by lane
+     */
+    private final Map<ReleaseLane, Long> granted = new EnumMap<ReleaseLane, Long>(ReleaseLane.class);
+
+    private long starvedGrants;
+
+    private PvobConcurrencyLimiter(String pvob) {
+        this.pvob = pvob;
+        for (ReleaseLane lane : ReleaseLane.values()) {
+            waiters.put(lane, new LinkedList<Waiter>());
+            granted.put(lane, 0L);
+        }
+    }
+
+    /**
+     * Represents a command waiting for a slot
+     */
+    private static final class Waiter {
+
+        private final ReleaseLane lane;
+
+        private final long since = System.currentTimeMillis();
+
+        private Waiter(ReleaseLane lane) {
+            this.lane = lane;
+        }
+    }
+
+    /**
+     * Keeps the fastest latency of the current and the previous windows,
+     * a server becoming durably slower is followed after two windows
+     */
+    private static final class LatencyWindow {
+
+        private long windowStart;
+
+        private long currentMin = Long.MAX_VALUE;
+
+        private long previousMin = Long.MAX_VALUE;
+
+        private void add(long latencyMillis, long now) {
+            if (now - windowStart > LATENCY_WINDOW_MILLIS) {
+                previousMin = currentMin;
+                currentMin = Long.MAX_VALUE;
+                windowStart = now;
+            }
+            currentMin = Math.min(currentMin, latencyMillis);
+        }
+
+        private long getUsualLatency() {
+            return Math.min(currentMin, previousMin);
+        }
+    }
+
+    /**
+     * Get the limiter shared by all the releases on a PVOB
+     *
+     * @param pvob the PVOB, null for commands without PVOB
+     * @return the limiter
+     */
+    public static PvobConcurrencyLimiter get(String pvob) {
+        String key = (pvob == null) ? "" : pvob;
+        PvobConcurrencyLimiter limiter = LIMITERS.get(key);
+        if (limiter == null) {
+            PvobConcurrencyLimiter created = new PvobConcurrencyLimiter(key);
+            limiter = LIMITERS.putIfAbsent(key, created);
+            if (limiter == null) {
+                limiter = created;
+            }
+        }
+        return limiter;
+    }
+
+    /**
+     * @return the limiters of all the PVOBs used since the startup
+     */
+    public static List<PvobConcurrencyLimiter> getAll() {
+        return new ArrayList<PvobConcurrencyLimiter>(LIMITERS.values());
+    }
+
+    /**
+     * @return the maximal limit of a PVOB
+     */
+    public static int getMaxLimit() {
+        return MAX_LIMIT;
+    }
+
+    /**
+     * Wait for a slot to launch a command
+     *
+     * @param lane the priority lane of the command
+     * @throws InterruptedException if the release is aborted while waiting
+     */
+    public synchronized void acquire(ReleaseLane lane) throws InterruptedException {
+        Waiter waiter = new Waiter(lane);
+        waiters.get(lane).add(waiter);
+        try {
+            while (inFlight >= (int) limit || getNextWaiter() != waiter) {
+                //Wake up periodically, the starvation depends on the time
+                wait(1000);
+            }
+        } finally {
+            waiters.get(lane).remove(waiter);
+            notifyAll();
+        }
+        if (System.currentTimeMillis() - waiter.since >= STARVATION_MILLIS) {
+            starvedGrants++;
+        }
+        granted.put(lane, granted.get(lane) + 1);
+        inFlight++;
+    }
+
+    /**
+     * @return the waiter to serve first, the oldest starving one or else the first one of the highest priority lane
+     */
+    private Waiter getNextWaiter() {
+        long now = System.currentTimeMillis();
+        Waiter first = null;
+        Waiter starving = null;
+        for (ReleaseLane lane : ReleaseLane.values()) {
+            LinkedList<Waiter> queue = waiters.get(lane);
+            if (queue.isEmpty()) {
+                continue;
+            }
+            Waiter head = queue.getFirst();
+            if (first == null) {
+                first = head;
+            }
+            if (now - head.since >= STARVATION_MILLIS && (starving == null || head.since < starving.since)) {
+                starving = head;
+            }
+        }
+        return (starving != null) ? starving : first;
+    }
+
+    /**
+     * @param cmd the cleartool command
+     * @return the number of UCM objects the command applies to, the arguments with a PVOB
+     */
+    public static int getArity(String[] cmd) {
+        int arity = 0;
+        for (int i = 1; i < cmd.length; i++) {
+            if (cmd[i].indexOf('@') != -1) {
+                arity++;
+            }
+        }
+        return Math.max(1, arity);
+    }
+
+    /**
+     * A batched command is slower than a command on a single baseline without any congestion:
+     * the latencies are compared between commands of the same type and of the same arity, by power of 2
+     *
+     * @param command the cleartool command type
+     * @param arity   the number of UCM objects the command applies to
+     * @return the key of the usual latency of the command
+     */
+    static String getLatencyKey(String command, int arity) {
+        int bucket = 0;
+        while ((2 << bucket) <= arity) {
+            bucket++;
+        }
+        return command + "/" + (1 << bucket);
+    }
+
+    /**
+     * Free the slot of a terminated command and adapt the limit
+     *
+     * @param command       the cleartool command type
+     * @param arity         the number of UCM objects the command applies to
+     * @param latencyMillis the duration of the command
+     * @param overloaded    true if the command failed on an overloaded or unreachable server
+     */
+    public synchronized void release(String command, int arity, long latencyMillis, boolean overloaded) {
+        boolean saturated = inFlight >= (int) limit;
+        inFlight--;
+        try {
+            long now = System.currentTimeMillis();
+            String key = getLatencyKey(command, arity);
+            LatencyWindow window = usualLatencies.get(key);
+            if (window == null) {
+                window = new LatencyWindow();
+                usualLatencies.put(key, window);
+            }
+            boolean slow = window.getUsualLatency() != Long.MAX_VALUE && latencyMillis > Math.max(1, window.getUsualLatency()) * LATENCY_TOLERANCE;
+            if (!overloaded) {
+                window.add(latencyMillis, now);
+            }
+
+            if (overloaded || slow) {
+                if (overloaded) {
+                    overloadErrors++;
+                } else {
+                    slowCommands++;
+                }
+                //Decrease once per round trip, the commands launched before the decrease report the same congestion
+                if (now - lastDecrease > latencyMillis) {
+                    limit = Math.max(MIN_LIMIT, limit * BACKOFF_RATIO);
+                    lastDecrease = now;
+                }
+            } else if (saturated) {
+                //Increase only when the limit has been reached, an idle PVOB proves nothing
+                limit = Math.min(MAX_LIMIT, limit + 1 / limit);
+            }
+        } finally {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Free the slot of a command stopped before its end, without adapting the limit
+     */
+    public synchronized void release() {
+        inFlight--;
+        notifyAll();
+    }
+
+    public String getPvob() {
+        return pvob;
+    }
+
+    /**
+     * @return the number of commands allowed to run at the same time
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * @param command the cleartool command type
+     * @param arity   the number of UCM objects the command applies to
+     * @return the usual latency of the command on the PVOB, -1 if the command hasn't run yet with a close arity
+     */
+    public synchronized long getUsualLatency(String command, int arity) {
+        LatencyWindow window = usualLatencies.get(getLatencyKey(command, arity));
+        if (window == null || window.getUsualLatency() == Long.MAX_VALUE) {
+            return -1;
+        }
+        return window.getUsualLatency();
+    }
+
+    /**
+     * @return the number of running commands
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @param lane the priority lane
+     * @return the number of commands waiting for a slot in the lane
+     */
+    public synchronized int getQueueDepth(ReleaseLane lane) {
+        return waiters.get(lane).size();
+    }
+
+    /**
+     * @param lane the priority lane
+     * @return the number of commands of the lane launched since the startup
+     */
+    public synchronized long getGranted(ReleaseLane lane) {
+        return granted.get(lane);
+    }
+
+    /**
+     * @return the number of commands served before higher priority lanes after waiting for the starvation delay
+     */
+    public synchronized long getStarvedGrants() {
+        return starvedGrants;
+    }
+
+    /**
+     * @return the number of commands slower than the tolerance since the startup
+     */
+    public synchronized long getSlowCommands() {
+        return slowCommands;
+    }
+
+    /**
+     * @return the number of commands failed on an overloaded server since the startup
+     */
+    public synchronized long getOverloadErrors() {
+        return overloadErrors;
+    }
+}
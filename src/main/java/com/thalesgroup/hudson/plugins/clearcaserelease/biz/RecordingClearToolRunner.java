@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease.biz;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+
+/**
+ * Records the cleartool commands, outputs and durations of a release in a transcript file.
+ * Each command is appended to the file as soon as it completes.
+ */
+public class RecordingClearToolRunner implements ClearToolRunner {
+
+    private final ClearToolRunner delegate;
+
+    private final File transcriptFile;
+
+    public RecordingClearToolRunner(ClearToolRunner delegate, File transcriptFile) {
+        this.delegate = delegate;
+        this.transcriptFile = transcriptFile;
+    }
+
+    public File getTranscriptFile() {
+        return transcriptFile;
+    }
+
+    public void run(String[] cmd, OutputStream out) throws IOException, InterruptedException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        long start = System.currentTimeMillis();
+        try {
+            delegate.run(cmd, baos);
+            record(new ClearToolTranscript.Entry(cmd, baos.toString(), null, System.currentTimeMillis() - start));
+        } catch (IOException e) {
+            record(new ClearToolTranscript.Entry(cmd, baos.toString(), String.valueOf(e.getMessage()), System.currentTimeMillis() - start));
+            throw e;
+        } finally {
+            if (out != null) {
+                baos.writeTo(out);
+            }
+        }
+    }
+
+    private synchronized void record(ClearToolTranscript.Entry entry) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(transcriptFile, true), "UTF-8");
+        try {
+            entry.write(writer);
+        } finally {
+            writer.close();
+        }
+    }
+}
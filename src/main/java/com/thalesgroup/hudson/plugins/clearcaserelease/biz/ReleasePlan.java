@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease.biz;
+
+import hudson.model.Run;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Represents the metadata of a latest baselines release discovered before the promotion.
+ * The promotion levels of the candidates may be out of date, they are described again before promoting them.
+ */
+public class ReleasePlan {
+
+    /**
+     * The plans prefetched after the builds, by build and stream.
+     * They are kept in memory only, never in the build records.
+     */
+    private static final Map<Run, Map<String, ReleasePlan>> PREFETCHED = new WeakHashMap<Run, Map<String, ReleasePlan>>();
+
+    /**
+     * The stream with the PVOB
+     */
+    private final String streamWithPVOB;
+
+    private final long creationTime;
+
+    /**
+     * All the latest baselines of the stream, with the PVOB
+     */
+    private final List<String> latestBaselines;
+
+    /**
+     * The latest baselines on the modifiable components, with their component and promotion level
+     */
+    private final List<BaselineDescription> candidates = new ArrayList<BaselineDescription>();
+
+    public ReleasePlan(String streamWithPVOB, List<String> latestBaselines) {
+        this.streamWithPVOB = streamWithPVOB;
+        this.creationTime = System.currentTimeMillis();
+        this.latestBaselines = new ArrayList<String>(latestBaselines);
+    }
+
+    public void addCandidate(BaselineDescription description) {
+        candidates.add(description);
+    }
+
+    /**
+     * Check the plan against the current state of the stream
+     *
+     * @param streamWithPVOB  the stream to release
+     * @param latestBaselines the current latest baselines of the stream
+     * @param maxAgeMillis    the maximal age of the plan
+     * @return true if the plan still describes the stream
+     */
+    public boolean isFresh(String streamWithPVOB, List<String> latestBaselines, long maxAgeMillis) {
+        return isFresh(streamWithPVOB, maxAgeMillis) && this.latestBaselines.equals(latestBaselines);
+    }
+
+    /**
+     * Check the plan age, without the current state of the stream
+     *
+     * @param streamWithPVOB the stream to release
+     * @param maxAgeMillis   the maximal age of the plan
+     * @return true if the plan describes the stream and isn't too old
+     */
+    public boolean isFresh(String streamWithPVOB, long maxAgeMillis) {
+        return this.streamWithPVOB.equals(streamWithPVOB) && System.currentTimeMillis() - creationTime <= maxAgeMillis;
+    }
+
+    /**
+     * Keep the plan prefetched after a build
+     *
+     * @param build the build
+     * @param plan  the plan of one of the streams of the build
+     */
+    public static synchronized void put(Run build, ReleasePlan plan) {
+        Map<String, ReleasePlan> plans = PREFETCHED.get(build);
+        if (plans == null) {
+            plans = new HashMap<String, ReleasePlan>();
+            PREFETCHED.put(build, plans);
+        }
+        plans.put(plan.getStreamWithPVOB(), plan);
+    }
+
+    /**
+     * @param build          the build
+     * @param streamWithPVOB the stream with the PVOB
+     * @return the plan prefetched after the build for the stream, null if none
+     */
+    public static synchronized ReleasePlan get(Run build, String streamWithPVOB) {
+        Map<String, ReleasePlan> plans = PREFETCHED.get(build);
+        return (plans == null) ? null : plans.get(streamWithPVOB);
+    }
+
+    /**
+     * @param build the build
+     * @return the plans prefetched after the build, by stream with the PVOB
+     */
+    public static synchronized Map<String, ReleasePlan> getAll(Run build) {
+        Map<String, ReleasePlan> plans = PREFETCHED.get(build);
+        return (plans == null) ? new HashMap<String, ReleasePlan>() : new HashMap<String, ReleasePlan>(plans);
+    }
+
+    /**
+     * Forget the plans prefetched after a build
+     *
+     * @param build the build
+     */
+    public static synchronized void remove(Run build) {
+        PREFETCHED.remove(build);
+    }
+
+    public String getStreamWithPVOB() {
+        return streamWithPVOB;
+    }
+
+    public long getCreationTime() {
+        return creationTime;
+    }
+
+    public List<String> getLatestBaselines() {
+        return latestBaselines;
+    }
+
+    public List<BaselineDescription> getCandidates() {
+        return candidates;
+    }
+}
@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease.biz;
+
+import hudson.Util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Represents the baselines a release would promote, computed without changing any baseline
+ */
+public class ReleasePreview {
+
+    /**
+     * Represents a baseline of the release with its current and target promotion levels
+     */
+    public static class Entry {
+
+        private final String baselineWithPVOB;
+
+        private final String currentLevel;
+
+        private final String targetLevel;
+
+        private final boolean promoted;
+
+        public Entry(String baselineWithPVOB, String currentLevel, String targetLevel, boolean promoted) {
+            this.baselineWithPVOB = baselineWithPVOB;
+            this.currentLevel = currentLevel;
+            this.targetLevel = targetLevel;
+            this.promoted = promoted;
+        }
+
+        public String getBaselineWithPVOB() {
+            return baselineWithPVOB;
+        }
+
+        public String getCurrentLevel() {
+            return currentLevel;
+        }
+
+        public String getTargetLevel() {
+            return targetLevel;
+        }
+
+        /**
+         * @return true if the release changes the level of the baseline
+         */
+        public boolean isPromoted() {
+            return promoted;
+        }
+    }
+
+    private final String promotionLevel;
+
+    /**
+     * True if the preview has been computed from a prefetched plan, without any cleartool command
+     */
+    private final boolean cached;
+
+    private final long creationTime;
+
+    private final List<Entry> entries = new ArrayList<Entry>();
+
+    private int estimatedCommands;
+
+    private long estimatedMillis;
+
+    public ReleasePreview(String promotionLevel, boolean cached) {
+        this.promotionLevel = promotionLevel;
+        this.cached = cached;
+        this.creationTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Record a baseline of the release
+     *
+     * @param baselineWithPVOB the baseline with the PVOB
+     * @param currentLevel     the current promotion level of the baseline
+     * @param promoted         true if the release changes the level of the baseline
+     */
+    public void add(String baselineWithPVOB, String currentLevel, boolean promoted) {
+        entries.add(new Entry(baselineWithPVOB, currentLevel, promoted ? promotionLevel : currentLevel, promoted));
+    }
+
+    /**
+     * Record a baseline of the release promoted to its own level
+     *
+     * @param baselineWithPVOB the baseline with the PVOB
+     * @param currentLevel     the current promotion level of the baseline
+     * @param targetLevel      the level chosen for the baseline, null if the baseline is skipped
+     */
+    public void add(String baselineWithPVOB, String currentLevel, String targetLevel) {
+        boolean promoted = targetLevel != null && !targetLevel.equals(currentLevel);
+        entries.add(new Entry(baselineWithPVOB, currentLevel, promoted ? targetLevel : currentLevel, promoted));
+    }
+
+    /**
+     * Record cleartool commands the release would launch
+     *
+     * @param commands the number of commands
+     * @param millis   their estimated duration
+     */
+    public void addEstimate(int commands, long millis) {
+        estimatedCommands += commands;
+        estimatedMillis += millis;
+    }
+
+    public String getPromotionLevel() {
+        return promotionLevel;
+    }
+
+    public boolean isCached() {
+        return cached;
+    }
+
+    public long getCreationTime() {
+        return creationTime;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return the number of baselines the release changes the level of
+     */
+    public int getPromotedCount() {
+        int count = 0;
+        for (Entry entry : entries) {
+            if (entry.isPromoted()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the estimated number of cleartool commands of the release
+     */
+    public int getEstimatedCommands() {
+        return estimatedCommands;
+    }
+
+    /**
+     * @return the estimated duration of the release, at the usual latency of the PVOBs
+     */
+    public long getEstimatedMillis() {
+        return estimatedMillis;
+    }
+
+    /**
+     * @return the estimated duration of the release, for display
+     */
+    public String getEstimatedDurationString() {
+        return Util.getTimeSpanString(estimatedMillis);
+    }
+}
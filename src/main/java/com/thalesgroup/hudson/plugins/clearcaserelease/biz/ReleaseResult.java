@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease.biz;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Represents the baselines promoted by a release
+ */
+public class ReleaseResult {
+
+    private final String promotionLevel;
+
+    private final List<String> promotedBaselines = new ArrayList<String>();
+
+    private final Map<String, String> previousLevels = new LinkedHashMap<String, String>();
+
+    /**
+     * The level of the baselines promoted by a rule to another level than the release one
+     */
+    private final Map<String, String> targetLevels = new LinkedHashMap<String, String>();
+
+    public ReleaseResult(String promotionLevel) {
+        this.promotionLevel = promotionLevel;
+    }
+
+    /**
+     * Record a released baseline
+     *
+     * @param baselineWithPVOB the baseline with the PVOB
+     * @param previousLevel    the promotion level of the baseline before the release
+     */
+    public void add(String baselineWithPVOB, String previousLevel) {
+        promotedBaselines.add(baselineWithPVOB);
+        previousLevels.put(baselineWithPVOB, previousLevel);
+    }
+
+    /**
+     * Record a baseline released to its own level
+     *
+     * @param baselineWithPVOB the baseline with the PVOB
+     * @param previousLevel    the promotion level of the baseline before the release
+     * @param targetLevel      the level the baseline has been promoted to
+     */
+    public void add(String baselineWithPVOB, String previousLevel, String targetLevel) {
+        add(baselineWithPVOB, previousLevel);
+        if (!promotionLevel.equals(targetLevel)) {
+            targetLevels.put(baselineWithPVOB, targetLevel);
+        }
+    }
+
+    /**
+     * @return the level the baselines have been promoted to, unless a rule has chosen another one
+     */
+    public String getPromotionLevel() {
+        return promotionLevel;
+    }
+
+    /**
+     * @param baselineWithPVOB a released baseline with the PVOB
+     * @return the level the baseline has been promoted to
+     */
+    public String getTargetLevel(String baselineWithPVOB) {
+        String level = targetLevels.get(baselineWithPVOB);
+        return (level == null) ? promotionLevel : level;
+    }
+
+    public List<String> getPromotedBaselines() {
+        return promotedBaselines;
+    }
+
+    public Map<String, String> getPreviousLevels() {
+        return previousLevels;
+    }
+
+    /**
+     * @return the released baselines whose level has been changed, the ones to restore on a cancellation
+     */
+    public List<String> getChangedBaselines() {
+        List<String> changedBaselines = new ArrayList<String>();
+        for (String baseline : promotedBaselines) {
+            if (!getTargetLevel(baseline).equals(previousLevels.get(baseline))) {
+                changedBaselines.add(baseline);
+            }
+        }
+        return changedBaselines;
+    }
+}
@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease.biz;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+
+/**
+ * Serves the outputs of a recorded transcript instead of launching cleartool.
+ * Identical commands get their recorded outputs in the recording order, the last one being repeated.
+ */
+public class ReplayClearToolRunner implements ClearToolRunner {
+
+    private final Map<String, LinkedList<ClearToolTranscript.Entry>> entries = new HashMap<String, LinkedList<ClearToolTranscript.Entry>>();
+
+    private final double timeScale;
+
+    /**
+     * @param transcript the recorded transcript
+     * @param timeScale  the factor applied to the recorded durations, 0 to answer immediately
+     */
+    public ReplayClearToolRunner(ClearToolTranscript transcript, double timeScale) {
+        this.timeScale = timeScale;
+        for (ClearToolTranscript.Entry entry : transcript.getEntries()) {
+            LinkedList<ClearToolTranscript.Entry> sameCommand = entries.get(entry.getKey());
+            if (sameCommand == null) {
+                sameCommand = new LinkedList<ClearToolTranscript.Entry>();
+                entries.put(entry.getKey(), sameCommand);
+            }
+            sameCommand.add(entry);
+        }
+    }
+
+    public void run(String[] cmd, OutputStream out) throws IOException, InterruptedException {
+        ClearToolTranscript.Entry entry = next(ClearToolTranscript.join(cmd));
+        if (entry == null) {
+            throw new IOException("No recorded output for the command: cleartool " + ClearToolTranscript.join(cmd).replace('\t', ' '));
+        }
+
+        long duration = (long) (entry.getDurationMillis() * timeScale);
+        if (duration > 0) {
+            Thread.sleep(duration);
+        }
+
+        if (out != null && entry.getOutput() != null) {
+            out.write(entry.getOutput().getBytes());
+        }
+        if (entry.getError() != null) {
+            throw new IOException(entry.getError());
+        }
+    }
+
+    private synchronized ClearToolTranscript.Entry next(String key) {
+        LinkedList<ClearToolTranscript.Entry> sameCommand = entries.get(key);
+        if (sameCommand == null || sameCommand.isEmpty()) {
+            return null;
+        }
+        return sameCommand.size() > 1 ? sameCommand.removeFirst() : sameCommand.getFirst();
+    }
+}
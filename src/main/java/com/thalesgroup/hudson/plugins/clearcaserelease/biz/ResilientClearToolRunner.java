@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease.biz;
+
+import hudson.model.TaskListener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+
+/**
+ * Retries the cleartool commands failing with a transient error, with a jittered exponential backoff,
+ * and fails fast while the PVOB of a command is considered unhealthy.
+ */
+public class ResilientClearToolRunner implements ClearToolRunner {
+
+    private static final int MAX_ATTEMPTS = Integer.getInteger(ResilientClearToolRunner.class.getName() + ".maxAttempts", 4);
+
+    private static final long BASE_DELAY_MILLIS = Long.getLong(ResilientClearToolRunner.class.getName() + ".baseDelayMillis", 500L);
+
+    private static final long MAX_DELAY_MILLIS = Long.getLong(ResilientClearToolRunner.class.getName() + ".maxDelayMillis", 30000L);
+
+    /**
+     * The maximal length of the output of a failed command kept in its error
+     */
+    private static final int MAX_OUTPUT_LENGTH = Integer.getInteger(ResilientClearToolRunner.class.getName() + ".maxOutputLength", 2000);
+
+    private static final Random random = new Random();
+
+    private final ClearToolRunner delegate;
+
+    private final TaskListener listener;
+
+    public ResilientClearToolRunner(ClearToolRunner delegate, TaskListener listener) {
+        this.delegate = delegate;
+        this.listener = listener;
+    }
+
+    /**
+     * Extract the PVOB from the selectors of a cleartool command, or from its VOB argument
+     *
+     * @param cmd the cleartool arguments
+     * @return the PVOB of the first selector, null if the command applies to no PVOB
+     */
+    //cleartool lsbl -fmt "%[plevel]p" LinkManager-4.3.0@\P_ORC --> P_ORC
+    //cleartool lsplevel -short -invob \P_ORC --> P_ORC
+    //cleartool describe -fmt "%[replica_name]p" vob:\P_ORC --> P_ORC
+    public static String getPVOB(String[] cmd) {
+        for (int i = 0; i < cmd.length; i++) {
+            String arg = cmd[i];
+            int index = arg.indexOf("@\\");
+            if (index < 0) {
+                index = arg.indexOf("@/");
+            }
+            if (index >= 0) {
+                return arg.substring(index + 2).trim();
+            }
+            if (arg.startsWith("vob:")) {
+                return removeSeparator(arg.substring("vob:".length()));
+            }
+            if ("-invob".equals(arg) && i + 1 < cmd.length) {
+                return removeSeparator(cmd[i + 1]);
+            }
+        }
+        return null;
+    }
+
+    private static String removeSeparator(String vobTag) {
+        String pvob = vobTag.trim();
+        if (pvob.startsWith("\\") || pvob.startsWith("/")) {
+            pvob = pvob.substring(1);
+        }
+        return pvob;
+    }
+
+    public void run(String[] cmd, OutputStream out) throws IOException, InterruptedException {
+        //The commands without PVOB, such as the probe of the cleartool version, reveal nothing about a PVOB health
+        String pvob = getPVOB(cmd);
+        PvobCircuitBreaker breaker = (pvob == null) ? null : PvobCircuitBreaker.get(pvob);
+        for (int attempt = 1; ; attempt++) {
+            if (breaker != null) {
+                breaker.acquire();
+            }
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            try {
+                delegate.run(cmd, baos);
+                if (breaker != null) {
+                    breaker.recordSuccess();
+                }
+                //The output of the commands without result, such as chbl, goes to the release log
+                baos.writeTo(out != null ? out : listener.getLogger());
+                return;
+            } catch (IOException e) {
+                String output = getOutputTail(baos.toString());
+                ClearToolException.Type type = (e instanceof ClearToolException)
+                        ? ((ClearToolException) e).getType()
+                        : ClearToolException.classify(e.getMessage(), output);
+                if (breaker != null) {
+                    breaker.recordFailure(type);
+                }
+
+                if (!type.isTransient() || attempt >= MAX_ATTEMPTS) {
+                    //Keep the cleartool error messages, the output of a failed command is not given to the caller
+                    String message = (e instanceof ClearToolException)
+                            ? e.getMessage()
+                            : "cleartool " + cmd[0] + " failed (" + type + ") after " + attempt + " attempt(s): " + e.getMessage();
+                    if (output.length() != 0) {
+                        message += "\n" + output;
+                    } else if (e instanceof ClearToolException) {
+                        throw e;
+                    }
+                    throw new ClearToolException(type, message, e);
+                }
+
+                long delay = getDelay(attempt);
+                listener.getLogger().println("[WARNING] - cleartool " + cmd[0] + " failed (" + type + "), retrying in " + delay + " ms");
+                if (output.length() != 0) {
+                    listener.getLogger().println(output);
+                }
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                //The release has been aborted, let the next command be the trial of the PVOB
+                if (breaker != null) {
+                    breaker.recordFailure(ClearToolException.Type.ABORTED);
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Keep the end of the output of a failed command, where cleartool prints its error messages
+     *
+     * @param output the command output
+     * @return the trimmed output, truncated to its last characters
+     */
+    static String getOutputTail(String output) {
+        String tail = output.trim();
+        if (tail.length() > MAX_OUTPUT_LENGTH) {
+            tail = "..." + tail.substring(tail.length() - MAX_OUTPUT_LENGTH);
+        }
+        return tail;
+    }
+
+    /**
+     * Compute the delay before a new attempt: a random duration up to an exponentially growing bound
+     *
+     * @param attempt the number of the failed attempt, starting at 1
+     * @return the delay in milliseconds
+     */
+    private static long getDelay(int attempt) {
+        long bound = Math.min(MAX_DELAY_MILLIS, BASE_DELAY_MILLIS << Math.min(attempt - 1, 20));
+        synchronized (random) {
+            return bound / 2 + (long) (random.nextDouble() * bound / 2);
+        }
+    }
+}
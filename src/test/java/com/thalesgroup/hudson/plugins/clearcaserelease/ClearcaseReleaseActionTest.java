@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease;
+
+import hudson.model.TaskListener;
+import hudson.model.TaskThread;
+import hudson.security.ACL;
+import hudson.security.Permission;
+import junit.framework.TestCase;
+import org.acegisecurity.Authentication;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+
+public class ClearcaseReleaseActionTest extends TestCase {
+
+    private final BlockingAction action = new BlockingAction();
+
+    @Override
+    protected void tearDown() throws Exception {
+        action.abort();
+        action.join();
+    }
+
+    public void testAbortInterruptsTheRunningRelease() throws Exception {
+        assertFalse(action.abort());
+
+        FakeResponse submitted = new FakeResponse();
+        action.doSubmitJson(request("POST"), submitted.proxy());
+        assertEquals(202, submitted.status);
+        action.waitForRunning();
+        assertTrue(action.isRunning());
+        assertEquals("inProgress.jelly", action.chooseAction());
+
+        FakeResponse aborted = new FakeResponse();
+        action.doAbort(request("POST"), aborted.proxy());
+        assertEquals(".", aborted.redirect);
+        action.join();
+
+        assertEquals(ReleaseStatus.State.ABORTED, action.getCurrentRelease().getState());
+        assertFalse(action.isRunning());
+        assertEquals("index.jelly", action.chooseAction());
+        assertFalse(action.abort());
+    }
+
+    public void testReleaseIsSubmittedAgainAfterAnAbort() throws Exception {
+        FakeResponse first = new FakeResponse();
+        action.doSubmitJson(request("POST"), first.proxy());
+        assertEquals(202, first.status);
+        ReleaseStatus aborted = action.getCurrentRelease();
+
+        FakeResponse conflicting = new FakeResponse();
+        action.doSubmitJson(request("POST"), conflicting.proxy());
+        assertEquals(409, conflicting.status);
+
+        assertTrue(action.abort());
+        action.join();
+
+        FakeResponse second = new FakeResponse();
+        action.doSubmitJson(request("POST"), second.proxy());
+        assertEquals(202, second.status);
+        assertNotSame(aborted, action.getCurrentRelease());
+        assertTrue(action.isRunning());
+    }
+
+    public void testSubmissionRequiresAPost() throws Exception {
+        FakeResponse rsp = new FakeResponse();
+        action.doSubmitJson(request("GET"), rsp.proxy());
+        assertEquals(405, rsp.status);
+        assertNull(action.getCurrentRelease());
+    }
+
+    private static StaplerRequest request(final String httpMethod) {
+        return (StaplerRequest) Proxy.newProxyInstance(StaplerRequest.class.getClassLoader(), new Class[]{StaplerRequest.class},
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        return method.getName().equals("getMethod") ? httpMethod : null;
+                    }
+                });
+    }
+
+    /**
+     * Records the status and the redirection of a response
+     */
+    private static class FakeResponse implements InvocationHandler {
+
+        private int status = 200;
+
+        private String redirect;
+
+        StaplerResponse proxy() {
+            return (StaplerResponse) Proxy.newProxyInstance(StaplerResponse.class.getClassLoader(), new Class[]{StaplerResponse.class}, this);
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if (name.equals("setStatus") || name.equals("sendError")) {
+                status = (Integer) args[0];
+            } else if (name.equals("sendRedirect")) {
+                redirect = (String) args[0];
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Runs releases waiting until they are aborted, as the release actions do with cleartool
+     */
+    private static class BlockingAction extends ClearcaseReleaseAction {
+
+        private volatile Thread worker;
+
+        BlockingAction() {
+            super(null);
+        }
+
+        @Override
+        public ReleaseStatus process() throws ReleaseRejectedException {
+            ReleaseStatus status = submitRelease(null, null);
+            worker = new WorkerThread(status);
+            worker.start();
+            return status;
+        }
+
+        void waitForRunning() throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (getCurrentRelease().getState() != ReleaseStatus.State.RUNNING) {
+                assertTrue(System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+        }
+
+        void join() throws InterruptedException {
+            Thread thread = worker;
+            if (thread != null) {
+                thread.join(5000);
+                assertFalse(thread.isAlive());
+            }
+        }
+
+        @Override
+        protected ACL getACL() {
+            return new ACL() {
+                @Override
+                public boolean hasPermission(Authentication a, Permission permission) {
+                    return true;
+                }
+            };
+        }
+
+        public String getIconFileName() {
+            return null;
+        }
+
+        public String getDisplayName() {
+            return null;
+        }
+
+        public String getUrlName() {
+            return "blocking";
+        }
+
+        private final class WorkerThread extends TaskThread {
+
+            private final ReleaseStatus status;
+
+            private WorkerThread(ReleaseStatus status) {
+                super(BlockingAction.this, ListenerAndText.forMemory());
+                this.status = status;
+            }
+
+            @Override
+            protected void perform(TaskListener listener) {
+                try {
+                    status.running();
+                    Thread.sleep(60000);
+                    status.succeeded(0);
+                } catch (Throwable e) {
+                    status.failed(e);
+                } finally {
+                    //reset the worker thread
+                    workerThread = null;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease;
+
+import hudson.security.ACL;
+import junit.framework.TestCase;
+import org.acegisecurity.Authentication;
+import org.acegisecurity.GrantedAuthority;
+import org.acegisecurity.context.SecurityContextHolder;
+import org.acegisecurity.providers.UsernamePasswordAuthenticationToken;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.export.Exported;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+
+public class ClearcaseReleaseApiTest extends TestCase {
+
+    @Override
+    protected void tearDown() throws Exception {
+        SecurityContextHolder.clearContext();
+        super.tearDown();
+    }
+
+    public void testStatusETagOnlyChangesWithTheExportedState() throws Exception {
+        ReleaseStatus status = new ReleaseStatus("r-1", "clearcasereleaselatestbaseline", null, null);
+        status.running();
+        String etag = status.getETag();
+        Map<String, Object> exported = getExportedProperties(status);
+
+        Thread.sleep(20);
+        assertEquals(etag, status.getETag());
+        assertEquals(exported, getExportedProperties(status));
+
+        status.succeeded(3);
+        assertFalse(etag.equals(status.getETag()));
+        assertFalse(exported.equals(getExportedProperties(status)));
+    }
+
+    public void testMatchingETagGetsANotModifiedResponse() throws Exception {
+        ReleaseStatus status = new ReleaseStatus("r-2", "clearcasereleaselatestbaseline", null, null);
+
+        FakeResponse first = new FakeResponse();
+        ClearcaseReleaseApi.serveJson(request(null), first.proxy(), status, status.getETag());
+        assertSame(status, first.served);
+        String etag = first.headers.get("ETag");
+        assertEquals("\"" + status.getETag() + "\"", etag);
+
+        FakeResponse unchanged = new FakeResponse();
+        ClearcaseReleaseApi.serveJson(request(etag), unchanged.proxy(), status, status.getETag());
+        assertEquals(304, unchanged.status);
+        assertNull(unchanged.served);
+
+        status.running();
+        FakeResponse changed = new FakeResponse();
+        ClearcaseReleaseApi.serveJson(request(etag), changed.proxy(), status, status.getETag());
+        assertSame(status, changed.served);
+        assertFalse(etag.equals(changed.headers.get("ETag")));
+    }
+
+    public void testListETagDependsOnTheUser() throws Exception {
+        ClearcaseReleaseApi api = new ClearcaseReleaseApi();
+
+        login("alice");
+        FakeResponse alice = new FakeResponse();
+        api.doList(request(null), alice.proxy());
+        String aliceETag = alice.headers.get("ETag");
+
+        login("bob");
+        FakeResponse bob = new FakeResponse();
+        api.doList(request(aliceETag), bob.proxy());
+        assertFalse(aliceETag.equals(bob.headers.get("ETag")));
+        assertNotNull("The list of another user isn't reused", bob.served);
+
+        FakeResponse bobAgain = new FakeResponse();
+        api.doList(request(bob.headers.get("ETag")), bobAgain.proxy());
+        assertEquals(304, bobAgain.status);
+    }
+
+    public void testListETagChangesWithTheReleases() throws Exception {
+        ClearcaseReleaseApi api = new ClearcaseReleaseApi();
+        FakeResponse before = new FakeResponse();
+        api.doList(request(null), before.proxy());
+
+        ReleaseStatus status = ReleaseTracker.get().submit(new FakeAction(), null, null);
+        try {
+            FakeResponse after = new FakeResponse();
+            api.doList(request(before.headers.get("ETag")), after.proxy());
+            assertNotNull(after.served);
+            assertFalse(before.headers.get("ETag").equals(after.headers.get("ETag")));
+        } finally {
+            status.succeeded(0);
+        }
+    }
+
+    private static void login(String name) {
+        Authentication authentication = new UsernamePasswordAuthenticationToken(name, "", new GrantedAuthority[0]);
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+    }
+
+    private static Map<String, Object> getExportedProperties(Object bean) throws Exception {
+        Map<String, Object> properties = new HashMap<String, Object>();
+        for (Method method : bean.getClass().getMethods()) {
+            if (method.isAnnotationPresent(Exported.class)) {
+                properties.put(method.getName(), method.invoke(bean));
+            }
+        }
+        return properties;
+    }
+
+    private static StaplerRequest request(final String ifNoneMatch) {
+        return (StaplerRequest) Proxy.newProxyInstance(StaplerRequest.class.getClassLoader(), new Class[]{StaplerRequest.class},
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("getHeader") && "If-None-Match".equals(args[0])) {
+                            return ifNoneMatch;
+                        }
+                        return null;
+                    }
+                });
+    }
+
+    /**
+     * Records the status, the headers and the bean of a response
+     */
+    private static class FakeResponse implements InvocationHandler {
+
+        private final Map<String, String> headers = new HashMap<String, String>();
+
+        private int status = 200;
+
+        private Object served;
+
+        StaplerResponse proxy() {
+            return (StaplerResponse) Proxy.newProxyInstance(StaplerResponse.class.getClassLoader(), new Class[]{StaplerResponse.class}, this);
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if (name.equals("setHeader")) {
+                headers.put((String) args[0], (String) args[1]);
+            } else if (name.equals("setStatus") || name.equals("sendError")) {
+                status = (Integer) args[0];
+            } else if (name.equals("serveExposedBean")) {
+                served = args[1];
+            }
+            return null;
+        }
+    }
+
+    private static class FakeAction extends ClearcaseReleaseAction {
+
+        FakeAction() {
+            super(null);
+        }
+
+        @Override
+        public ReleaseStatus process() {
+            return null;
+        }
+
+        @Override
+        protected ACL getACL() {
+            return null;
+        }
+
+        public String getIconFileName() {
+            return null;
+        }
+
+        public String getDisplayName() {
+            return null;
+        }
+
+        public String getUrlName() {
+            return "fake";
+        }
+    }
+}
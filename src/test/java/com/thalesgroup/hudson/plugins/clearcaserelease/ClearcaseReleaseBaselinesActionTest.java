@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease;
+
+import hudson.EnvVars;
+import hudson.model.Run;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+public class ClearcaseReleaseBaselinesActionTest extends TestCase {
+
+    private File buildDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        buildDir = File.createTempFile("build", "");
+        assertTrue(buildDir.delete());
+        assertTrue(buildDir.mkdir());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        new File(buildDir, ClearcaseReleaseBaselinesAction.FILE_NAME).delete();
+        buildDir.delete();
+    }
+
+    public void testSmallSetIsInline() throws Exception {
+        ClearcaseReleaseBaselinesAction action = new ClearcaseReleaseBaselinesAction(new FakeRun(buildDir),
+                Arrays.asList("bl1@\\pvob", " bl2@\\pvob\n"));
+
+        assertEquals(2, action.getCount());
+        assertEquals("bl1@\\pvob;bl2@\\pvob", action.getLatestBaseline());
+
+        EnvVars env = new EnvVars();
+        action.buildEnvVars(null, env);
+        assertEquals("bl1@\\pvob;bl2@\\pvob", env.get("LATEST_BASELINE"));
+        assertEquals(action.getFile().getAbsolutePath(), env.get("LATEST_BASELINE_FILE"));
+        assertEquals("2", env.get("LATEST_BASELINE_COUNT"));
+        assertEquals(Arrays.asList("bl1@\\pvob", "bl2@\\pvob"), action.getBaselines());
+    }
+
+    public void testLargeSetIsOnlyInTheFile() throws Exception {
+        List<String> baselines = new ArrayList<String>();
+        for (int i = 0; i < 500; i++) {
+            baselines.add("component" + i + "_1.0@\\pvob");
+        }
+        ClearcaseReleaseBaselinesAction action = new ClearcaseReleaseBaselinesAction(new FakeRun(buildDir), baselines);
+
+        assertEquals(500, action.getCount());
+        assertNull(action.getLatestBaseline());
+
+        EnvVars env = new EnvVars();
+        action.buildEnvVars(null, env);
+        assertFalse(env.containsKey("LATEST_BASELINE"));
+        assertEquals("500", env.get("LATEST_BASELINE_COUNT"));
+        assertEquals(new File(buildDir, ClearcaseReleaseBaselinesAction.FILE_NAME).getAbsolutePath(), env.get("LATEST_BASELINE_FILE"));
+    }
+
+    public void testBaselinesAreReadBackFromTheBuildDirectory() throws Exception {
+        List<String> baselines = new ArrayList<String>();
+        for (int i = 0; i < 500; i++) {
+            baselines.add("component" + i + "_1.0@\\pvob");
+        }
+        ClearcaseReleaseBaselinesAction action = new ClearcaseReleaseBaselinesAction(new FakeRun(buildDir), baselines);
+        assertEquals(baselines, action.getBaselines());
+    }
+
+    public void testMissingFileIsReported() throws Exception {
+        ClearcaseReleaseBaselinesAction action = new ClearcaseReleaseBaselinesAction(new FakeRun(buildDir), Arrays.asList("bl1@\\pvob"));
+        assertTrue(action.getFile().delete());
+        try {
+            action.getBaselines();
+            fail();
+        } catch (IOException e) {
+            //expected
+        }
+    }
+
+    private static class FakeRun extends Run {
+
+        private final File rootDir;
+
+        private FakeRun(File rootDir) {
+            super(null, 0);
+            this.rootDir = rootDir;
+        }
+
+        @Override
+        public File getRootDir() {
+            return rootDir;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+public class PromotionDebouncerTest extends TestCase {
+
+    private static final String STREAM = "stream:dev@/pvob";
+
+    private final RecordingScheduler scheduler = new RecordingScheduler();
+
+    private final ExecutorService promotions = Executors.newCachedThreadPool();
+
+    private final PromotionDebouncer debouncer = new PromotionDebouncer(scheduler, promotions);
+
+    @Override
+    protected void tearDown() throws Exception {
+        scheduler.shutdownNow();
+        promotions.shutdownNow();
+    }
+
+    public void testQuietPeriodIsExtendedByEachRequest() {
+        assertEquals(1500, PromotionDebouncer.getFireTime(0, 1000, 500, 10000));
+        assertEquals(2500, PromotionDebouncer.getFireTime(0, 2000, 500, 10000));
+    }
+
+    public void testMaxDelayBoundsTheQuietPeriod() {
+        assertEquals(3000, PromotionDebouncer.getFireTime(0, 2800, 500, 3000));
+    }
+
+    public void testNoMaxDelayWaitsForAQuietPeriod() {
+        assertEquals(60500, PromotionDebouncer.getFireTime(0, 60000, 500, 0));
+    }
+
+    public void testNewerBuildSupersedesAnOlderOne() throws Exception {
+        FakeRequest first = new FakeRequest(1);
+        FakeRequest second = new FakeRequest(2);
+        assertTrue(debouncer.submit(STREAM, first, 100, 0));
+        assertTrue(debouncer.submit(STREAM, second, 100, 0));
+        assertFalse(debouncer.submit(STREAM, new FakeRequest(1), 100, 0));
+        assertSame(second, debouncer.getPendingRequest(STREAM));
+
+        assertTrue(second.promoted.await(5, TimeUnit.SECONDS));
+        Thread.sleep(200);
+        assertEquals(0, first.promotions.get());
+        assertEquals(1, second.promotions.get());
+        assertNull(debouncer.getPendingRequest(STREAM));
+    }
+
+    public void testPromotionWaitsForTheEndOfTheBuild() throws Exception {
+        FakeRequest request = new FakeRequest(1);
+        request.building = true;
+        debouncer.submit(STREAM, request, 10, 0);
+
+        assertFalse(request.promoted.await(300, TimeUnit.MILLISECONDS));
+        assertSame(request, debouncer.getPendingRequest(STREAM));
+
+        request.building = false;
+        assertTrue(request.promoted.await(5, TimeUnit.SECONDS));
+    }
+
+    public void testPromotionWaitsForTheRunningPromotion() throws Exception {
+        FakeRequest first = new FakeRequest(1);
+        first.end = new CountDownLatch(1);
+        debouncer.submit(STREAM, first, 10, 0);
+        assertTrue(first.promoted.await(5, TimeUnit.SECONDS));
+
+        FakeRequest second = new FakeRequest(2);
+        debouncer.submit(STREAM, second, 10, 0);
+        assertFalse(second.promoted.await(300, TimeUnit.MILLISECONDS));
+        assertSame(second, debouncer.getPendingRequest(STREAM));
+
+        first.end.countDown();
+        assertTrue(second.promoted.await(5, TimeUnit.SECONDS));
+        assertEquals(1, first.promotions.get());
+    }
+
+    public void testSupersededTimerIsIgnored() throws Exception {
+        FakeRequest first = new FakeRequest(1);
+        FakeRequest second = new FakeRequest(2);
+        debouncer.submit(STREAM, first, 60000, 0);
+        debouncer.submit(STREAM, second, 60000, 0);
+        assertEquals(2, scheduler.timers.size());
+
+        //The first timer was already firing when the second request has rescheduled the promotion
+        scheduler.timers.get(0).run();
+        Thread.sleep(200);
+        assertEquals(0, second.promotions.get());
+        assertSame(second, debouncer.getPendingRequest(STREAM));
+
+        scheduler.timers.get(1).run();
+        assertTrue(second.promoted.await(5, TimeUnit.SECONDS));
+
+        //The promotion has started, its timers are stale
+        scheduler.timers.get(1).run();
+        scheduler.timers.get(0).run();
+        Thread.sleep(200);
+        assertEquals(0, first.promotions.get());
+        assertEquals(1, second.promotions.get());
+    }
+
+    /**
+     * Records the scheduled timers, the tests may run them before their delay
+     */
+    private static class RecordingScheduler extends ScheduledThreadPoolExecutor {
+
+        private final List<Runnable> timers = Collections.synchronizedList(new ArrayList<Runnable>());
+
+        private RecordingScheduler() {
+            super(1);
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            timers.add(command);
+            return super.schedule(command, delay, unit);
+        }
+    }
+
+    private static class FakeRequest implements PromotionDebouncer.PromotionRequest {
+
+        private final int number;
+
+        private volatile boolean building;
+
+        private final AtomicInteger promotions = new AtomicInteger();
+
+        private final CountDownLatch promoted = new CountDownLatch(1);
+
+        /**
+         * Holds the promotion until it is opened, null for none
+         */
+        private volatile CountDownLatch end;
+
+        private FakeRequest(int number) {
+            this.number = number;
+        }
+
+        public int getNumber() {
+            return number;
+        }
+
+        public boolean isBuilding() {
+            return building;
+        }
+
+        public void promote() {
+            promotions.incrementAndGet();
+            promoted.countDown();
+            if (end != null) {
+                try {
+                    end.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease;
+
+import hudson.security.ACL;
+import hudson.security.Permission;
+import junit.framework.TestCase;
+import org.acegisecurity.Authentication;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+public class ReleaseTrackerTest extends TestCase {
+
+    private static final String PVOB = "/tracker_pvob";
+
+    private final ReleaseTracker tracker = ReleaseTracker.get();
+
+    private final List<ReleaseStatus> submitted = new ArrayList<ReleaseStatus>();
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (ReleaseStatus status : submitted) {
+            if (status.getState().isActive()) {
+                status.succeeded(0);
+            }
+        }
+    }
+
+    public void testReleaseIsRejectedAtThePvobLimit() throws Exception {
+        FakeAction action = new FakeAction(PVOB);
+        fillPvob(action);
+
+        long shed = getShedRequests(PVOB);
+        long totalShed = tracker.getTotalShedRequests();
+        try {
+            action.process();
+            fail();
+        } catch (ReleaseRejectedException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(PVOB));
+            assertTrue(e.getRetryAfterSeconds() >= 1);
+        }
+        assertEquals(shed + 1, getShedRequests(PVOB));
+        assertEquals(totalShed + 1, tracker.getTotalShedRequests());
+        assertEquals(tracker.getMaxBacklogPerPvob(), tracker.getPvobBacklog(PVOB));
+
+        //The other PVOBs are still accepted
+        submitted.add(new FakeAction("/other_pvob").process());
+    }
+
+    public void testReleaseIsRejectedAtTheGlobalLimit() throws Exception {
+        int pvobs = 0;
+        while (tracker.getActive().size() < tracker.getMaxBacklog()) {
+            submitted.add(new FakeAction("/tracker_pvob" + (pvobs++ / tracker.getMaxBacklogPerPvob())).process());
+        }
+
+        long shed = getShedRequests("");
+        try {
+            new FakeAction(null).process();
+            fail();
+        } catch (ReleaseRejectedException e) {
+            assertTrue(e.getRetryAfterSeconds() >= 1);
+        }
+        assertEquals(shed + 1, getShedRequests(""));
+    }
+
+    public void testEndedReleaseFreesItsSlot() throws Exception {
+        FakeAction action = new FakeAction(PVOB);
+        fillPvob(action);
+
+        ReleaseStatus succeeded = submitted.get(0);
+        succeeded.running();
+        succeeded.succeeded(3);
+        assertEquals(tracker.getMaxBacklogPerPvob() - 1, tracker.getPvobBacklog(PVOB));
+        assertSame(succeeded, tracker.getStatus(succeeded.getId()));
+        assertFalse(tracker.getActive().contains(succeeded));
+        submitted.add(action.process());
+
+        ReleaseStatus failed = submitted.get(1);
+        failed.running();
+        failed.failed(new InterruptedException());
+        assertEquals(ReleaseStatus.State.ABORTED, failed.getState());
+        assertEquals(tracker.getMaxBacklogPerPvob() - 1, tracker.getPvobBacklog(PVOB));
+        submitted.add(action.process());
+        assertEquals(tracker.getMaxBacklogPerPvob(), tracker.getPvobBacklog(PVOB));
+    }
+
+    public void testRejectedSubmissionGetsATooManyRequestsResponse() throws Exception {
+        FakeAction action = new FakeAction(PVOB);
+        fillPvob(action);
+
+        FakeResponse rsp = new FakeResponse();
+        action.doSubmitJson(post(), rsp.proxy());
+        assertEquals(429, rsp.status);
+        int retryAfter = Integer.parseInt(rsp.headers.get("Retry-After"));
+        assertTrue(retryAfter >= 1);
+        assertTrue(rsp.message, rsp.message.contains("Retry in " + retryAfter + " s."));
+    }
+
+    private void fillPvob(FakeAction action) throws ReleaseRejectedException {
+        while (tracker.getPvobBacklog(action.pvob) < tracker.getMaxBacklogPerPvob()) {
+            submitted.add(action.process());
+        }
+    }
+
+    private long getShedRequests(String pvob) {
+        Long shed = tracker.getShedRequests().get(pvob);
+        return (shed == null) ? 0 : shed;
+    }
+
+    private static StaplerRequest post() {
+        return (StaplerRequest) Proxy.newProxyInstance(StaplerRequest.class.getClassLoader(), new Class[]{StaplerRequest.class},
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        return method.getName().equals("getMethod") ? "POST" : null;
+                    }
+                });
+    }
+
+    /**
+     * Records the status, the headers and the error message of a response
+     */
+    private static class FakeResponse implements InvocationHandler {
+
+        private final Map<String, String> headers = new HashMap<String, String>();
+
+        private int status = 200;
+
+        private String message;
+
+        StaplerResponse proxy() {
+            return (StaplerResponse) Proxy.newProxyInstance(StaplerResponse.class.getClassLoader(), new Class[]{StaplerResponse.class}, this);
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if (name.equals("setHeader")) {
+                headers.put((String) args[0], (String) args[1]);
+            } else if (name.equals("setStatus")) {
+                status = (Integer) args[0];
+            } else if (name.equals("sendError")) {
+                status = (Integer) args[0];
+                message = (args.length > 1) ? (String) args[1] : null;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Submits releases on a PVOB, without running them
+     */
+    private static class FakeAction extends ClearcaseReleaseAction {
+
+        private final String pvob;
+
+        FakeAction(String pvob) {
+            super(null);
+            this.pvob = pvob;
+        }
+
+        @Override
+        public ReleaseStatus process() throws ReleaseRejectedException {
+            return submitRelease(null, pvob);
+        }
+
+        @Override
+        protected ACL getACL() {
+            return new ACL() {
+                @Override
+                public boolean hasPermission(Authentication a, Permission permission) {
+                    return true;
+                }
+            };
+        }
+
+        public String getIconFileName() {
+            return null;
+        }
+
+        public String getDisplayName() {
+            return null;
+        }
+
+        public String getUrlName() {
+            return "fake";
+        }
+    }
+}
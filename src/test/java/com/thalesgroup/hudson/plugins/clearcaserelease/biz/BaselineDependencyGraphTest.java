@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease.biz;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+
+public class BaselineDependencyGraphTest extends TestCase {
+
+    private static BaselineDescription describe(String baseline, String... dependsOn) {
+        return new BaselineDescription(baseline, null, "BUILT", Arrays.asList(dependsOn));
+    }
+
+    public void testAddReturnsTheUnvisitedDependencies() {
+        BaselineDependencyGraph graph = new BaselineDependencyGraph("C");
+        assertEquals(Arrays.asList("A", "B"), graph.add(describe("C", "A", "B", "A")));
+        assertEquals(Collections.<String>emptyList(), graph.add(describe("A")));
+        assertEquals(Arrays.asList("B"), graph.add(describe("D", "A", "B")));
+        assertTrue(graph.isVisited("A"));
+        assertFalse(graph.isVisited("B"));
+        assertEquals(3, graph.size());
+    }
+
+    public void testMembersArePromotedBeforeTheirComposite() {
+        //C depends on B and A, B depends on A
+        BaselineDependencyGraph graph = new BaselineDependencyGraph("C");
+        graph.add(describe("C", "B", "A"));
+        graph.add(describe("B", "A"));
+        graph.add(describe("A"));
+
+        List<List<String>> layers = graph.getPromotionLayers();
+        assertEquals(Arrays.asList(Arrays.asList("A"), Arrays.asList("B"), Arrays.asList("C")), layers);
+    }
+
+    public void testIndependentBaselinesShareALayer() {
+        //A diamond: C depends on B1 and B2, both depending on A
+        BaselineDependencyGraph graph = new BaselineDependencyGraph("C");
+        graph.add(describe("C", "B1", "B2"));
+        graph.add(describe("B1", "A"));
+        graph.add(describe("B2", "A"));
+        graph.add(describe("A"));
+
+        List<List<String>> layers = graph.getPromotionLayers();
+        assertEquals(3, layers.size());
+        assertEquals(Arrays.asList("A"), layers.get(0));
+        assertEquals(Arrays.asList("B1", "B2"), layers.get(1));
+        assertEquals(Arrays.asList("C"), layers.get(2));
+    }
+
+    public void testUndescribedDependenciesAreIgnored() {
+        BaselineDependencyGraph graph = new BaselineDependencyGraph("C");
+        graph.add(describe("C", "A", "MISSING"));
+        graph.add(describe("A", "MISSING"));
+
+        assertEquals(Arrays.asList(Arrays.asList("A"), Arrays.asList("C")), graph.getPromotionLayers());
+    }
+
+    public void testCyclesTerminate() {
+        BaselineDependencyGraph graph = new BaselineDependencyGraph("C");
+        graph.add(describe("C", "A"));
+        graph.add(describe("A", "B"));
+        graph.add(describe("B", "A"));
+
+        int count = 0;
+        for (List<String> layer : graph.getPromotionLayers()) {
+            count += layer.size();
+        }
+        assertEquals(3, count);
+    }
+}
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease.biz;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+public class BaselineDescriptionTest extends TestCase {
+
+    public void testParse() {
+        BaselineDescription description = BaselineDescription.parse("baseline:LinkManager-4.3.0@\\P_ORC LinkMgt_Reqtify BUILT");
+        assertEquals("LinkManager-4.3.0@\\P_ORC", description.getBaselineWithPVOB());
+        assertEquals("LinkMgt_Reqtify", description.getComponent());
+        assertEquals("BUILT", description.getPromotionLevel());
+        assertTrue(description.getDependsOn().isEmpty());
+    }
+
+    public void testParseQuotedOutput() {
+        //The quotes of the format are kept on non Windows platforms
+        BaselineDescription description = BaselineDescription.parse("\"baseline:LinkManager-4.3.0@/P_ORC LinkMgt_Reqtify RELEASED\"");
+        assertEquals("LinkManager-4.3.0@/P_ORC", description.getBaselineWithPVOB());
+        assertEquals("RELEASED", description.getPromotionLevel());
+    }
+
+    public void testParseQuotedBatchedOutput() {
+        //Each line of a batched output starts with the closing quote of the previous one
+        String output = "\"baseline:LinkManager-4.3.0@/P_ORC LinkMgt_Reqtify RELEASED\n\"\"baseline:Core-1.0@/P_ORC Core BUILT\n\"";
+        List<BaselineDescription> descriptions = new ArrayList<BaselineDescription>();
+        for (String line : output.split("\n")) {
+            BaselineDescription description = BaselineDescription.parse(line);
+            if (description != null) {
+                descriptions.add(description);
+            }
+        }
+        assertEquals(2, descriptions.size());
+        assertEquals("Core-1.0@/P_ORC", descriptions.get(1).getBaselineWithPVOB());
+        assertEquals("BUILT", descriptions.get(1).getPromotionLevel());
+    }
+
+    public void testKeyIgnoresTheQuotesAndThePVOBSeparator() {
+        assertEquals("Core-1.0@\\P_ORC", BaselineDescription.getKey("\"\"baseline:Core-1.0@/P_ORC"));
+        assertEquals("Core-1.0@\\P_ORC", BaselineDescription.getKey(" Core-1.0@\\P_ORC\""));
+    }
+
+    public void testParseIncompleteLine() {
+        assertNull(BaselineDescription.parse(""));
+        assertNull(BaselineDescription.parse("baseline:LinkManager-4.3.0@\\P_ORC LinkMgt_Reqtify"));
+    }
+
+    public void testParseWithDependencies() {
+        BaselineDescription description = BaselineDescription.parseWithDependencies(
+                "baseline:C_hudson-test@\\P_ORC BUILT baseline:LinkManager-4.3.0@\\P_ORC baseline:P_TracMngt_Rqtf_CoreModel_V3.0.1@\\P_ORC");
+        assertEquals("C_hudson-test@\\P_ORC", description.getBaselineWithPVOB());
+        assertNull(description.getComponent());
+        assertEquals("BUILT", description.getPromotionLevel());
+        assertEquals(Arrays.asList("LinkManager-4.3.0@\\P_ORC", "P_TracMngt_Rqtf_CoreModel_V3.0.1@\\P_ORC"), description.getDependsOn());
+    }
+
+    public void testParseWithoutDependencies() {
+        BaselineDescription description = BaselineDescription.parseWithDependencies("baseline:LinkManager-4.3.0@\\P_ORC INITIAL ");
+        assertEquals("INITIAL", description.getPromotionLevel());
+        assertTrue(description.getDependsOn().isEmpty());
+        assertNull(BaselineDescription.parseWithDependencies("baseline:LinkManager-4.3.0@\\P_ORC"));
+    }
+
+    public void testParseWithDependenciesSkipsDoubleSpaces() {
+        BaselineDescription description = BaselineDescription.parseWithDependencies("baseline:C@\\P_ORC BUILT  baseline:A@\\P_ORC");
+        assertEquals(Arrays.asList("A@\\P_ORC"), description.getDependsOn());
+    }
+}
@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease.biz;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+public class ClearToolCapabilitiesTest extends TestCase {
+
+    private static final String VERSION_OUTPUT = "ClearCase version 7.1.2 (Tue Dec 01 21:36:40 EST 2009)\n"
+            + "@(#) MVFS version 7.1.2.0 (Wed Nov 25 01:54:46 2009)\n"
+            + "cleartool                         7.1.2.0 (Wed Nov 25 23:46:55 2009)\n";
+
+    @Override
+    protected void setUp() throws Exception {
+        ClearToolCapabilities.invalidate(null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        ClearToolCapabilities.invalidate(null);
+    }
+
+    public void testParseVersionPrefersTheCleartoolVersion() {
+        assertEquals("7.1.2.0", ClearToolCapabilities.parseVersion(VERSION_OUTPUT));
+        assertEquals("7.0.1", ClearToolCapabilities.parseVersion("ClearCase version 7.0.1 (Wed May 30 17:05:56 EDT 2007)\n"));
+        assertNull(ClearToolCapabilities.parseVersion("unexpected\n"));
+    }
+
+    public void testParseMultipleBaselines() {
+        assertTrue(ClearToolCapabilities.parseMultipleBaselines("Usage: chbl [-c comment | -cfile pname | -cq | -nc]\n"
+                + "            [-level promotion-level] [-incremental | -full] [-nrecurse]\n"
+                + "            baseline-selector ...\n"));
+        assertFalse(ClearToolCapabilities.parseMultipleBaselines("Usage: chbl [-level promotion-level]\n            baseline-selector\n"));
+        assertTrue(ClearToolCapabilities.parseMultipleBaselines("unknown usage"));
+    }
+
+    public void testCapabilitiesAreProbedOnce() throws Exception {
+        CountingClearTool clearTool = new CountingClearTool(null);
+        ClearToolCapabilities capabilities = ClearToolCapabilities.get(null, clearTool);
+        assertEquals("7.1.2.0", capabilities.getVersion());
+        assertTrue(capabilities.acceptsMultipleBaselines("chbl"));
+        assertFalse(capabilities.acceptsMultipleBaselines("mkbl"));
+
+        assertSame(capabilities, ClearToolCapabilities.get(null, clearTool));
+        assertSame(capabilities, ClearToolCapabilities.peek(null));
+        assertEquals(3, clearTool.commands.get());
+    }
+
+    public void testFailedProbeIsKeptForAShortPeriod() throws Exception {
+        CountingClearTool clearTool = new CountingClearTool(null) {
+            @Override
+            public void run(String[] cmd, OutputStream out) throws IOException, InterruptedException {
+                commands.incrementAndGet();
+                throw new IOException("cleartool not found");
+            }
+        };
+        assertSame(ClearToolCapabilities.DEFAULT, ClearToolCapabilities.get(null, clearTool));
+        assertSame(ClearToolCapabilities.DEFAULT, ClearToolCapabilities.get(null, clearTool));
+        assertEquals(1, clearTool.commands.get());
+
+        ClearToolCapabilities.invalidate(null);
+        assertEquals("7.1.2.0", ClearToolCapabilities.get(null, new CountingClearTool(null)).getVersion());
+    }
+
+    public void testConcurrentReleasesShareTheRunningProbe() throws Exception {
+        final CountDownLatch probing = new CountDownLatch(1);
+        final CountingClearTool clearTool = new CountingClearTool(probing);
+        final ClearToolCapabilities[] waited = new ClearToolCapabilities[1];
+        Thread waiter = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    waited[0] = ClearToolCapabilities.get(null, clearTool);
+                } catch (InterruptedException e) {
+                    //The test is over
+                }
+            }
+        };
+
+        Thread prober = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    ClearToolCapabilities.get(null, clearTool);
+                } catch (InterruptedException e) {
+                    //The test is over
+                }
+            }
+        };
+        prober.start();
+        while (clearTool.commands.get() == 0) {
+            Thread.sleep(10);
+        }
+        waiter.start();
+        Thread.sleep(100);
+        probing.countDown();
+        prober.join(5000);
+        waiter.join(5000);
+
+        assertEquals(3, clearTool.commands.get());
+        assertEquals("7.1.2.0", waited[0].getVersion());
+    }
+
+    /**
+     * Answers the probe commands, the first one waiting for a latch
+     */
+    private static class CountingClearTool implements ClearToolRunner {
+
+        final AtomicInteger commands = new AtomicInteger();
+
+        private final CountDownLatch latch;
+
+        private CountingClearTool(CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        public void run(String[] cmd, OutputStream out) throws IOException, InterruptedException {
+            if (commands.incrementAndGet() == 1 && latch != null) {
+                latch.await();
+            }
+            if ("-version".equals(cmd[0])) {
+                out.write(VERSION_OUTPUT.getBytes());
+            } else {
+                out.write(("Usage: " + cmd[1] + " [-level promotion-level]\n            baseline-selector ...\n").getBytes());
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease.biz;
+
+import junit.framework.TestCase;
+
+
+public class ClearToolExceptionTest extends TestCase {
+
+    public void testLockErrors() {
+        assertEquals(ClearToolException.Type.LOCK, ClearToolException.classify("cleartool chbl returned the exit code 1",
+                "cleartool: Error: Lock on VOB \"\\P_ORC\" prevents operation \"modify\"."));
+        assertEquals(ClearToolException.Type.LOCK, ClearToolException.classify(null, "cleartool: Error: Baseline is locked by user."));
+    }
+
+    public void testNetworkErrors() {
+        assertEquals(ClearToolException.Type.NETWORK, ClearToolException.classify(null,
+                "cleartool: Error: Unable to contact albd_server on host 'vobsrv'"));
+        assertEquals(ClearToolException.Type.NETWORK, ClearToolException.classify("Connection refused", null));
+        assertEquals(ClearToolException.Type.NETWORK, ClearToolException.classify(null, "RPC: Timed out"));
+    }
+
+    public void testNotFoundErrors() {
+        assertEquals(ClearToolException.Type.NOT_FOUND, ClearToolException.classify(null,
+                "cleartool: Error: Baseline not found: \"LinkManager-4.3.0\"."));
+        assertEquals(ClearToolException.Type.NOT_FOUND, ClearToolException.classify(null, "cleartool: Error: Unable to find baseline"));
+    }
+
+    public void testOtherErrors() {
+        assertEquals(ClearToolException.Type.OTHER, ClearToolException.classify("cleartool chbl returned the exit code 1",
+                "cleartool: Error: Promotion level \"FOO\" is not defined."));
+        assertEquals(ClearToolException.Type.OTHER, ClearToolException.classify(null, null));
+    }
+
+    public void testTransientAndUnhealthyTypes() {
+        assertTrue(ClearToolException.Type.LOCK.isTransient());
+        assertTrue(ClearToolException.Type.NETWORK.isTransient());
+        assertFalse(ClearToolException.Type.TIMEOUT.isTransient());
+        assertTrue(ClearToolException.Type.TIMEOUT.isUnhealthy());
+        assertFalse(ClearToolException.Type.NOT_FOUND.isUnhealthy());
+        assertFalse(ClearToolException.Type.OTHER.isUnhealthy());
+    }
+}
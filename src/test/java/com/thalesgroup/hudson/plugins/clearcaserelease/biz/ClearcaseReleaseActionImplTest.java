@@ -0,0 +1,260 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease.biz;
+
+import hudson.model.TaskListener;
+import hudson.util.StreamTaskListener;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+public class ClearcaseReleaseActionImplTest extends TestCase {
+
+    private static final ClearToolCapabilities SINGLE_BASELINE = new ClearToolCapabilities("7.0", false, false);
+
+    private static final List<String> BASELINES = Arrays.asList("bl1@\\pvob", "bl2@\\pvob", "bl3@\\pvob");
+
+    private final TaskListener listener = new StreamTaskListener(new ByteArrayOutputStream());
+
+    private final Map<String, FakeClearTool> nodes = new HashMap<String, FakeClearTool>();
+
+    private final ClearcaseReleaseActionImpl releaseImpl = new ClearcaseReleaseActionImpl(null, ReleaseLane.INTERACTIVE) {
+        @Override
+        protected ClearToolRunner createClearToolRunner(TaskListener listener, String nodeName) throws IOException {
+            FakeClearTool clearTool = new FakeClearTool("site2");
+            nodes.put(nodeName, clearTool);
+            return clearTool;
+        }
+    };
+
+    @Override
+    protected void setUp() throws Exception {
+        ClearToolCapabilities.invalidate(null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        BaselineMastership.configure(false, "");
+        ClearToolCapabilities.invalidate(null);
+    }
+
+    public void testSingleBaselineIsChangedByASingleCommand() {
+        assertEquals(CommandStrategy.PER_ITEM, ClearcaseReleaseActionImpl.planCommands(ClearToolCapabilities.DEFAULT, "chbl", 1));
+    }
+
+    public void testBaselinesAreBatchedWhenSupported() {
+        assertEquals(CommandStrategy.BATCHED, ClearcaseReleaseActionImpl.planCommands(ClearToolCapabilities.DEFAULT, "chbl", 120));
+        assertEquals(3, ClearcaseReleaseActionImpl.getCommandCount(CommandStrategy.BATCHED, 120));
+    }
+
+    public void testBaselinesArePooledWithoutBatching() {
+        assertEquals(CommandStrategy.POOLED, ClearcaseReleaseActionImpl.planCommands(SINGLE_BASELINE, "chbl", 120));
+        assertEquals(120, ClearcaseReleaseActionImpl.getCommandCount(CommandStrategy.POOLED, 120));
+    }
+
+    public void testCandidatesAreGroupedByTargetLevel() {
+        List<BaselineDescription> candidates = Arrays.asList(
+                new BaselineDescription("core_1@\\pvob", "Core", "BUILT"),
+                new BaselineDescription("lib_1@\\pvob", "ThirdParty_lib", "BUILT"),
+                new BaselineDescription("core_draft_1@\\pvob", "Core", "BUILT"),
+                new BaselineDescription("tools_1@\\pvob", "Tools", "RELEASED"),
+                new BaselineDescription("lib_2@\\pvob", "ThirdParty_lib2", "BUILT"));
+        PromotionRules rules = PromotionRules.compile("baseline:/.*_draft_.*/ = skip\nThirdParty_* = QUALIFIED");
+        ReleaseResult result = new ReleaseResult("RELEASED");
+
+        Map<String, List<String>> batches = ClearcaseReleaseActionImpl.groupByTargetLevel(candidates, "RELEASED", rules, result);
+
+        assertEquals(Arrays.asList("RELEASED", "QUALIFIED"), new ArrayList<String>(batches.keySet()));
+        assertEquals(Arrays.asList("core_1@\\pvob"), batches.get("RELEASED"));
+        assertEquals(Arrays.asList("lib_1@\\pvob", "lib_2@\\pvob"), batches.get("QUALIFIED"));
+
+        //The baselines already at their level are released without any command, the skipped ones aren't released
+        assertEquals(Arrays.asList("core_1@\\pvob", "lib_1@\\pvob", "tools_1@\\pvob", "lib_2@\\pvob"), result.getPromotedBaselines());
+        assertEquals("QUALIFIED", result.getTargetLevel("lib_1@\\pvob"));
+
+        //The baselines already at their level aren't restored by a cancellation
+        assertEquals(Arrays.asList("core_1@\\pvob", "lib_1@\\pvob", "lib_2@\\pvob"), result.getChangedBaselines());
+    }
+
+    public void testCandidatesAreReleasedToTheSameLevelWithoutRules() {
+        List<BaselineDescription> candidates = Arrays.asList(
+                new BaselineDescription("core_1@\\pvob", "Core", "BUILT"),
+                new BaselineDescription("lib_1@\\pvob", "ThirdParty_lib", "BUILT"));
+        ReleaseResult result = new ReleaseResult("RELEASED");
+
+        Map<String, List<String>> batches = ClearcaseReleaseActionImpl.groupByTargetLevel(candidates, "RELEASED", null, result);
+
+        assertEquals(1, batches.size());
+        assertEquals(Arrays.asList("core_1@\\pvob", "lib_1@\\pvob"), batches.get("RELEASED"));
+        assertEquals(2, result.getPromotedBaselines().size());
+    }
+
+    public void testPreviewIsComputedFromThePrefetchedPlansOfAllTheStreams() {
+        ReleasePlan dev = new ReleasePlan("stream:dev@\\pvob", Arrays.asList("bl1@\\pvob", "bl2@\\pvob"));
+        dev.addCandidate(new BaselineDescription("bl1@\\pvob", "comp1", "BUILT"));
+        ReleasePlan integration = new ReleasePlan("stream:int@\\pvob", Arrays.asList("bl2@\\pvob", "bl3@\\pvob"));
+        integration.addCandidate(new BaselineDescription("bl3@\\pvob", "comp3", "RELEASED"));
+        Map<String, ReleasePlan> plans = new HashMap<String, ReleasePlan>();
+        plans.put(dev.getStreamWithPVOB(), dev);
+        plans.put(integration.getStreamWithPVOB(), integration);
+
+        ReleasePreview preview = ClearcaseReleaseActionImpl.previewCachedLatestBaselineRelease(
+                Arrays.asList("stream:dev@\\pvob", "stream:int@\\pvob"), plans, null, null);
+        assertNotNull(preview);
+        assertTrue(preview.isCached());
+        assertEquals(2, preview.getEntries().size());
+        assertEquals(1, preview.getPromotedCount());
+    }
+
+    public void testPreviewNeedsAPrefetchedPlanForEachStream() {
+        ReleasePlan dev = new ReleasePlan("stream:dev@\\pvob", Arrays.asList("bl1@\\pvob"));
+        Map<String, ReleasePlan> plans = new HashMap<String, ReleasePlan>();
+        plans.put(dev.getStreamWithPVOB(), dev);
+
+        assertNull(ClearcaseReleaseActionImpl.previewCachedLatestBaselineRelease(
+                Arrays.asList("stream:dev@\\pvob", "stream:int@\\pvob"), plans, null, null));
+    }
+
+    public void testCancellationTakesTheLeasesOfAllTheChangedPVOBs() {
+        List<String> streams = Arrays.asList("stream:dev@" + File.separator + "pvob2", "stream:int@" + File.separator + "pvob1");
+        assertEquals(Arrays.asList("pvob1", "pvob2", "pvob3"),
+                new ArrayList<String>(ClearcaseReleaseActionImpl.getLeaseKeys(streams, Arrays.asList("pvob3", "pvob1"))));
+        assertEquals(Arrays.asList("pvob1", "pvob2"),
+                new ArrayList<String>(ClearcaseReleaseActionImpl.getLeaseKeys(streams, Collections.<String>emptyList())));
+    }
+
+    public void testBaselinesAreChangedLocallyWithoutMastership() throws Exception {
+        BaselineMastership.configure(false, "site2=node2");
+        FakeClearTool local = new FakeClearTool("site1");
+        releaseImpl.cancelRelease(listener, local, BASELINES, getPreviousLevels("BUILT"));
+
+        assertEquals(Collections.singletonList("chbl -level BUILT bl1@\\pvob bl2@\\pvob bl3@\\pvob"), local.changes);
+        assertEquals(0, local.masterListings);
+        assertTrue(nodes.isEmpty());
+    }
+
+    public void testBaselinesMasteredByAForeignReplicaAreChangedOnItsNode() throws Exception {
+        BaselineMastership.configure(true, "site2=node2");
+        FakeClearTool local = new FakeClearTool("site1");
+        local.masters.put("bl2@\\pvob", "site2");
+        releaseImpl.cancelRelease(listener, local, BASELINES, getPreviousLevels("BUILT"));
+
+        assertEquals(Collections.singletonList("chbl -level BUILT bl1@\\pvob bl3@\\pvob"), local.changes);
+        assertEquals(Collections.singletonList("chbl -level BUILT bl2@\\pvob"), nodes.get("node2").changes);
+        assertEquals("site1", BaselineMastership.getLocalReplica("\\pvob"));
+        assertEquals("site2", BaselineMastership.getMaster("bl2@\\pvob"));
+    }
+
+    public void testMastershipIsLookedUpOnce() throws Exception {
+        BaselineMastership.configure(true, "site2=node2");
+        FakeClearTool local = new FakeClearTool("site1");
+        releaseImpl.cancelRelease(listener, local, BASELINES, getPreviousLevels("BUILT"));
+        releaseImpl.cancelRelease(listener, local, BASELINES, getPreviousLevels("BUILT"));
+
+        assertEquals(1, local.masterListings);
+        assertEquals(1, local.replicaDescriptions);
+        assertEquals(2, local.changes.size());
+    }
+
+    public void testNothingIsChangedWhenAForeignReplicaHasNoNode() throws Exception {
+        BaselineMastership.configure(true, "");
+        FakeClearTool local = new FakeClearTool("site1");
+        local.masters.put("bl3@\\pvob", "site3");
+        try {
+            releaseImpl.cancelRelease(listener, local, BASELINES, getPreviousLevels("BUILT"));
+            fail("The baselines of a replica without node can't be promoted");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("site3"));
+        }
+        assertTrue(local.changes.isEmpty());
+        assertTrue(nodes.isEmpty());
+    }
+
+    private static Map<String, String> getPreviousLevels(String level) {
+        Map<String, String> previousLevels = new HashMap<String, String>();
+        for (String baseline : BASELINES) {
+            previousLevels.put(baseline, level);
+        }
+        return previousLevels;
+    }
+
+    /**
+     * Answers the commands of the mastership lookup, and records the baseline changes
+     */
+    private static class FakeClearTool implements ClearToolRunner {
+
+        private final String replica;
+
+        private final Map<String, String> masters = new HashMap<String, String>();
+
+        private final List<String> changes = Collections.synchronizedList(new ArrayList<String>());
+
+        private int masterListings;
+
+        private int replicaDescriptions;
+
+        private FakeClearTool(String replica) {
+            this.replica = replica;
+        }
+
+        public synchronized void run(String[] cmd, OutputStream out) throws IOException, InterruptedException {
+            StringBuilder output = new StringBuilder();
+            if ("-version".equals(cmd[0])) {
+                output.append("cleartool 7.1.2.0\n");
+            } else if ("help".equals(cmd[0])) {
+                output.append("Usage: ").append(cmd[1]).append(" baseline-selector ...\n");
+            } else if ("describe".equals(cmd[0])) {
+                replicaDescriptions++;
+                output.append(replica);
+            } else if ("lsbl".equals(cmd[0]) && cmd[2].contains("master")) {
+                masterListings++;
+                for (int i = 3; i < cmd.length; i++) {
+                    String master = masters.containsKey(cmd[i]) ? masters.get(cmd[i]) : replica;
+                    output.append("baseline:").append(cmd[i]).append(' ').append(master).append("@\\pvob\n");
+                }
+            } else if ("chbl".equals(cmd[0])) {
+                StringBuilder change = new StringBuilder();
+                for (String arg : cmd) {
+                    change.append(change.length() == 0 ? "" : " ").append(arg);
+                }
+                changes.add(change.toString());
+            } else {
+                throw new IOException("Unexpected command " + Arrays.asList(cmd));
+            }
+            if (out != null) {
+                out.write(output.toString().getBytes());
+            }
+        }
+    }
+}
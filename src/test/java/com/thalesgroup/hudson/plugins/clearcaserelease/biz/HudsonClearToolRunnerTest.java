@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease.biz;
+
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Proc;
+import hudson.remoting.Channel;
+import hudson.util.StreamTaskListener;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+
+public class HudsonClearToolRunnerTest extends TestCase {
+
+    private final FakeLauncher launcher = new FakeLauncher();
+
+    public void testCommandIsLaunchedWithTheExecutable() throws Exception {
+        launcher.output = "7.1.2.0";
+        launcher.running = false;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new HudsonClearToolRunner("cleartool", launcher, null, 0, 0).run(new String[]{"-version"}, out);
+
+        assertEquals(Arrays.asList("cleartool", "-version"), launcher.commands);
+        assertEquals("7.1.2.0", out.toString());
+    }
+
+    public void testExitCodeIsReported() throws Exception {
+        launcher.running = false;
+        launcher.exitCode = 1;
+        try {
+            new HudsonClearToolRunner("cleartool", launcher, null, 0, 0).run(new String[]{"chbl", "-level", "BUILT"}, null);
+            fail();
+        } catch (ClearToolExitException e) {
+            assertEquals(1, e.getExitCode());
+        }
+    }
+
+    public void testCommandTimeoutKillsTheCommand() throws Exception {
+        try {
+            new HudsonClearToolRunner("cleartool", launcher, null, 200, 0).run(new String[]{"chbl"}, null);
+            fail();
+        } catch (ClearToolException e) {
+            assertEquals(ClearToolException.Type.TIMEOUT, e.getType());
+        }
+        assertTrue(launcher.proc.killed);
+    }
+
+    public void testReleaseDeadlineKillsTheCommand() throws Exception {
+        long deadline = System.currentTimeMillis() + 200;
+        try {
+            new HudsonClearToolRunner("cleartool", launcher, null, 60000, deadline).run(new String[]{"chbl"}, null);
+            fail();
+        } catch (ClearToolException e) {
+            assertEquals(ClearToolException.Type.DEADLINE, e.getType());
+        }
+        assertTrue(launcher.proc.killed);
+    }
+
+    public void testExpiredDeadlineLaunchesNothing() throws Exception {
+        try {
+            new HudsonClearToolRunner("cleartool", launcher, null, 0, System.currentTimeMillis() - 1).run(new String[]{"chbl"}, null);
+            fail();
+        } catch (ClearToolException e) {
+            assertEquals(ClearToolException.Type.DEADLINE, e.getType());
+        }
+        assertNull(launcher.proc);
+    }
+
+    public void testInterruptKillsTheCommand() throws Exception {
+        final HudsonClearToolRunner runner = new HudsonClearToolRunner("cleartool", launcher, null, 0, 0);
+        final Exception[] failure = new Exception[1];
+        Thread release = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    runner.run(new String[]{"chbl"}, null);
+                } catch (Exception e) {
+                    failure[0] = e;
+                }
+            }
+        };
+        release.start();
+        assertTrue(launcher.launched.await(5, TimeUnit.SECONDS));
+        release.interrupt();
+        release.join(5000);
+
+        assertTrue(String.valueOf(failure[0]), failure[0] instanceof InterruptedException);
+        assertTrue(launcher.proc.killed);
+    }
+
+    /**
+     * Launches processes running until they are killed, or terminated with the given exit code
+     */
+    private static class FakeLauncher extends Launcher {
+
+        private volatile boolean running = true;
+
+        private volatile int exitCode;
+
+        private volatile String output;
+
+        private volatile List<String> commands;
+
+        private volatile FakeProc proc;
+
+        private final CountDownLatch launched = new CountDownLatch(1);
+
+        private FakeLauncher() {
+            super(new StreamTaskListener(new ByteArrayOutputStream()), null);
+        }
+
+        @Override
+        public Proc launch(ProcStarter starter) throws IOException {
+            commands = starter.cmds();
+            if (output != null) {
+                starter.stdout().write(output.getBytes());
+            }
+            proc = new FakeProc(running, exitCode);
+            launched.countDown();
+            return proc;
+        }
+
+        @Override
+        public Channel launchChannel(String[] cmd, OutputStream out, FilePath workDir, Map<String, String> envVars) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void kill(Map<String, String> modelEnvVars) {
+        }
+    }
+
+    private static class FakeProc extends Proc {
+
+        private volatile boolean alive;
+
+        private volatile boolean killed;
+
+        private final int exitCode;
+
+        private FakeProc(boolean alive, int exitCode) {
+            this.alive = alive;
+            this.exitCode = exitCode;
+        }
+
+        @Override
+        public boolean isAlive() {
+            return alive;
+        }
+
+        @Override
+        public void kill() {
+            killed = true;
+            alive = false;
+        }
+
+        @Override
+        public int join() {
+            return killed ? -1 : exitCode;
+        }
+    }
+}
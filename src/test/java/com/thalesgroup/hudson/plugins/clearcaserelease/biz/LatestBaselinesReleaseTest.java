@@ -0,0 +1,296 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease.biz;
+
+import hudson.model.TaskListener;
+import hudson.util.StreamTaskListener;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+
+public class LatestBaselinesReleaseTest extends TestCase {
+
+    private static final String STREAM = "stream:dev@/pvob";
+
+    private final TaskListener listener = new StreamTaskListener(new ByteArrayOutputStream());
+
+    private final ClearcaseReleaseActionImpl releaseImpl = new ClearcaseReleaseActionImpl(null, ReleaseLane.INTERACTIVE);
+
+    @Override
+    protected void setUp() throws Exception {
+        ClearToolCapabilities.invalidate(null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        ClearToolCapabilities.invalidate(null);
+    }
+
+    public void testQuotedBatchedDescriptionsArePlanned() throws Exception {
+        UnixClearTool clearTool = new UnixClearTool(3);
+        clearTool.levels.put("bl1@/pvob", "RELEASED");
+        clearTool.components.put("bl2@/pvob", "readonly");
+
+        ReleasePlan plan = releaseImpl.planLatestBaselineRelease(listener, clearTool, STREAM);
+
+        assertEquals(Arrays.asList("bl0@/pvob", "bl1@/pvob", "bl2@/pvob"), plan.getLatestBaselines());
+        assertEquals(2, plan.getCandidates().size());
+        assertEquals("BUILT", plan.getCandidates().get(0).getPromotionLevel());
+        assertEquals("RELEASED", plan.getCandidates().get(1).getPromotionLevel());
+        assertEquals(1, clearTool.descriptions.size());
+    }
+
+    public void testQuotedBatchedDescriptionsArePromoted() throws Exception {
+        UnixClearTool clearTool = new UnixClearTool(120);
+        clearTool.levels.put("bl7@/pvob", "RELEASED");
+
+        ReleaseResult result = releaseImpl.releaseLatestBaselines(listener, clearTool, STREAM, null, null);
+
+        assertEquals(120, result.getPromotedBaselines().size());
+        assertEquals(119, clearTool.getChanged().size());
+        assertFalse(clearTool.getChanged().contains("bl7@/pvob"));
+    }
+
+    public void testDescriptionWaitsForThePromotions() throws Exception {
+        final UnixClearTool clearTool = new UnixClearTool(1500);
+        clearTool.gate = new CountDownLatch(1);
+        ReleaseThread release = new ReleaseThread(clearTool);
+        release.start();
+
+        //Every promoter blocked in chbl, the description stops once the queue is full
+        int promoters = Math.min(PvobConcurrencyLimiter.getMaxLimit(), 30);
+        waitFor(clearTool, promoters);
+        int described;
+        do {
+            described = clearTool.descriptions.size();
+            Thread.sleep(200);
+        } while (described != clearTool.descriptions.size());
+        assertTrue("described " + described, described < 30);
+
+        clearTool.gate.countDown();
+        release.join(10000);
+        assertNull(release.failure);
+        assertEquals(1500, release.result.getPromotedBaselines().size());
+        assertEquals(1500, clearTool.getChanged().size());
+        assertEquals(30, clearTool.descriptions.size());
+    }
+
+    public void testDescriptionFailureStopsThePromotions() throws Exception {
+        UnixClearTool clearTool = new UnixClearTool(1500);
+        clearTool.gate = new CountDownLatch(1);
+        int promoters = Math.min(PvobConcurrencyLimiter.getMaxLimit(), 30);
+        clearTool.failingDescription = promoters + 4;
+        clearTool.failureGate = new CountDownLatch(1);
+        ReleaseThread release = new ReleaseThread(clearTool);
+        release.start();
+
+        //The description fails once every promoter is blocked, while chunks are waiting for them
+        waitFor(clearTool, promoters);
+        while (clearTool.descriptions.size() < promoters + 4) {
+            Thread.sleep(10);
+        }
+        clearTool.failureGate.countDown();
+        Thread.sleep(200);
+        clearTool.gate.countDown();
+        release.join(10000);
+
+        assertTrue(String.valueOf(release.failure), release.failure instanceof PartialReleaseException);
+        PartialReleaseException e = (PartialReleaseException) release.failure;
+        assertFalse(e.isAborted());
+        assertPartialResult(clearTool, e.getResult());
+        assertEquals(promoters * 50, clearTool.getChanged().size());
+    }
+
+    public void testAbortKeepsTheLaunchedPromotions() throws Exception {
+        UnixClearTool clearTool = new UnixClearTool(1500);
+        clearTool.chblMillis = 100;
+        ReleaseThread release = new ReleaseThread(clearTool);
+        release.start();
+        waitFor(clearTool, 2);
+        release.interrupt();
+        release.join(10000);
+
+        assertTrue(String.valueOf(release.failure), release.failure instanceof PartialReleaseException);
+        PartialReleaseException e = (PartialReleaseException) release.failure;
+        assertTrue(e.isAborted());
+        assertPartialResult(clearTool, e.getResult());
+        assertTrue(clearTool.getChanged().size() < 1500);
+    }
+
+    /**
+     * Check the partial result lists the baselines whose promotion has been launched, even after the failure
+     */
+    private static void assertPartialResult(UnixClearTool clearTool, ReleaseResult partialResult) throws InterruptedException {
+        Thread.sleep(300);
+        assertFalse(partialResult.getPromotedBaselines().isEmpty());
+        assertEquals(new HashSet<String>(clearTool.getChanged()), new HashSet<String>(partialResult.getPromotedBaselines()));
+        for (String baseline : partialResult.getPromotedBaselines()) {
+            assertEquals("BUILT", partialResult.getPreviousLevels().get(baseline));
+        }
+    }
+
+    private static void waitFor(UnixClearTool clearTool, int changes) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (clearTool.getChangeCommands() < changes) {
+            assertTrue("Waiting for " + changes + " chbl", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private final class ReleaseThread extends Thread {
+
+        private final UnixClearTool clearTool;
+
+        private volatile ReleaseResult result;
+
+        private volatile Exception failure;
+
+        private ReleaseThread(UnixClearTool clearTool) {
+            this.clearTool = clearTool;
+        }
+
+        @Override
+        public void run() {
+            try {
+                result = releaseImpl.releaseLatestBaselines(listener, clearTool, STREAM, null, null);
+            } catch (Exception e) {
+                failure = e;
+            }
+        }
+    }
+
+    /**
+     * Answers as cleartool on a non Windows platform: the quotes of the formats are kept and the PVOB separator is '/'
+     */
+    private static class UnixClearTool implements ClearToolRunner {
+
+        private final List<String> baselines = new ArrayList<String>();
+
+        private final Map<String, String> levels = Collections.synchronizedMap(new HashMap<String, String>());
+
+        private final Map<String, String> components = Collections.synchronizedMap(new HashMap<String, String>());
+
+        private final List<String> descriptions = Collections.synchronizedList(new ArrayList<String>());
+
+        private final List<List<String>> changes = new ArrayList<List<String>>();
+
+        private volatile CountDownLatch gate;
+
+        private volatile long chblMillis;
+
+        /**
+         * The index of the description failing, 0 for none
+         */
+        private volatile int failingDescription;
+
+        /**
+         * Holds the failing description until it is opened, null for none
+         */
+        private volatile CountDownLatch failureGate;
+
+        private UnixClearTool(int count) {
+            for (int i = 0; i < count; i++) {
+                baselines.add("bl" + i + "@/pvob");
+            }
+        }
+
+        public void run(String[] cmd, OutputStream out) throws IOException, InterruptedException {
+            StringBuilder output = new StringBuilder();
+            if ("-version".equals(cmd[0])) {
+                output.append("cleartool 7.1.2.0\n");
+            } else if ("help".equals(cmd[0])) {
+                output.append("Usage: ").append(cmd[1]).append(" baseline-selector ...\n");
+            } else if ("lsstream".equals(cmd[0]) && cmd[2].contains("latest_bls")) {
+                output.append('"');
+                for (int i = 0; i < baselines.size(); i++) {
+                    output.append(i == 0 ? "" : ", ").append("baseline:").append(baselines.get(i));
+                }
+                output.append('"');
+            } else if ("lsstream".equals(cmd[0])) {
+                output.append("\"component readonly_other\"");
+            } else if ("lsbl".equals(cmd[0])) {
+                int index = descriptions.size() + 1;
+                descriptions.add(cmd[3]);
+                if (index == failingDescription) {
+                    if (failureGate != null) {
+                        failureGate.await(10, TimeUnit.SECONDS);
+                    }
+                    throw new IOException("cleartool: Error: Unable to access the PVOB");
+                }
+                //"baseline:A@/pvob c L
+                //""baseline:B@/pvob c L
+                //"
+                output.append('"');
+                for (int i = 3; i < cmd.length; i++) {
+                    output.append(i == 3 ? "" : "\"\"").append("baseline:").append(cmd[i]).append(' ')
+                            .append(get(components, cmd[i], "component")).append(' ')
+                            .append(get(levels, cmd[i], "BUILT")).append('\n');
+                }
+                output.append('"');
+            } else if ("chbl".equals(cmd[0])) {
+                synchronized (this) {
+                    changes.add(Arrays.asList(cmd).subList(3, cmd.length));
+                }
+                if (gate != null) {
+                    gate.await(10, TimeUnit.SECONDS);
+                }
+                Thread.sleep(chblMillis);
+            } else {
+                throw new IOException("Unexpected command " + Arrays.asList(cmd));
+            }
+            if (out != null) {
+                out.write(output.toString().getBytes());
+            }
+        }
+
+        private static String get(Map<String, String> values, String key, String defaultValue) {
+            String value = values.get(key);
+            return (value == null) ? defaultValue : value;
+        }
+
+        private synchronized int getChangeCommands() {
+            return changes.size();
+        }
+
+        private synchronized List<String> getChanged() {
+            List<String> changed = new ArrayList<String>();
+            for (List<String> change : changes) {
+                changed.addAll(change);
+            }
+            return changed;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease.biz;
+
+import hudson.model.TaskListener;
+import hudson.util.StreamTaskListener;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+
+public class PromotionLeaseTest extends TestCase {
+
+    private File directory;
+
+    private TaskListener listener;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = File.createTempFile("leases", "");
+        directory.delete();
+        listener = new StreamTaskListener(new ByteArrayOutputStream());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    public void testNoLeaseWithoutDirectory() throws Exception {
+        assertNull(PromotionLease.acquire(listener, (File) null, "pvob"));
+        assertNull(PromotionLease.acquire(listener, directory, null));
+    }
+
+    public void testLeaseIsAFileRemovedOnRelease() throws Exception {
+        PromotionLease lease = PromotionLease.acquire(listener, directory, "\\pvob");
+        assertNotNull(lease);
+        assertFalse(lease.isContended());
+        assertEquals(1, directory.listFiles().length);
+
+        lease.release();
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    public void testSecondReleaseWaitsForTheHolder() throws Exception {
+        final PromotionLease holder = PromotionLease.acquire(listener, directory, "\\pvob");
+        Thread releaser = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException e) {
+                    //Release at once
+                }
+                holder.release();
+            }
+        };
+        releaser.start();
+
+        long start = System.currentTimeMillis();
+        PromotionLease waiter = PromotionLease.acquire(listener, directory, "\\pvob");
+        assertTrue(System.currentTimeMillis() - start >= 500);
+        assertTrue(waiter.isContended());
+        waiter.release();
+    }
+
+    public void testLeasesOfDifferentKeysAreIndependent() throws Exception {
+        PromotionLease first = PromotionLease.acquire(listener, directory, "\\pvob1");
+        PromotionLease second = PromotionLease.acquire(listener, directory, "\\pvob2");
+        assertFalse(second.isContended());
+        first.release();
+        second.release();
+    }
+
+    public void testTakenOverLeaseIsLost() throws Exception {
+        PromotionLease lease = PromotionLease.acquire(listener, directory, "\\pvob");
+        lease.checkHeld();
+        assertFalse(lease.isLost());
+
+        //Another instance took the lease over after missed heartbeats
+        File file = directory.listFiles()[0];
+        OutputStream out = new FileOutputStream(file);
+        out.write("other@host#1\n0\n".getBytes("UTF-8"));
+        out.close();
+
+        lease.beat();
+        assertTrue(lease.isLost());
+        try {
+            lease.checkHeld();
+            fail("The release must stop once the lease is lost");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("\\pvob"));
+        }
+
+        //The lease of the other instance is kept
+        lease.release();
+        assertTrue(file.exists());
+    }
+
+    public void testCheckDetectsATakeOverBeforeTheHeartbeat() throws Exception {
+        PromotionLease lease = PromotionLease.acquire(listener, directory, "\\pvob");
+        File file = directory.listFiles()[0];
+        OutputStream out = new FileOutputStream(file);
+        out.write("other@host#1\n0\n".getBytes("UTF-8"));
+        out.close();
+
+        try {
+            lease.checkHeld();
+            fail("The release must stop once the lease is lost");
+        } catch (IOException e) {
+            assertTrue(lease.isLost());
+        }
+        lease.release();
+    }
+}
@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease.biz;
+
+import junit.framework.TestCase;
+
+
+public class PromotionRulesTest extends TestCase {
+
+    public void testFirstMatchingRuleWinsBetweenPrefixesAndRegularExpressions() {
+        PromotionRules regexFirst = PromotionRules.compile("/Third.*/ = TESTED\nThirdParty_* = QUALIFIED");
+        assertEquals("TESTED", regexFirst.getLevel("ThirdParty_lib", "bl1@\\pvob", "RELEASED"));
+
+        PromotionRules prefixFirst = PromotionRules.compile("ThirdParty_* = QUALIFIED\n/Third.*/ = TESTED");
+        assertEquals("QUALIFIED", prefixFirst.getLevel("ThirdParty_lib", "bl1@\\pvob", "RELEASED"));
+        assertEquals("TESTED", prefixFirst.getLevel("Third_lib", "bl1@\\pvob", "RELEASED"));
+        assertEquals("RELEASED", prefixFirst.getLevel("Core", "bl1@\\pvob", "RELEASED"));
+    }
+
+    public void testExactNameWinsOverALaterPrefix() {
+        PromotionRules rules = PromotionRules.compile("Core = TESTED\nCo* = QUALIFIED");
+        assertEquals("TESTED", rules.getLevel("Core", "bl1@\\pvob", "RELEASED"));
+        assertEquals("QUALIFIED", rules.getLevel("Common", "bl1@\\pvob", "RELEASED"));
+    }
+
+    public void testSkippedBaselinesHaveNoLevel() {
+        PromotionRules rules = PromotionRules.compile("# drafts\nbaseline:/.*_draft_.*/ = skip\n\n* = QUALIFIED");
+        assertNull(rules.getLevel("Core", "core_draft_1@\\pvob", "RELEASED"));
+        assertEquals("QUALIFIED", rules.getLevel("Core", "core_1@\\pvob", "RELEASED"));
+        assertEquals(1, rules.getLevels().size());
+        assertTrue(rules.getLevels().contains("QUALIFIED"));
+    }
+
+    public void testBaselinePatternsIgnoreThePVOB() {
+        PromotionRules rules = PromotionRules.compile("baseline:core_? = TESTED");
+        assertEquals("TESTED", rules.getLevel("Core", " core_1@\\pvob ", "RELEASED"));
+        assertEquals("RELEASED", rules.getLevel("Core", "core_12@\\pvob", "RELEASED"));
+    }
+
+    public void testComponentNamesMayContainEquals() {
+        PromotionRules rules = PromotionRules.compile("component:Core=Legacy = TESTED\n/a=b.*/ = QUALIFIED");
+        assertEquals("TESTED", rules.getLevel("Core=Legacy", "bl1@\\pvob", "RELEASED"));
+        assertEquals("QUALIFIED", rules.getLevel("a=bc", "bl1@\\pvob", "RELEASED"));
+        assertEquals("RELEASED", rules.getLevel("Core", "bl1@\\pvob", "RELEASED"));
+    }
+
+    public void testMalformedLinesAreRejectedWithTheirNumber() {
+        assertRejected("Core = TESTED\nCore TESTED", "Line 2");
+        assertRejected("Core =", "Line 1");
+        assertRejected("Core = NOT A LEVEL", "Line 1");
+        assertRejected("baseline: = TESTED", "Line 1");
+        assertRejected("\n\n/Core(/ = TESTED", "Line 3");
+    }
+
+    public void testTextWithoutRuleHasNoTable() {
+        assertNull(PromotionRules.get(null));
+        assertNull(PromotionRules.get("  \n"));
+        assertNull(PromotionRules.get("# comment only"));
+    }
+
+    public void testCompiledTablesAreEvictedLeastRecentlyUsedFirst() {
+        PromotionRules used = PromotionRules.get("Used = TESTED");
+        PromotionRules unused = PromotionRules.get("Unused = TESTED");
+        for (int i = 0; i < PromotionRules.CACHE_SIZE - 1; i++) {
+            assertSame(used, PromotionRules.get("Used = TESTED"));
+            PromotionRules.get("Component" + i + " = TESTED");
+        }
+        assertSame(used, PromotionRules.get("Used = TESTED"));
+        assertNotSame(unused, PromotionRules.get("Unused = TESTED"));
+    }
+
+    private static void assertRejected(String text, String line) {
+        try {
+            PromotionRules.compile(text);
+            fail("The rules '" + text + "' should be rejected");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(line + ":"));
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease.biz;
+
+import junit.framework.TestCase;
+
+
+public class PvobConcurrencyLimiterTest extends TestCase {
+
+    private PvobConcurrencyLimiter limiter;
+
+    @Override
+    protected void setUp() throws Exception {
+        limiter = PvobConcurrencyLimiter.get("\\" + getName() + System.nanoTime());
+    }
+
+    public void testArityCountsTheArgumentsWithAPVOB() {
+        assertEquals(1, PvobConcurrencyLimiter.getArity(new String[]{"lsstream", "-fmt", "\"%[latest_bls]Xp\"", "stream:dev@\\pvob"}));
+        assertEquals(2, PvobConcurrencyLimiter.getArity(new String[]{"chbl", "-level", "RELEASED", "bl1@\\pvob", "bl2@\\pvob"}));
+        assertEquals(1, PvobConcurrencyLimiter.getArity(new String[]{"-version"}));
+    }
+
+    public void testLatencyKeysGroupTheAritiesByPowerOf2() {
+        assertEquals("chbl/1", PvobConcurrencyLimiter.getLatencyKey("chbl", 1));
+        assertEquals("chbl/2", PvobConcurrencyLimiter.getLatencyKey("chbl", 3));
+        assertEquals("chbl/32", PvobConcurrencyLimiter.getLatencyKey("chbl", 50));
+    }
+
+    public void testLimitGrowsWhenSaturatedAtTheUsualLatency() throws Exception {
+        int initialLimit = limiter.getLimit();
+        fill();
+        for (int i = 0; i < 2 * initialLimit; i++) {
+            limiter.release("lsbl", 1, 100, false);
+            limiter.acquire(ReleaseLane.INTERACTIVE);
+        }
+        assertTrue(limiter.getLimit() > initialLimit);
+    }
+
+    public void testLimitDecreasesOnSlowCommands() throws Exception {
+        int initialLimit = limiter.getLimit();
+        limiter.acquire(ReleaseLane.INTERACTIVE);
+        limiter.release("lsbl", 1, 100, false);
+        limiter.acquire(ReleaseLane.INTERACTIVE);
+        limiter.release("lsbl", 1, 1000, false);
+        assertTrue(limiter.getLimit() < initialLimit);
+        assertEquals(1, limiter.getSlowCommands());
+    }
+
+    public void testLimitDecreasesOnOverloadErrors() throws Exception {
+        int initialLimit = limiter.getLimit();
+        limiter.acquire(ReleaseLane.INTERACTIVE);
+        limiter.release("chbl", 1, 100, true);
+        assertTrue(limiter.getLimit() < initialLimit);
+        assertEquals(1, limiter.getOverloadErrors());
+        assertEquals(-1, limiter.getUsualLatency("chbl", 1));
+    }
+
+    public void testBatchedCommandsAreNotComparedWithSingleCommands() throws Exception {
+        int initialLimit = limiter.getLimit();
+        limiter.acquire(ReleaseLane.INTERACTIVE);
+        limiter.release("chbl", 1, 100, false);
+        limiter.acquire(ReleaseLane.INTERACTIVE);
+        limiter.release("chbl", 50, 3000, false);
+
+        assertEquals(initialLimit, limiter.getLimit());
+        assertEquals(0, limiter.getSlowCommands());
+        assertEquals(100, limiter.getUsualLatency("chbl", 1));
+        assertEquals(3000, limiter.getUsualLatency("chbl", 40));
+    }
+
+    public void testStoppedCommandsDoNotAdaptTheLimit() throws Exception {
+        int initialLimit = limiter.getLimit();
+        limiter.acquire(ReleaseLane.INTERACTIVE);
+        limiter.release();
+        assertEquals(initialLimit, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(-1, limiter.getUsualLatency("chbl", 1));
+    }
+
+    public void testHigherPriorityLanesAreServedFirst() throws Exception {
+        fill();
+        Thread background = acquireInBackground(ReleaseLane.BACKGROUND);
+        Thread interactive = acquireInBackground(ReleaseLane.INTERACTIVE);
+
+        limiter.release();
+        interactive.join(5000);
+        assertFalse(interactive.isAlive());
+        assertEquals(1, limiter.getQueueDepth(ReleaseLane.BACKGROUND));
+
+        limiter.release();
+        background.join(5000);
+        assertFalse(background.isAlive());
+        assertEquals(0, limiter.getQueueDepth(ReleaseLane.BACKGROUND));
+        assertEquals(1, limiter.getGranted(ReleaseLane.BACKGROUND));
+    }
+
+    private Thread acquireInBackground(final ReleaseLane lane) throws InterruptedException {
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    limiter.acquire(lane);
+                } catch (InterruptedException e) {
+                    //The test is over
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+        while (limiter.getQueueDepth(lane) == 0) {
+            Thread.sleep(10);
+        }
+        return thread;
+    }
+
+    private void fill() throws InterruptedException {
+        while (limiter.getInFlight() < limiter.getLimit()) {
+            limiter.acquire(ReleaseLane.INTERACTIVE);
+        }
+    }
+}
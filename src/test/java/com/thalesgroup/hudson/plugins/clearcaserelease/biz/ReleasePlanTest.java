@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease.biz;
+
+import hudson.model.Run;
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+
+public class ReleasePlanTest extends TestCase {
+
+    public void testFreshPlanDescribesTheSameLatestBaselines() {
+        ReleasePlan plan = new ReleasePlan("stream:dev@\\pvob", Arrays.asList("bl1@\\pvob", "bl2@\\pvob"));
+        assertTrue(plan.isFresh("stream:dev@\\pvob", Arrays.asList("bl1@\\pvob", "bl2@\\pvob"), 60000));
+        assertFalse(plan.isFresh("stream:dev@\\pvob", Arrays.asList("bl1@\\pvob", "bl3@\\pvob"), 60000));
+        assertFalse(plan.isFresh("stream:other@\\pvob", 60000));
+    }
+
+    public void testPrefetchedPlansAreKeptByBuildAndStream() {
+        Run build = new Run();
+        ReleasePlan dev = new ReleasePlan("stream:dev@\\pvob", Collections.<String>emptyList());
+        ReleasePlan integration = new ReleasePlan("stream:int@\\pvob", Collections.<String>emptyList());
+        ReleasePlan.put(build, dev);
+        ReleasePlan.put(build, integration);
+
+        assertSame(dev, ReleasePlan.get(build, "stream:dev@\\pvob"));
+        assertSame(integration, ReleasePlan.get(build, "stream:int@\\pvob"));
+        assertNull(ReleasePlan.get(new Run(), "stream:dev@\\pvob"));
+
+        Map<String, ReleasePlan> plans = ReleasePlan.getAll(build);
+        assertEquals(2, plans.size());
+        assertSame(dev, plans.get("stream:dev@\\pvob"));
+
+        ReleasePlan.remove(build);
+        assertNull(ReleasePlan.get(build, "stream:dev@\\pvob"));
+        assertTrue(ReleasePlan.getAll(build).isEmpty());
+        assertEquals(2, plans.size());
+    }
+}
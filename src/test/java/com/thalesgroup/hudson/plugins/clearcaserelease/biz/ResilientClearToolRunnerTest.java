@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease.biz;
+
+import hudson.util.StreamTaskListener;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+
+public class ResilientClearToolRunnerTest extends TestCase {
+
+    private final ByteArrayOutputStream log = new ByteArrayOutputStream();
+
+    /**
+     * Fails the first commands with a given output, then succeeds
+     */
+    private static class FailingClearTool implements ClearToolRunner {
+
+        private final String output;
+
+        private int failures;
+
+        private int calls;
+
+        private FailingClearTool(String output, int failures) {
+            this.output = output;
+            this.failures = failures;
+        }
+
+        public void run(String[] cmd, OutputStream out) throws IOException, InterruptedException {
+            calls++;
+            out.write(output.getBytes());
+            if (failures-- > 0) {
+                throw new ClearToolExitException("cleartool " + cmd[0] + " returned the exit code 1", 1);
+            }
+        }
+    }
+
+    private ResilientClearToolRunner createRunner(ClearToolRunner delegate) {
+        return new ResilientClearToolRunner(delegate, new StreamTaskListener(log));
+    }
+
+    public void testGetPVOBFromSelectors() {
+        assertEquals("P_ORC", ResilientClearToolRunner.getPVOB(new String[]{"chbl", "-level", "RELEASED", "BL_1@\\P_ORC"}));
+        assertEquals("P_ORC", ResilientClearToolRunner.getPVOB(new String[]{"lsstream", "-fmt", "\"%[latest_bls]CXp\"", "stream:int@/P_ORC"}));
+    }
+
+    public void testGetPVOBFromVobArguments() {
+        assertEquals("P_ORC", ResilientClearToolRunner.getPVOB(new String[]{"lsplevel", "-short", "-invob", "\\P_ORC"}));
+        assertEquals("P_ORC", ResilientClearToolRunner.getPVOB(new String[]{"describe", "-fmt", "\"%[replica_name]p\"", "vob:/P_ORC"}));
+        assertNull(ResilientClearToolRunner.getPVOB(new String[]{"-version"}));
+        assertNull(ResilientClearToolRunner.getPVOB(new String[]{"help", "chbl"}));
+    }
+
+    public void testFailureKeepsTheCleartoolMessages() throws Exception {
+        FailingClearTool clearTool = new FailingClearTool("cleartool: Error: Promotion level \"FOO\" is not defined.\n", 1);
+        try {
+            createRunner(clearTool).run(new String[]{"chbl", "-level", "FOO", "BL_1@\\P_MESSAGES"}, null);
+            fail("The failure must be reported");
+        } catch (ClearToolException e) {
+            assertEquals(ClearToolException.Type.OTHER, e.getType());
+            assertTrue(e.getMessage(), e.getMessage().contains("returned the exit code 1"));
+            assertTrue(e.getMessage(), e.getMessage().contains("Promotion level \"FOO\" is not defined."));
+        }
+        assertEquals(1, clearTool.calls);
+    }
+
+    public void testOutputTailIsBounded() {
+        StringBuilder output = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            output.append('x');
+        }
+        output.append("cleartool: Error: the last message");
+        String tail = ResilientClearToolRunner.getOutputTail(output.toString());
+        assertTrue(tail.startsWith("..."));
+        assertTrue(tail.endsWith("cleartool: Error: the last message"));
+        assertTrue(tail.length() < output.length());
+    }
+
+    public void testTransientFailureIsRetried() throws Exception {
+        FailingClearTool clearTool = new FailingClearTool("cleartool: Error: Lock on VOB \"\\P_RETRY\" prevents operation.\n", 1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        createRunner(clearTool).run(new String[]{"chbl", "-level", "RELEASED", "BL_1@\\P_RETRY"}, out);
+        assertEquals(2, clearTool.calls);
+        assertTrue(log.toString().contains("LOCK"));
+        assertTrue(log.toString().contains("prevents operation"));
+    }
+
+    public void testOutputWithoutStreamGoesToTheLog() throws Exception {
+        createRunner(new FailingClearTool("Changed promotion level of \"BL_1\".\n", 0)).run(new String[]{"chbl", "-level", "RELEASED", "BL_1@\\P_LOG"}, null);
+        assertTrue(log.toString().contains("Changed promotion level of \"BL_1\"."));
+    }
+
+    public void testCommandsWithoutPVOBDontTripABreaker() throws Exception {
+        ClearToolRunner hungClearTool = new ClearToolRunner() {
+            public void run(String[] cmd, OutputStream out) throws IOException, InterruptedException {
+                throw new ClearToolException(ClearToolException.Type.TIMEOUT, "cleartool " + cmd[0] + " killed, the deadline has expired");
+            }
+        };
+
+        //Enough failures to open the breaker of a PVOB
+        for (int i = 0; i < 10; i++) {
+            try {
+                createRunner(hungClearTool).run(new String[]{"-version"}, new ByteArrayOutputStream());
+                fail("The failure must be reported");
+            } catch (ClearToolException e) {
+                assertEquals(ClearToolException.Type.TIMEOUT, e.getType());
+            }
+        }
+        assertFalse(PvobCircuitBreaker.get(null).isOpen());
+        createRunner(new FailingClearTool("cleartool 7.1.2.0\n", 0)).run(new String[]{"-version"}, new ByteArrayOutputStream());
+    }
+}
@@ -0,0 +1,246 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease.loadtest;
+
+import com.thalesgroup.hudson.plugins.clearcaserelease.biz.ClearToolRunner;
+import com.thalesgroup.hudson.plugins.clearcaserelease.biz.ClearcaseReleaseActionImpl;
+import com.thalesgroup.hudson.plugins.clearcaserelease.biz.ReleaseResult;
+import hudson.model.TaskListener;
+import hudson.util.NullStream;
+import hudson.util.StreamTaskListener;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Fires concurrent releases for several jobs against a simulated cleartool and reports the throughput.
+ * <p/>
+ * Each request releases the latest baselines of a job, releases its composite baseline or cancels its
+ * previous releases, in turn. These are the operations performed by the <code>process()</code> method
+ * of the release actions, without the Hudson build and action bookkeeping.
+ * <p/>
+ * Run with <code>mvn -Pload-test test-compile exec:java</code> and the following system properties:
+ * <ul>
+ * <li>jobs: the number of jobs, one UCM stream each (default 20)</li>
+ * <li>concurrency: the number of concurrent release requests (default 8)</li>
+ * <li>requests: the total number of release requests (default 300)</li>
+ * <li>baselines: the number of latest baselines per stream (default 40)</li>
+ * <li>latency: the mean duration of a cleartool command in milliseconds (default 20)</li>
+ * <li>jitter: the maximal random variation of the duration in milliseconds (default 10)</li>
+ * <li>promoteDependencies: promote the composite baseline members (default true)</li>
+ * <li>multipleBaselines: simulate a cleartool accepting several baselines per lsbl and chbl command (default true)</li>
+ * <li>foreignEvery: master every n-th baseline at the replica 'remote', promoted from the node 'remote' (default 0, none)</li>
+ * </ul>
+ */
+public class ReleaseLoadHarness {
+
+    private static final String PVOB = "P_LOAD";
+
+    private static final String[] OPERATIONS = {"latest", "composite", "cancel"};
+
+    private final int jobs = Integer.getInteger("jobs", 20);
+
+    private final int concurrency = Integer.getInteger("concurrency", 8);
+
+    private final int requests = Integer.getInteger("requests", 300);
+
+    private final int baselines = Integer.getInteger("baselines", 40);
+
+    private final boolean promoteDependencies = Boolean.valueOf(System.getProperty("promoteDependencies", "true"));
+
+    private final SimulatedClearTool clearTool = new SimulatedClearTool(Long.getLong("latency", 20), Long.getLong("jitter", 10));
+
+    private final int foreignEvery = Integer.getInteger("foreignEvery", 0);
+
+    /**
+     * The baselines of a foreign replica are promoted from the node with the replica name
+     */
+    private final ClearcaseReleaseActionImpl releaseImpl = new ClearcaseReleaseActionImpl(null) {
+        @Override
+        protected ClearToolRunner createClearToolRunner(TaskListener listener, String nodeName) {
+            return clearTool.getReplica(nodeName);
+        }
+    };
+
+    private final TaskListener listener = new StreamTaskListener(new NullStream());
+
+    private final Map<Integer, List<ReleaseResult>> releasesByJob = new ConcurrentHashMap<Integer, List<ReleaseResult>>();
+
+    private final List<Long> latencies = Collections.synchronizedList(new ArrayList<Long>());
+
+    private final AtomicInteger releases = new AtomicInteger();
+
+    private final AtomicInteger failures = new AtomicInteger();
+
+    private final AtomicLong peakHeap = new AtomicLong();
+
+    public static void main(String[] args) throws Exception {
+        new ReleaseLoadHarness().run();
+    }
+
+    private static String stream(int job) {
+        return "stream_" + job + "@\\" + PVOB;
+    }
+
+    private static String composite(int job) {
+        return "C_job_" + job;
+    }
+
+    /**
+     * Create for each job a stream with its latest baselines, and a composite baseline depending on them
+     */
+    private void createModel() {
+        clearTool.setMultipleBaselines(Boolean.valueOf(System.getProperty("multipleBaselines", "true")));
+        for (int job = 0; job < jobs; job++) {
+            List<String> components = new ArrayList<String>();
+            for (int i = 0; i < baselines; i++) {
+                components.add("comp_" + job + "_" + i);
+            }
+            //The last quarter of the components is read only
+            clearTool.addStream(stream(job), components.subList(0, baselines - baselines / 4));
+            for (int i = 0; i < baselines; i++) {
+                String baseline = "bl_" + job + "_" + i + "@\\" + PVOB;
+                clearTool.addBaseline(stream(job), baseline, components.get(i), "BUILT");
+                clearTool.addDependency(composite(job) + "@\\" + PVOB, baseline);
+                if (foreignEvery > 0 && i % foreignEvery == 0) {
+                    clearTool.setMaster(baseline, "remote");
+                }
+            }
+            clearTool.addBaseline(null, composite(job) + "@\\" + PVOB, "comp_" + job + "_composite", "BUILT");
+            releasesByJob.put(job, Collections.synchronizedList(new ArrayList<ReleaseResult>()));
+        }
+    }
+
+    private void release(int request) throws Exception {
+        int job = request % jobs;
+        String operation = OPERATIONS[(request / jobs) % OPERATIONS.length];
+        List<ReleaseResult> jobReleases = releasesByJob.get(job);
+
+        if ("latest".equals(operation)) {
+            ReleaseResult result = releaseImpl.releaseLatestBaselines(listener, clearTool, stream(job), null);
+            if (result != null) {
+                jobReleases.add(result);
+            }
+        } else if ("composite".equals(operation)) {
+            ReleaseResult result = releaseImpl.releaseCompositeBaseline(listener, clearTool, composite(job), PVOB, null, promoteDependencies);
+            if (result != null) {
+                jobReleases.add(result);
+            }
+        } else {
+            List<ReleaseResult> cancelled;
+            synchronized (jobReleases) {
+                cancelled = new ArrayList<ReleaseResult>(jobReleases);
+                jobReleases.clear();
+            }
+            //Restore the most recent release first
+            Collections.reverse(cancelled);
+            for (ReleaseResult result : cancelled) {
+                releaseImpl.cancelRelease(listener, clearTool, result.getChangedBaselines(), result.getPreviousLevels());
+            }
+        }
+    }
+
+    public void run() throws Exception {
+        createModel();
+
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        Thread heapSampler = new Thread("heap sampler") {
+            public void run() {
+                while (!isInterrupted()) {
+                    long used = memory.getHeapMemoryUsage().getUsed();
+                    if (used > peakHeap.get()) {
+                        peakHeap.set(used);
+                    }
+                    try {
+                        Thread.sleep(50);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        };
+        heapSampler.setDaemon(true);
+        heapSampler.start();
+
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            final int request = i;
+            executor.submit(new Runnable() {
+                public void run() {
+                    long begin = System.nanoTime();
+                    try {
+                        release(request);
+                        releases.incrementAndGet();
+                    } catch (Throwable e) {
+                        failures.incrementAndGet();
+                        System.err.println("[ERROR] - request " + request + ": " + e.getMessage());
+                    } finally {
+                        latencies.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        long elapsed = System.nanoTime() - start;
+        heapSampler.interrupt();
+
+        report(elapsed);
+    }
+
+    private void report(long elapsedNanos) {
+        List<Long> sorted = new ArrayList<Long>(latencies);
+        Collections.sort(sorted);
+        double minutes = elapsedNanos / 60e9;
+
+        System.out.println("Clearcase release load test");
+        System.out.println("  jobs: " + jobs + ", concurrency: " + concurrency + ", requests: " + requests + ", baselines per stream: " + baselines);
+        System.out.println("  completed: " + releases.get() + ", failed: " + failures.get());
+        System.out.println("  duration: " + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + " ms");
+        System.out.println(String.format("  releases per minute: %.1f", releases.get() / minutes));
+        System.out.println("  latency p50: " + percentile(sorted, 50) + " ms, p95: " + percentile(sorted, 95) + " ms, p99: " + percentile(sorted, 99) + " ms");
+        System.out.println(String.format("  cleartool calls per release: %.2f", requests == 0 ? 0.0 : (double) clearTool.getCalls() / requests));
+        System.out.println("  peak heap: " + peakHeap.get() / (1024 * 1024) + " MB");
+    }
+
+    private static long percentile(List<Long> sorted, int percentile) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(index, sorted.size() - 1)));
+    }
+}
@@ -0,0 +1,258 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease.loadtest;
+
+import com.thalesgroup.hudson.plugins.clearcaserelease.biz.ClearToolRunner;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * An in-memory UCM model answering the cleartool commands of a release with a configurable latency
+ */
+public class SimulatedClearTool implements ClearToolRunner {
+
+    private static final String BASELINE_PREFIX = "baseline:";
+
+    /**
+     * The replica of the PVOBs seen by the runner itself
+     */
+    public static final String LOCAL_REPLICA = "original";
+
+    private final long latencyMillis;
+
+    private final long jitterMillis;
+
+    private final Random random = new Random();
+
+    private final AtomicLong calls = new AtomicLong();
+
+    private final Map<String, List<String>> latestBaselines = new HashMap<String, List<String>>();
+
+    private final Map<String, List<String>> modComponents = new HashMap<String, List<String>>();
+
+    private final Map<String, String[]> baselines = new HashMap<String, String[]>();
+
+    private final Map<String, List<String>> dependencies = new HashMap<String, List<String>>();
+
+    private final Map<String, String> masters = new HashMap<String, String>();
+
+    private boolean multipleBaselines = true;
+
+    /**
+     * @param latencyMillis the mean duration of a cleartool command
+     * @param jitterMillis  the maximal random variation of the duration
+     */
+    public SimulatedClearTool(long latencyMillis, long jitterMillis) {
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+    }
+
+    /**
+     * @param multipleBaselines false to simulate a cleartool accepting a single baseline per lsbl and chbl command
+     */
+    public synchronized void setMultipleBaselines(boolean multipleBaselines) {
+        this.multipleBaselines = multipleBaselines;
+    }
+
+    public synchronized void addStream(String streamWithPVOB, List<String> modifiableComponents) {
+        latestBaselines.put(streamWithPVOB, new ArrayList<String>());
+        modComponents.put(streamWithPVOB, modifiableComponents);
+    }
+
+    public synchronized void addBaseline(String streamWithPVOB, String baselineWithPVOB, String component, String level) {
+        baselines.put(baselineWithPVOB, new String[]{component, level});
+        if (streamWithPVOB != null) {
+            latestBaselines.get(streamWithPVOB).add(baselineWithPVOB);
+        }
+    }
+
+    public synchronized void addDependency(String compositeWithPVOB, String memberWithPVOB) {
+        List<String> members = dependencies.get(compositeWithPVOB);
+        if (members == null) {
+            members = new ArrayList<String>();
+            dependencies.put(compositeWithPVOB, members);
+        }
+        members.add(memberWithPVOB);
+    }
+
+    /**
+     * @param baselineWithPVOB the baseline
+     * @param replica          the replica mastering the baseline, only this replica can change its level
+     */
+    public synchronized void setMaster(String baselineWithPVOB, String replica) {
+        masters.put(baselineWithPVOB, replica);
+    }
+
+    /**
+     * Get a runner sharing the model of this one, seeing the PVOBs from another replica
+     *
+     * @param replica the replica name
+     * @return the runner
+     */
+    public ClearToolRunner getReplica(final String replica) {
+        return new ClearToolRunner() {
+            public void run(String[] cmd, OutputStream out) throws IOException, InterruptedException {
+                SimulatedClearTool.this.run(cmd, out, replica);
+            }
+        };
+    }
+
+    public synchronized String getLevel(String baselineWithPVOB) {
+        String[] baseline = baselines.get(baselineWithPVOB);
+        return baseline == null ? null : baseline[1];
+    }
+
+    /**
+     * @return the number of cleartool commands launched since the creation
+     */
+    public long getCalls() {
+        return calls.get();
+    }
+
+    public void run(String[] cmd, OutputStream out) throws IOException, InterruptedException {
+        run(cmd, out, LOCAL_REPLICA);
+    }
+
+    private void run(String[] cmd, OutputStream out, String replica) throws IOException, InterruptedException {
+        calls.incrementAndGet();
+        long jitter = jitterMillis <= 0 ? 0 : (long) (random.nextDouble() * 2 * jitterMillis) - jitterMillis;
+        Thread.sleep(Math.max(0, latencyMillis + jitter));
+
+        String output = execute(cmd, replica);
+        if (out != null && output.length() != 0) {
+            out.write(output.getBytes());
+        }
+    }
+
+    private synchronized String execute(String[] cmd, String replica) throws IOException {
+        String command = cmd[0];
+        if ("-version".equals(command)) {
+            return "ClearCase version 7.1.2 (simulated)\ncleartool                         7.1.2.0 (simulated)\n";
+        }
+        if ("help".equals(command)) {
+            return "Usage: " + cmd[1] + " [-fmt format] [-level promotion-level] " + (multipleBaselines ? "baseline-selector ...\n" : "baseline-selector\n");
+        }
+        if (!multipleBaselines && ("chbl".equals(command) || "lsbl".equals(command)) && cmd.length > 4) {
+            throw new IOException("cleartool: Error: Extra arguments: \"" + cmd[4] + "\"");
+        }
+        if ("chbl".equals(command)) {
+            String level = cmd[2];
+            for (int i = 3; i < cmd.length; i++) {
+                String[] baseline = getBaseline(cmd[i]);
+                String master = getMaster(cmd[i]);
+                if (!master.equals(replica)) {
+                    throw new IOException("cleartool: Error: Current replica \"" + replica + "\" does not master \"" + cmd[i] + "\", mastered by \"" + master + "\".");
+                }
+                baseline[1] = level;
+            }
+            return "";
+        }
+
+        String format = unquote(cmd[2]);
+        if ("describe".equals(command) && cmd[3].startsWith("vob:")) {
+            return format.replace("%[replica_name]p", replica);
+        }
+        if ("lsstream".equals(command)) {
+            String stream = cmd[3];
+            if (!latestBaselines.containsKey(stream)) {
+                throw new IOException("cleartool: Error: Stream not found: \"" + stream + "\".");
+            }
+            if (format.contains("latest_bls")) {
+                return join(latestBaselines.get(stream), BASELINE_PREFIX, ", ");
+            }
+            return join(modComponents.get(stream), "", " ");
+        }
+
+        if ("lsbl".equals(command)) {
+            StringBuilder output = new StringBuilder();
+            for (int i = 3; i < cmd.length; i++) {
+                output.append(format(format, cmd[i]));
+            }
+            return output.toString();
+        }
+
+        throw new IOException("cleartool: Error: Unrecognized command: \"" + command + "\"");
+    }
+
+    private String format(String format, String baselineWithPVOB) throws IOException {
+        String[] baseline = getBaseline(baselineWithPVOB);
+        List<String> members = dependencies.get(normalize(baselineWithPVOB));
+        return format
+                .replace("%Xn", BASELINE_PREFIX + normalize(baselineWithPVOB))
+                .replace("%[component]p", baseline[0])
+                .replace("%[plevel]p", baseline[1])
+                .replace("%[master]p", getMaster(baselineWithPVOB) + baselineWithPVOB.substring(baselineWithPVOB.indexOf('@')))
+                .replace("%[depends_on]Xp", members == null ? "" : join(members, BASELINE_PREFIX, " "))
+                .replace("\\n", "\n");
+    }
+
+    private String getMaster(String baselineWithPVOB) {
+        String master = masters.get(normalize(baselineWithPVOB));
+        return master == null ? LOCAL_REPLICA : master;
+    }
+
+    private String[] getBaseline(String baselineWithPVOB) throws IOException {
+        String[] baseline = baselines.get(normalize(baselineWithPVOB));
+        if (baseline == null) {
+            throw new IOException("cleartool: Error: Baseline not found: \"" + baselineWithPVOB + "\".");
+        }
+        return baseline;
+    }
+
+    /**
+     * Use the Windows PVOB separator whatever the platform running the release
+     */
+    private static String normalize(String selector) {
+        return selector.replace("@/", "@\\");
+    }
+
+    /**
+     * Remove the quotes of a format, as done by the Windows command line
+     */
+    private static String unquote(String format) {
+        if (format.startsWith("\"") && format.endsWith("\"")) {
+            return format.substring(1, format.length() - 1);
+        }
+        return format;
+    }
+
+    private static String join(List<String> values, String prefix, String separator) {
+        StringBuilder result = new StringBuilder();
+        for (String value : values) {
+            if (result.length() != 0) {
+                result.append(separator);
+            }
+            result.append(prefix).append(value);
+        }
+        return result.toString();
+    }
+}
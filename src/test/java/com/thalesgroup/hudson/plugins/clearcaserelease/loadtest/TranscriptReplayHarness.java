@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease.loadtest;
+
+import com.thalesgroup.hudson.plugins.clearcaserelease.biz.ClearToolTranscript;
+import com.thalesgroup.hudson.plugins.clearcaserelease.biz.ClearcaseReleaseActionImpl;
+import com.thalesgroup.hudson.plugins.clearcaserelease.biz.ReplayClearToolRunner;
+import hudson.model.TaskListener;
+import hudson.util.NullStream;
+import hudson.util.StreamTaskListener;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * Re-runs a release recorded in production against its cleartool transcript, and times it.
+ * <p/>
+ * The transcript is recorded on the Hudson master with the system property
+ * <code>com.thalesgroup.hudson.plugins.clearcaserelease.biz.ClearcaseReleaseActionImpl.transcriptDirectory</code>.
+ * <p/>
+ * Usage:
+ * <pre>
+ * TranscriptReplayHarness transcript.txt latest STREAM@\PVOB
+ * TranscriptReplayHarness transcript.txt composite BASELINE PVOB [promoteDependencies]
+ * </pre>
+ * System properties: iterations (default 10), timeScale (the factor applied to the recorded durations, default 1).
+ */
+public class TranscriptReplayHarness {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: TranscriptReplayHarness <transcript> latest <stream> | composite <baseline> <pvob> [promoteDependencies]");
+            System.exit(1);
+        }
+
+        ClearToolTranscript transcript = ClearToolTranscript.load(new File(args[0]));
+        int iterations = Integer.getInteger("iterations", 10);
+        double timeScale = Double.parseDouble(System.getProperty("timeScale", "1"));
+        TaskListener listener = new StreamTaskListener(new NullStream());
+
+        List<Long> durations = new ArrayList<Long>();
+        for (int i = 0; i < iterations; i++) {
+            ReplayClearToolRunner clearTool = new ReplayClearToolRunner(transcript, timeScale);
+            ClearcaseReleaseActionImpl releaseImpl = new ClearcaseReleaseActionImpl(null);
+            long start = System.nanoTime();
+            if ("latest".equals(args[1])) {
+                releaseImpl.releaseLatestBaselines(listener, clearTool, args[2], null);
+            } else {
+                boolean promoteDependencies = args.length > 4 && Boolean.valueOf(args[4]);
+                releaseImpl.releaseCompositeBaseline(listener, clearTool, args[2], args[3], null, promoteDependencies);
+            }
+            durations.add((System.nanoTime() - start) / 1000000);
+        }
+
+        Collections.sort(durations);
+        System.out.println("Replayed " + transcript.getEntries().size() + " recorded cleartool commands " + iterations + " times");
+        System.out.println("  min: " + durations.get(0) + " ms, median: " + durations.get(durations.size() / 2) + " ms, max: " + durations.get(durations.size() - 1) + " ms");
+    }
+}
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2009 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.hudson.plugins.clearcaserelease.loadtest;
+
+import com.thalesgroup.hudson.plugins.clearcaserelease.biz.ClearToolTranscript;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+
+/**
+ * Replaces the sensitive names of a recorded cleartool transcript before sharing it.
+ * <p/>
+ * Usage: TranscriptSanitizer &lt;transcript&gt; &lt;sanitized transcript&gt; &lt;replacements.properties&gt;,
+ * where each property maps a name to its replacement, for instance <code>P_ORC=P_VOB</code>.
+ */
+public class TranscriptSanitizer {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 3) {
+            System.err.println("Usage: TranscriptSanitizer <transcript> <sanitized transcript> <replacements.properties>");
+            System.exit(1);
+        }
+
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream(args[2]);
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+        Map<String, String> replacements = new LinkedHashMap<String, String>();
+        for (Enumeration names = properties.propertyNames(); names.hasMoreElements();) {
+            String name = (String) names.nextElement();
+            replacements.put(name, properties.getProperty(name));
+        }
+
+        ClearToolTranscript.load(new File(args[0])).sanitize(replacements).save(new File(args[1]));
+    }
+}